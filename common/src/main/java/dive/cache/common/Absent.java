@@ -0,0 +1,16 @@
+package dive.cache.common;
+
+/**
+ * 负缓存的哨兵值, 表示加载函数确认该键不存在
+ * 实现类将其存入底层缓存代替值, 读取时视为未命中, 不会返回给调用方
+ * 枚举在序列化前后保持同一个实例, 可直接比较引用
+ * @author dawn
+ */
+public enum Absent {
+
+    /**
+     * 唯一实例
+     */
+    INSTANCE
+
+}
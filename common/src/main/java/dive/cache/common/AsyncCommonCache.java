@@ -0,0 +1,86 @@
+package dive.cache.common;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * 一个用于缓存键值对数据的对象, 所有操作异步执行, 以 CompletableFuture 返回结果
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+public interface AsyncCommonCache<K, V> {
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @return 完成时表示已存入
+     */
+    CompletableFuture<Void> set(K key, V value);
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @return 存在返回 true, 不存在返回 false
+     */
+    CompletableFuture<Boolean> has(K key);
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    CompletableFuture<V> get(K key);
+
+    /**
+     * 获取键对应的值, 不记录命中或未命中, 用于加载前的再次检查
+     * @param key 键
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    default CompletableFuture<V> peek(K key) {
+        return this.get(key);
+    }
+
+
+    /**
+     * 删除对应键值对
+     * @param key 键
+     * @return 若存在返回值, 不存在返回 null
+     */
+    CompletableFuture<V> delete(K key);
+
+    /**
+     * 移除对应键值对
+     * @param key 键
+     * @return 完成时表示已移除
+     */
+    CompletableFuture<Void> remove(K key);
+
+    /**
+     * 清除所有键值对
+     * @return 完成时表示已清除
+     */
+    CompletableFuture<Void> clear();
+
+
+    /**
+     * 获取或异步加载
+     * 并发未命中同一个键时只执行一次加载, 其余调用共享其结果
+     * @param key 键
+     * @param loader 异步加载函数, 结果为 null 时不存入
+     * @return 值
+     */
+    default CompletableFuture<V> get(K key, Function<? super K, ? extends CompletionStage<V>> loader) {
+        Objects.requireNonNull(loader, "loader");
+        return this.get(key).thenCompose(v -> null != v ? CompletableFuture.completedFuture(v) :
+                SingleFlight.loadAsync(this, key, () -> this.peek(key).thenCompose(old -> null != old ?
+                        CompletableFuture.completedFuture(old) :
+                        loader.apply(key).thenCompose(newValue -> null == newValue ?
+                                CompletableFuture.completedFuture(null) :
+                                this.set(key, newValue).thenApply(nothing -> newValue)))));
+    }
+
+}
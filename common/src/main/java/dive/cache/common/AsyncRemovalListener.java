@@ -0,0 +1,66 @@
+package dive.cache.common;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线程池中执行的移除监听器
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class AsyncRemovalListener<K, V> implements RemovalListener<K, V> {
+
+    /**
+     * 默认的通知线程池, 首次使用时创建
+     */
+    static final class Holder {
+
+        /**
+         * 单个守护线程, 空闲时退出, 通知按移除顺序执行
+         */
+        static final ExecutorService EXECUTOR = executor();
+
+        private static ExecutorService executor() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread thread = new Thread(r, "cache-removal");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+    }
+
+    private final RemovalListener<? super K, ? super V> listener;
+
+    private final Executor executor;
+
+    AsyncRemovalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        this.listener = Objects.requireNonNull(listener, "listener");
+        this.executor = Objects.requireNonNull(executor, "executor");
+    }
+
+    @Override
+    public void onRemoval(K key, V value, RemovalCause cause) {
+        try {
+            this.executor.execute(() -> {
+                try {
+                    this.listener.onRemoval(key, value, cause);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package dive.cache.common;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 缓存键值对数据, 可以对键值对设置存活时间, 所有操作异步执行
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+public interface AsyncTimeCache<K, V> extends AsyncCommonCache<K, V> {
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时刻
+     * @return 完成时表示已存入
+     */
+    CompletableFuture<Void> set(K key, V value, Instant expire);
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     * @return 完成时表示已存入
+     */
+    CompletableFuture<Void> set(K key, V value, long timeout, TimeUnit unit);
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param alive 存活毫秒数, 若为负数, 表明永不过期
+     * @return 完成时表示已存入
+     */
+    CompletableFuture<Void> set(K key, V value, long alive);
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @param expire 若存在, 更新过期时刻
+     * @return 存在返回 true, 不存在返回 false
+     */
+    CompletableFuture<Boolean> has(K key, Instant expire);
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @param timeout 若存在, 更新超时时间
+     * @param unit 时间单位
+     * @return 存在返回 true, 不存在返回 false
+     */
+    CompletableFuture<Boolean> has(K key, long timeout, TimeUnit unit);
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @param alive 若存在, 更新存活毫秒数, 若为负数, 表明永不过期
+     * @return 存在返回 true, 不存在返回 false
+     */
+    CompletableFuture<Boolean> has(K key, long alive);
+
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @param expire 若存在, 更新过期时刻
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    CompletableFuture<V> get(K key, Instant expire);
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @param timeout 若存在, 更新超时时间
+     * @param unit 时间单位
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    CompletableFuture<V> get(K key, long timeout, TimeUnit unit);
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @param alive 若存在, 更新存活毫秒数, 若为负数, 表明永不过期
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    CompletableFuture<V> get(K key, long alive);
+
+
+    /**
+     * 获取对应键的过期时间
+     * @param key 键
+     * @return 过期时间, 单位毫秒, 若不存在, 返回 0
+     */
+    CompletableFuture<Long> expire(K key);
+
+    /**
+     * 获取对应键的剩余存活时间
+     * @param key 键
+     * @return 剩余存活时间, 单位毫秒, 若不存在, 返回 0
+     */
+    CompletableFuture<Long> last(K key);
+
+
+    /**
+     * 获取或异步加载
+     * 并发未命中同一个键时只执行一次加载, 其余调用共享其结果
+     * @param key 键
+     * @param loader 异步加载函数, 结果为 null 时不存入
+     * @param alive 存活毫秒数, 若为负数, 表明永不过期
+     * @return 值
+     */
+    default CompletableFuture<V> get(K key, Function<? super K, ? extends CompletionStage<V>> loader, long alive) {
+        Objects.requireNonNull(loader, "loader");
+        return this.get(key).thenCompose(v -> null != v ? CompletableFuture.completedFuture(v) :
+                SingleFlight.loadAsync(this, key, () -> this.peek(key).thenCompose(old -> null != old ?
+                        CompletableFuture.completedFuture(old) :
+                        loader.apply(key).thenCompose(newValue -> null == newValue ?
+                                CompletableFuture.completedFuture(null) :
+                                this.set(key, newValue, alive).thenApply(nothing -> newValue)))));
+    }
+
+}
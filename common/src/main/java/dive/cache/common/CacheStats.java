@@ -0,0 +1,232 @@
+package dive.cache.common;
+
+import java.util.Objects;
+
+/**
+ * 缓存统计的快照, 不可变
+ * @author dawn
+ */
+public final class CacheStats {
+
+    /**
+     * 空统计
+     */
+    private static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+
+    /**
+     * 未命中次数
+     */
+    private final long missCount;
+
+    /**
+     * 加载成功次数
+     */
+    private final long loadSuccessCount;
+
+    /**
+     * 加载失败次数
+     */
+    private final long loadFailureCount;
+
+    /**
+     * 加载总耗时, 纳秒
+     */
+    private final long totalLoadTime;
+
+    /**
+     * 因容量淘汰的次数
+     */
+    private final long evictionCount;
+
+    /**
+     * 因过期移除的次数
+     */
+    private final long expirationCount;
+
+    /**
+     * 构造器
+     * @param hitCount 命中次数
+     * @param missCount 未命中次数
+     * @param loadSuccessCount 加载成功次数
+     * @param loadFailureCount 加载失败次数
+     * @param totalLoadTime 加载总耗时, 纳秒
+     * @param evictionCount 因容量淘汰的次数
+     * @param expirationCount 因过期移除的次数
+     */
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                      long totalLoadTime, long evictionCount, long expirationCount) {
+        if (hitCount < 0 || missCount < 0 || loadSuccessCount < 0 || loadFailureCount < 0
+                || totalLoadTime < 0 || evictionCount < 0 || expirationCount < 0) {
+            throw new IllegalArgumentException("stats must not be negative");
+        }
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+    }
+
+    /**
+     * 空统计
+     * @return 所有计数为 0 的统计
+     */
+    public static CacheStats empty() {
+        return EMPTY;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * 读取次数
+     * @return 命中与未命中之和
+     */
+    public long requestCount() {
+        return saturatedAdd(hitCount, missCount);
+    }
+
+    /**
+     * 加载次数
+     * @return 成功与失败之和
+     */
+    public long loadCount() {
+        return saturatedAdd(loadSuccessCount, loadFailureCount);
+    }
+
+    /**
+     * 命中率
+     * @return 没有读取时返回 1.0
+     */
+    public double hitRate() {
+        long requestCount = requestCount();
+        return 0 == requestCount ? 1.0d : (double) hitCount / requestCount;
+    }
+
+    /**
+     * 未命中率
+     * @return 没有读取时返回 0.0
+     */
+    public double missRate() {
+        long requestCount = requestCount();
+        return 0 == requestCount ? 0.0d : (double) missCount / requestCount;
+    }
+
+    /**
+     * 平均加载耗时
+     * @return 纳秒, 没有加载时返回 0.0
+     */
+    public double averageLoadPenalty() {
+        long loadCount = loadCount();
+        return 0 == loadCount ? 0.0d : (double) totalLoadTime / loadCount;
+    }
+
+    /**
+     * 两次快照之差, 结果不小于 0
+     * @param other 较早的快照
+     * @return 差值
+     */
+    public CacheStats minus(CacheStats other) {
+        return new CacheStats(
+                Math.max(0L, hitCount - other.hitCount),
+                Math.max(0L, missCount - other.missCount),
+                Math.max(0L, loadSuccessCount - other.loadSuccessCount),
+                Math.max(0L, loadFailureCount - other.loadFailureCount),
+                Math.max(0L, totalLoadTime - other.totalLoadTime),
+                Math.max(0L, evictionCount - other.evictionCount),
+                Math.max(0L, expirationCount - other.expirationCount));
+    }
+
+    /**
+     * 两份统计之和
+     * @param other 另一份统计
+     * @return 和
+     */
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(
+                saturatedAdd(hitCount, other.hitCount),
+                saturatedAdd(missCount, other.missCount),
+                saturatedAdd(loadSuccessCount, other.loadSuccessCount),
+                saturatedAdd(loadFailureCount, other.loadFailureCount),
+                saturatedAdd(totalLoadTime, other.totalLoadTime),
+                saturatedAdd(evictionCount, other.evictionCount),
+                saturatedAdd(expirationCount, other.expirationCount));
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long naiveSum = a + b;
+        if ((a ^ b) < 0 | (a ^ naiveSum) >= 0) {
+            return naiveSum;
+        }
+        return Long.MAX_VALUE + ((naiveSum >>> (Long.SIZE - 1)) ^ 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheStats)) {
+            return false;
+        }
+        CacheStats that = (CacheStats) o;
+        return hitCount == that.hitCount &&
+                missCount == that.missCount &&
+                loadSuccessCount == that.loadSuccessCount &&
+                loadFailureCount == that.loadFailureCount &&
+                totalLoadTime == that.totalLoadTime &&
+                evictionCount == that.evictionCount &&
+                expirationCount == that.expirationCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hitCount, missCount, loadSuccessCount, loadFailureCount,
+                totalLoadTime, evictionCount, expirationCount);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", loadSuccessCount=" + loadSuccessCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", totalLoadTime=" + totalLoadTime +
+                ", evictionCount=" + evictionCount +
+                ", expirationCount=" + expirationCount +
+                '}';
+    }
+
+}
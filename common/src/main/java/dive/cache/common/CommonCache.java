@@ -1,6 +1,10 @@
 package dive.cache.common;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -34,6 +38,16 @@ public interface CommonCache<K, V> {
      */
     V get(K key);
 
+    /**
+     * 获取键对应的值, 不记录命中或未命中
+     * 用于加载前的再次检查等内部读取, 避免一次读取被统计多次; 记录统计的实现应覆盖此方法
+     * @param key 键
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    default V peek(K key) {
+        return this.get(key);
+    }
+
 
     /**
      * 删除对应键值对
@@ -54,6 +68,43 @@ public interface CommonCache<K, V> {
     void clear();
 
 
+    /**
+     * 批量获取
+     * 底层支持批量读取的实现应覆盖此方法, 减少往返次数
+     * @param keys 键
+     * @return 存在的键值对, 不存在的键不包含在内
+     */
+    default Map<K, V> getAll(Collection<? extends K> keys) {
+        Objects.requireNonNull(keys, "keys");
+        Map<K, V> map = new HashMap<>();
+        for (K key : keys) {
+            V v = this.get(key);
+            if (null != v) {
+                map.put(key, v);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * 批量新增或更新
+     * @param map 键值对
+     */
+    default void setAll(Map<? extends K, ? extends V> map) {
+        Objects.requireNonNull(map, "map");
+        map.forEach(this::set);
+    }
+
+    /**
+     * 批量移除
+     * @param keys 键
+     */
+    default void removeAll(Collection<? extends K> keys) {
+        Objects.requireNonNull(keys, "keys");
+        keys.forEach(this::remove);
+    }
+
+
     /**
      * 若不存在则存入
      * @param key 键
@@ -61,7 +112,7 @@ public interface CommonCache<K, V> {
      * @return 值
      */
     default V putIfAbsent(K key, V value) {
-        V v = this.get(key);
+        V v = this.peek(key);
         if (v == null) {
             this.set(key, value);
             v = value;
@@ -82,31 +133,56 @@ public interface CommonCache<K, V> {
 
     /**
      * 获取或生成
+     * 并发未命中同一个键时只有一个线程执行生产者, 其余线程共享其结果
+     * 生产者返回 null 时记为不存在, 开启负缓存的实现在其存活期内不再调用生产者
      * @param key 键
      * @param supplier 生产者
      * @return 值
      */
     default V get(K key, Supplier<V> supplier) {
         V v = this.get(key);
-        if (null == v) {
+        if (null == v && !this.isAbsent(key)) {
             Objects.requireNonNull(supplier, "supplier");
-            this.set(key, (v = supplier.get()));
+            v = SingleFlight.load(this, key, () -> {
+                V loaded = this.peek(key);
+                if (null == loaded && !this.isAbsent(key)) {
+                    if (null == (loaded = this.statsCounter().load(supplier))) {
+                        this.markAbsent(key);
+                    } else {
+                        this.set(key, loaded);
+                    }
+                }
+                return loaded;
+            });
         }
         return v;
     }
 
     /**
      * 获取或映射一个
+     * 并发未命中同一个键时只有一个线程执行映射, 其余线程共享其结果
+     * 映射返回 null 时记为不存在, 开启负缓存的实现在其存活期内不再调用映射
      * @param key 键
      * @param mapping 映射
      * @return 值
      */
     default V computeIfAbsent(K key, Function<? super K, ? extends V> mapping) {
         Objects.requireNonNull(mapping);
-        V v, newValue;
-        return ((v = this.get(key)) == null &&
-                (newValue = mapping.apply(key)) != null &&
-                (v = this.putIfAbsent(key, newValue)) == null) ? newValue : v;
+        V v = this.get(key);
+        if (null == v && !this.isAbsent(key)) {
+            v = SingleFlight.load(this, key, () -> {
+                V old, newValue;
+                if ((old = this.peek(key)) != null || this.isAbsent(key)) {
+                    return old;
+                }
+                if ((newValue = this.statsCounter().load(() -> mapping.apply(key))) == null) {
+                    this.markAbsent(key);
+                    return null;
+                }
+                return (old = this.putIfAbsent(key, newValue)) == null ? newValue : old;
+            });
+        }
+        return v;
     }
 
     /**
@@ -164,4 +240,49 @@ public interface CommonCache<K, V> {
         return newValue;
     }
 
+    /**
+     * 是否已记为不存在, 即加载函数确认不存在且负缓存尚未过期
+     * 默认不支持负缓存
+     * @param key 键
+     * @return 已记为不存在返回 true
+     */
+    default boolean isAbsent(K key) {
+        return false;
+    }
+
+    /**
+     * 将键记为不存在, 在负缓存的存活期内带加载函数的读取直接返回 null
+     * 默认不支持负缓存, 什么也不做
+     * @param key 键
+     */
+    default void markAbsent(K key) {
+    }
+
+    /**
+     * 异步视图, 操作提交到给定的线程池执行
+     * 底层有原生异步接口的实现应覆盖此方法
+     * @param executor 执行操作的线程池
+     * @return 异步缓存
+     */
+    default AsyncCommonCache<K, V> async(Executor executor) {
+        return new ExecutorAsyncCache<>(this, executor);
+    }
+
+    /**
+     * 统计记录者, 默认不记录
+     * 实现类通过覆盖此方法开启统计, 加载函数的耗时由默认方法记录
+     * @return 统计记录者
+     */
+    default StatsCounter statsCounter() {
+        return StatsCounter.disabled();
+    }
+
+    /**
+     * 缓存统计
+     * @return 当前统计的快照
+     */
+    default CacheStats stats() {
+        return this.statsCounter().snapshot();
+    }
+
 }
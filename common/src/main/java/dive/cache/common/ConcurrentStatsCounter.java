@@ -0,0 +1,76 @@
+package dive.cache.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于 LongAdder 的统计记录者, 计数分散在多个单元上, 高并发下记录不争抢同一个变量
+ * @author dawn
+ */
+public class ConcurrentStatsCounter implements StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    @Override
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+        loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+        loadLatency.record(loadTime);
+    }
+
+    @Override
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    @Override
+    public void recordExpiration() {
+        expirationCount.increment();
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(
+                hitCount.sum(),
+                missCount.sum(),
+                loadSuccessCount.sum(),
+                loadFailureCount.sum(),
+                totalLoadTime.sum(),
+                evictionCount.sum(),
+                expirationCount.sum());
+    }
+
+    @Override
+    public long loadPercentile(double percentile) {
+        return loadLatency.percentile(percentile);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+}
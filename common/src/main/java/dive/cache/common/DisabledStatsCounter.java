@@ -0,0 +1,44 @@
+package dive.cache.common;
+
+import java.util.function.Supplier;
+
+/**
+ * 不记录任何统计, 关闭统计时使用, 所有方法均为空操作
+ * @author dawn
+ */
+enum DisabledStatsCounter implements StatsCounter {
+
+    INSTANCE;
+
+    @Override
+    public void recordHits(int count) {}
+
+    @Override
+    public void recordMisses(int count) {}
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {}
+
+    @Override
+    public void recordLoadFailure(long loadTime) {}
+
+    @Override
+    public void recordEviction() {}
+
+    @Override
+    public void recordExpiration() {}
+
+    @Override
+    public CacheStats snapshot() {
+        return CacheStats.empty();
+    }
+
+    /**
+     * 不计时, 直接加载
+     */
+    @Override
+    public <V> V load(Supplier<V> loader) {
+        return loader.get();
+    }
+
+}
@@ -0,0 +1,82 @@
+package dive.cache.common;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 将同步缓存包装为异步缓存, 每个操作提交到给定的线程池执行
+ * 适用于底层没有原生异步接口的实现
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+public class ExecutorAsyncCache<K, V> implements AsyncCommonCache<K, V> {
+
+    /**
+     * 被包装的同步缓存
+     */
+    private final CommonCache<K, V> cache;
+
+    /**
+     * 执行操作的线程池
+     */
+    protected final Executor executor;
+
+    /**
+     * 构造器
+     * @param cache 同步缓存
+     * @param executor 执行操作的线程池
+     */
+    public ExecutorAsyncCache(CommonCache<K, V> cache, Executor executor) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(executor, "executor");
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    /**
+     * 被包装的同步缓存
+     * @return 同步缓存
+     */
+    public CommonCache<K, V> synchronous() {
+        return cache;
+    }
+
+
+    @Override
+    public CompletableFuture<Void> set(K key, V value) {
+        return CompletableFuture.runAsync(() -> cache.set(key, value), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(K key) {
+        return CompletableFuture.supplyAsync(() -> cache.has(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<V> get(K key) {
+        return CompletableFuture.supplyAsync(() -> cache.get(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<V> peek(K key) {
+        return CompletableFuture.supplyAsync(() -> cache.peek(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<V> delete(K key) {
+        return CompletableFuture.supplyAsync(() -> cache.delete(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(K key) {
+        return CompletableFuture.runAsync(() -> cache.remove(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> clear() {
+        return CompletableFuture.runAsync(cache::clear, executor);
+    }
+
+}
@@ -0,0 +1,92 @@
+package dive.cache.common;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 将同步的 TimeCache 包装为异步缓存, 每个操作提交到给定的线程池执行
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+public class ExecutorAsyncTimeCache<K, V> extends ExecutorAsyncCache<K, V> implements AsyncTimeCache<K, V> {
+
+    /**
+     * 被包装的同步缓存
+     */
+    private final TimeCache<K, V> cache;
+
+    /**
+     * 构造器
+     * @param cache 同步缓存
+     * @param executor 执行操作的线程池
+     */
+    public ExecutorAsyncTimeCache(TimeCache<K, V> cache, Executor executor) {
+        super(cache, executor);
+        this.cache = cache;
+    }
+
+    @Override
+    public TimeCache<K, V> synchronous() {
+        return cache;
+    }
+
+
+    @Override
+    public CompletableFuture<Void> set(K key, V value, Instant expire) {
+        return CompletableFuture.runAsync(() -> cache.set(key, value, expire), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> set(K key, V value, long timeout, TimeUnit unit) {
+        return CompletableFuture.runAsync(() -> cache.set(key, value, timeout, unit), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> set(K key, V value, long alive) {
+        return CompletableFuture.runAsync(() -> cache.set(key, value, alive), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(K key, Instant expire) {
+        return CompletableFuture.supplyAsync(() -> cache.has(key, expire), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(K key, long timeout, TimeUnit unit) {
+        return CompletableFuture.supplyAsync(() -> cache.has(key, timeout, unit), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(K key, long alive) {
+        return CompletableFuture.supplyAsync(() -> cache.has(key, alive), executor);
+    }
+
+    @Override
+    public CompletableFuture<V> get(K key, Instant expire) {
+        return CompletableFuture.supplyAsync(() -> cache.get(key, expire), executor);
+    }
+
+    @Override
+    public CompletableFuture<V> get(K key, long timeout, TimeUnit unit) {
+        return CompletableFuture.supplyAsync(() -> cache.get(key, timeout, unit), executor);
+    }
+
+    @Override
+    public CompletableFuture<V> get(K key, long alive) {
+        return CompletableFuture.supplyAsync(() -> cache.get(key, alive), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> expire(K key) {
+        return CompletableFuture.supplyAsync(() -> cache.expire(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Long> last(K key) {
+        return CompletableFuture.supplyAsync(() -> cache.last(key), executor);
+    }
+
+}
@@ -0,0 +1,108 @@
+package dive.cache.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时分布, 用于估算百分位
+ * 按2的幂分段, 每段再等分为8个桶, 相对误差不超过 12.5%, 占用固定内存
+ * @author dawn
+ */
+public class LatencyHistogram {
+
+    /**
+     * 每段的桶数为 2^SUB_BITS
+     */
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * 各桶的计数
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_COUNT);
+
+    /**
+     * 记录一次耗时
+     * @param value 耗时, 负数记为 0
+     */
+    public void record(long value) {
+        this.counts.incrementAndGet(index(Math.max(0L, value)));
+    }
+
+    /**
+     * 记录的总次数
+     * @return 次数
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 估算百分位
+     * @param percentile 百分位, 取值 [0, 1]
+     * @return 该百分位所在桶的上界, 没有记录时返回 0
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[this.counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (0 == total) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(1.0d, Math.max(0.0d, percentile)) * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (rank <= seen) {
+                long upper = lower(i + 1);
+                return upper > 0 ? upper - 1 : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * 清空
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.set(i, 0L);
+        }
+    }
+
+    /**
+     * 值所在的桶
+     * @param value 非负数
+     * @return 桶的下标
+     */
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * 桶的下界
+     * @param index 桶的下标
+     * @return 下界
+     */
+    static long lower(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        int sub = index % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub)) << (exponent - SUB_BITS);
+    }
+
+}
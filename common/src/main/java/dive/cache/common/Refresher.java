@@ -0,0 +1,138 @@
+package dive.cache.common;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 提前刷新策略
+ * 带加载函数的读取命中了剩余存活时间不足 ratio 比例的键时, 立即返回当前值, 同时在后台重新加载
+ * 同一缓存同一键同一时刻只有一个刷新, 线程池已满时放弃本次刷新, 到期后由读取者同步加载
+ * @author dawn
+ */
+public class Refresher implements AutoCloseable {
+
+    /**
+     * 剩余存活时间占比低于该值时刷新
+     */
+    private final double ratio;
+
+    /**
+     * 执行刷新的线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 是否由本对象创建线程池, 关闭时一并关闭
+     */
+    private final boolean owned;
+
+    /**
+     * 正在刷新的键
+     */
+    private final Set<SingleFlight.Flight> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 构造器
+     * @param ratio 剩余存活时间占比低于该值时刷新, 取值 (0, 1)
+     * @param executor 执行刷新的线程池, 应当有界
+     */
+    public Refresher(double ratio, Executor executor) {
+        this(ratio, executor, false);
+    }
+
+    /**
+     * 构造器, 使用有界的守护线程池
+     * @param ratio 剩余存活时间占比低于该值时刷新, 取值 (0, 1)
+     * @param threads 刷新线程数
+     * @param queue 等待刷新的最大数量, 超出的刷新被放弃
+     */
+    public Refresher(double ratio, int threads, int queue) {
+        this(ratio, executor(threads, queue), true);
+    }
+
+    private Refresher(double ratio, Executor executor, boolean owned) {
+        if (!(0 < ratio && ratio < 1)) {
+            throw new IllegalArgumentException("ratio must be between 0 and 1");
+        }
+        if (null == executor) {
+            throw new NullPointerException("executor");
+        }
+        this.ratio = ratio;
+        this.executor = executor;
+        this.owned = owned;
+    }
+
+    /**
+     * 有界的守护线程池, 队列满时放弃任务
+     * @param threads 线程数
+     * @param queue 队列长度
+     * @return 线程池
+     */
+    private static ExecutorService executor(int threads, int queue) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queue), r -> {
+            Thread thread = new Thread(r, "cache-refresh-" + count.incrementAndGet());
+            // 守护线程模式，不阻挡程序结束
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 是否应当刷新
+     * @param last 剩余存活毫秒数
+     * @param alive 写入时的存活毫秒数
+     * @return 进入刷新区间返回 true, 永不过期的键不刷新
+     */
+    public boolean due(long last, long alive) {
+        return 0 < alive && 0 < last && last <= alive * this.ratio;
+    }
+
+    /**
+     * 在后台刷新一个键, 若该键正在刷新或线程池已满则忽略
+     * @param cache 缓存实例, 按引用区分
+     * @param key 键
+     * @param reload 重新加载并存入
+     */
+    public void refresh(Object cache, Object key, Runnable reload) {
+        SingleFlight.Flight flight = new SingleFlight.Flight(cache, key);
+        if (!this.refreshing.add(flight)) {
+            return;
+        }
+        try {
+            this.executor.execute(() -> {
+                try {
+                    reload.run();
+                } catch (RuntimeException e) {
+                    // 刷新失败保留旧值, 到期后由读取者重新加载
+                    e.printStackTrace();
+                } finally {
+                    this.refreshing.remove(flight);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            this.refreshing.remove(flight);
+        }
+    }
+
+    /**
+     * 关闭自建的线程池
+     */
+    @Override
+    public void close() {
+        if (this.owned) {
+            ((ExecutorService) this.executor).shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package dive.cache.common;
+
+/**
+ * 键值对被移除的原因
+ * @author dawn
+ */
+public enum RemovalCause {
+
+    /**
+     * 被调用方删除
+     */
+    EXPLICIT,
+
+    /**
+     * 值被新的值替换
+     */
+    REPLACED,
+
+    /**
+     * 存活时间已到
+     */
+    EXPIRED,
+
+    /**
+     * 因容量限制被淘汰, 或值已被垃圾回收
+     */
+    EVICTED,
+
+    /**
+     * 缓存被清空
+     */
+    CLEARED;
+
+    /**
+     * 是否由缓存自身移除, 而非调用方的删除、替换或清空
+     * @return 过期或淘汰返回 true
+     */
+    public boolean wasEvicted() {
+        return EXPIRED == this || EVICTED == this;
+    }
+
+}
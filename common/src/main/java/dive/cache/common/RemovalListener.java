@@ -0,0 +1,46 @@
+package dive.cache.common;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 键值对被移除时的监听器
+ * 缓存通过 {@link #async(RemovalListener, Executor)} 包装后调用, 监听器不会在读写的线程中执行
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+
+    /**
+     * 键值对已被移除
+     * @param key 键
+     * @param value 值, 值已被垃圾回收或无法读取时为 null
+     * @param cause 原因
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+
+    /**
+     * 在给定的线程池中异步通知, 监听器抛出的异常和线程池的拒绝只打印, 不影响缓存
+     * @param listener 监听器
+     * @param executor 线程池
+     * @param <K> 键的类型
+     * @param <V> 值的类型
+     * @return 异步的监听器
+     */
+    static <K, V> RemovalListener<K, V> async(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        return new AsyncRemovalListener<>(listener, executor);
+    }
+
+    /**
+     * 在共享的单线程守护线程池中按移除顺序异步通知
+     * @param listener 监听器
+     * @param <K> 键的类型
+     * @param <V> 值的类型
+     * @return 异步的监听器
+     */
+    static <K, V> RemovalListener<K, V> async(RemovalListener<? super K, ? super V> listener) {
+        return async(listener, AsyncRemovalListener.Holder.EXECUTOR);
+    }
+
+}
@@ -0,0 +1,171 @@
+package dive.cache.common;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一个缓存同一个键的并发加载
+ * 多个线程同时未命中同一个键时, 只有第一个线程执行加载, 其余线程等待并共享其结果(或异常)
+ * 加载结束后立即移除, 不会保留任何结果, 不影响缓存自身的过期语义
+ * @author dawn
+ */
+public final class SingleFlight {
+
+    /**
+     * 正在进行的加载, 键为 缓存实例 + 缓存键
+     */
+    private static final ConcurrentHashMap<Flight, Call> FLIGHTS = new ConcurrentHashMap<>();
+
+    /**
+     * 正在进行的异步加载
+     */
+    private static final ConcurrentHashMap<Flight, CompletableFuture<Object>> ASYNC_FLIGHTS = new ConcurrentHashMap<>();
+
+    private SingleFlight() {}
+
+    /**
+     * 加载一个键, 同一缓存同一键同一时刻只有一个加载在执行
+     * @param cache 缓存实例, 按引用区分
+     * @param key 键
+     * @param loader 加载过程, 一般为 再次检查缓存 + 生成 + 存入
+     * @param <V> 值的类型
+     * @return 加载的结果
+     * @throws IllegalStateException 加载过程中递归加载了同一个键
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V load(Object cache, Object key, Supplier<V> loader) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(loader, "loader");
+        Flight flight = new Flight(cache, key);
+        Call call = new Call();
+        Call exist = FLIGHTS.putIfAbsent(flight, call);
+        if (null != exist) {
+            if (exist.owner == Thread.currentThread()) {
+                throw new IllegalStateException("recursive load of key: " + key);
+            }
+            try {
+                return (V) exist.future.join();
+            } catch (CompletionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+        try {
+            V v = loader.get();
+            call.future.complete(v);
+            return v;
+        } catch (RuntimeException | Error e) {
+            call.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            FLIGHTS.remove(flight, call);
+        }
+    }
+
+    /**
+     * 异步加载一个键, 同一缓存同一键同一时刻只有一个加载在执行, 不阻塞调用线程
+     * @param cache 缓存实例, 按引用区分
+     * @param key 键
+     * @param loader 加载过程, 一般为 再次检查缓存 + 生成 + 存入
+     * @param <V> 值的类型
+     * @return 加载的结果, 每个调用者得到各自的 future, 取消不影响其他等待者
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> CompletableFuture<V> loadAsync(Object cache, Object key,
+                                                     Supplier<? extends CompletionStage<V>> loader) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(loader, "loader");
+        Flight flight = new Flight(cache, key);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> exist = ASYNC_FLIGHTS.putIfAbsent(flight, future);
+        if (null != exist) {
+            return exist.thenApply(v -> (V) v);
+        }
+        try {
+            loader.get().whenComplete((v, e) -> {
+                // 先移除再完成, 完成之后到达的调用者会重新检查缓存
+                ASYNC_FLIGHTS.remove(flight, future);
+                if (null != e) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(v);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            ASYNC_FLIGHTS.remove(flight, future);
+            future.completeExceptionally(e);
+        }
+        return future.thenApply(v -> (V) v);
+    }
+
+    /**
+     * 当前正在进行的加载数量
+     * @return 数量
+     */
+    public static int inflight() {
+        return FLIGHTS.size() + ASYNC_FLIGHTS.size();
+    }
+
+    /**
+     * 将加载者抛出的异常原样抛给等待者
+     * @param e 异常
+     * @return 不会返回
+     */
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new CompletionException(e);
+    }
+
+    /**
+     * 一次加载, 记录执行线程以发现递归加载
+     */
+    private static final class Call {
+
+        private final Thread owner = Thread.currentThread();
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+    }
+
+    /**
+     * 加载的标识, 缓存按引用比较, 键按 equals 比较
+     */
+    static final class Flight {
+
+        private final Object cache;
+
+        private final Object key;
+
+        Flight(Object cache, Object key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Flight)) {
+                return false;
+            }
+            Flight flight = (Flight) o;
+            return cache == flight.cache && Objects.equals(key, flight.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(cache) + Objects.hashCode(key);
+        }
+
+    }
+
+}
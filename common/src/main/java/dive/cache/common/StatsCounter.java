@@ -0,0 +1,96 @@
+package dive.cache.common;
+
+import java.util.function.Supplier;
+
+/**
+ * 缓存统计的记录者
+ * @author dawn
+ */
+public interface StatsCounter {
+
+    /**
+     * 记录命中
+     * @param count 次数
+     */
+    void recordHits(int count);
+
+    /**
+     * 记录未命中
+     * @param count 次数
+     */
+    void recordMisses(int count);
+
+    /**
+     * 记录加载成功
+     * @param loadTime 耗时, 纳秒
+     */
+    void recordLoadSuccess(long loadTime);
+
+    /**
+     * 记录加载失败
+     * @param loadTime 耗时, 纳秒
+     */
+    void recordLoadFailure(long loadTime);
+
+    /**
+     * 记录因容量淘汰
+     */
+    void recordEviction();
+
+    /**
+     * 记录因过期移除
+     */
+    void recordExpiration();
+
+    /**
+     * 当前统计的快照
+     * @return 快照
+     */
+    CacheStats snapshot();
+
+    /**
+     * 加载耗时的百分位
+     * @param percentile 百分位, 取值 [0, 1]
+     * @return 纳秒, 不统计分布时返回 0
+     */
+    default long loadPercentile(double percentile) {
+        return 0L;
+    }
+
+
+    /**
+     * 执行加载并记录耗时, 抛出异常记为失败
+     * @param loader 加载函数
+     * @param <V> 值的类型
+     * @return 加载结果
+     */
+    default <V> V load(Supplier<V> loader) {
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            this.recordLoadFailure(System.nanoTime() - start);
+            throw e;
+        }
+        this.recordLoadSuccess(System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * 基于 LongAdder 的记录者, 并发记录时无竞争
+     * @return 新的记录者
+     */
+    static StatsCounter concurrent() {
+        return new ConcurrentStatsCounter();
+    }
+
+    /**
+     * 不记录任何统计
+     * @return 共享的空记录者
+     */
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+
+}
@@ -1,7 +1,9 @@
 package dive.cache.common;
 
 import java.time.Instant;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -106,6 +108,17 @@ public interface TimeCache<K, V> extends CommonCache<K, V> {
     long last(K key);
 
 
+    /**
+     * 批量新增或更新
+     * @param map 键值对
+     * @param alive 存活毫秒数, 若为负数, 表明永不过期
+     */
+    default void setAll(Map<? extends K, ? extends V> map, long alive) {
+        Objects.requireNonNull(map, "map");
+        map.forEach((k, v) -> this.set(k, v, alive));
+    }
+
+
     /**
      * 若不存在则存入
      * @param key 键
@@ -114,7 +127,7 @@ public interface TimeCache<K, V> extends CommonCache<K, V> {
      * @return 值
      */
     default V putIfAbsent(K key, V value, long alive) {
-        V v = this.get(key);
+        V v = this.peek(key);
         if (v == null) {
             this.set(key, value, alive);
             v = value;
@@ -124,6 +137,8 @@ public interface TimeCache<K, V> extends CommonCache<K, V> {
 
     /**
      * 获取或生成
+     * 并发未命中同一个键时只有一个线程执行生产者, 其余线程共享其结果
+     * 生产者返回 null 时记为不存在, 负缓存使用实现类单独设置的存活时间, 而非 alive
      * @param key 键
      * @param supplier 生产者
      * @param alive 若存在, 更新存活毫秒数, 若为负数, 表明永不过期
@@ -132,14 +147,30 @@ public interface TimeCache<K, V> extends CommonCache<K, V> {
     default V get(K key, Supplier<V> supplier, long alive) {
         V v = this.get(key);
         if (null == v) {
+            if (this.isAbsent(key)) {
+                return null;
+            }
             Objects.requireNonNull(supplier, "supplier");
-            this.set(key, (v = supplier.get()), alive);
+            v = SingleFlight.load(this, key, () -> {
+                V loaded = this.peek(key);
+                if (null == loaded && !this.isAbsent(key)) {
+                    if (null == (loaded = this.statsCounter().load(supplier))) {
+                        this.markAbsent(key);
+                    } else {
+                        this.set(key, loaded, alive);
+                    }
+                }
+                return loaded;
+            });
+        } else {
+            this.refresh(key, k -> supplier.get(), alive);
         }
         return v;
     }
 
     /**
      * 获取或映射一个
+     * 并发未命中同一个键时只有一个线程执行映射, 其余线程共享其结果
      * @param key 键
      * @param mapping 映射
      * @param alive 若存在, 更新存活毫秒数, 若为负数, 表明永不过期
@@ -147,10 +178,65 @@ public interface TimeCache<K, V> extends CommonCache<K, V> {
      */
     default V computeIfAbsent(K key, Function<? super K, ? extends V> mapping, long alive) {
         Objects.requireNonNull(mapping);
-        V v, newValue;
-        return ((v = this.get(key)) == null &&
-                (newValue = mapping.apply(key)) != null &&
-                (v = this.putIfAbsent(key, newValue, alive)) == null) ? newValue : v;
+        V v = this.get(key);
+        if (null == v) {
+            if (this.isAbsent(key)) {
+                return null;
+            }
+            v = SingleFlight.load(this, key, () -> {
+                V old, newValue;
+                if ((old = this.peek(key)) != null || this.isAbsent(key)) {
+                    return old;
+                }
+                if ((newValue = this.statsCounter().load(() -> mapping.apply(key))) == null) {
+                    this.markAbsent(key);
+                    return null;
+                }
+                return (old = this.putIfAbsent(key, newValue, alive)) == null ? newValue : old;
+            });
+        } else {
+            this.refresh(key, mapping, alive);
+        }
+        return v;
+    }
+
+    /**
+     * 提前刷新策略, 默认不刷新
+     * @return 刷新策略, 不刷新返回 null
+     */
+    default Refresher refresher() {
+        return null;
+    }
+
+    /**
+     * 命中的键进入刷新区间时, 在后台重新加载
+     * 刷新与未命中的加载共用 SingleFlight, 刷新期间到期的读取者等待刷新结果, 不会重复加载
+     * @param key 键
+     * @param mapping 映射
+     * @param alive 存活毫秒数
+     */
+    default void refresh(K key, Function<? super K, ? extends V> mapping, long alive) {
+        Refresher refresher = this.refresher();
+        if (null == refresher || alive <= 0 || !refresher.due(this.last(key), alive)) {
+            return;
+        }
+        refresher.refresh(this, key, () -> SingleFlight.load(this, key, () -> {
+            V newValue = this.statsCounter().load(() -> mapping.apply(key));
+            if (null != newValue) {
+                this.set(key, newValue, alive);
+            }
+            return newValue;
+        }));
+    }
+
+    /**
+     * 异步视图, 操作提交到给定的线程池执行
+     * @param executor 执行操作的线程池
+     * @return 异步缓存
+     */
+    @Override
+    default AsyncTimeCache<K, V> async(Executor executor) {
+        return new ExecutorAsyncTimeCache<>(this, executor);
     }
 
 }
@@ -1,7 +1,25 @@
 package dive.cache.ehcache;
 
+import dive.cache.common.CacheStats;
 import dive.cache.common.CommonCache;
+import dive.cache.common.RemovalCause;
+import dive.cache.common.RemovalListener;
+import dive.cache.common.StatsCounter;
 import org.ehcache.Cache;
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventFiring;
+import org.ehcache.event.EventOrdering;
+import org.ehcache.event.EventType;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * 一个用于缓存键值对数据的对象, 利用ehcache实现
@@ -45,18 +63,127 @@ public class EhcacheCache<K, V> implements CommonCache<K, V> {
      */
     private final Cache<K, V> cache;
 
+    /**
+     * ehcache自身的统计, 可为 null
+     * 例:
+     *  StatisticsService statisticsService = new DefaultStatisticsService();
+     *  CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
+     *      .using(statisticsService)
+     *      .build(true);
+     *  CacheStatistics statistics = statisticsService.getCacheStatistics("long-string");
+     */
+    private final CacheStatistics statistics;
+
+    /**
+     * 统计记录者, 有ehcache统计时只记录加载
+     */
+    private volatile StatsCounter stats = StatsCounter.concurrent();
+
+    /**
+     * 已注册到ehcache的事件监听器, 为 null 表示没有
+     */
+    private CacheEventListener<K, V> events;
+
     /**
      * 构造器
      * @param cache ehcache的Cache实例
      */
     public EhcacheCache(Cache<K, V> cache) {
+        this(cache, null);
+    }
+
+    /**
+     * 构造器
+     * @param cache ehcache的Cache实例
+     * @param statistics ehcache对该缓存的统计, 为 null 时由本对象统计命中和未命中
+     */
+    public EhcacheCache(Cache<K, V> cache, CacheStatistics statistics) {
         this.cache = cache;
+        this.statistics = statistics;
     }
 
     public Cache<K, V> getCache() {
         return cache;
     }
 
+    /**
+     * 设置移除监听器, 在共享的单线程守护线程池中按移除顺序异步通知
+     * @param listener 监听器, 为 null 时不再通知
+     * @return 本实例
+     */
+    public EhcacheCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener) {
+        return this.events(null == listener ? null : RemovalListener.async(listener));
+    }
+
+    /**
+     * 设置移除监听器, 注册为ehcache的事件监听器, ehcache在读写线程中同步触发, 通知交给线程池执行
+     * clear() 在ehcache中不触发事件, 因此不会收到 CLEARED
+     * @param listener 监听器, 为 null 时不再通知
+     * @param executor 执行通知的线程池
+     * @return 本实例
+     */
+    public EhcacheCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        return this.events(null == listener ? null : RemovalListener.async(listener, executor));
+    }
+
+    private synchronized EhcacheCache<K, V> events(RemovalListener<K, V> listener) {
+        if (null != events) {
+            cache.getRuntimeConfiguration().deregisterCacheEventListener(events);
+            events = null;
+        }
+        if (null != listener) {
+            events = event -> listener.onRemoval(event.getKey(), event.getOldValue(), cause(event));
+            cache.getRuntimeConfiguration().registerCacheEventListener(events,
+                    EventOrdering.UNORDERED, EventFiring.SYNCHRONOUS,
+                    EnumSet.of(EventType.UPDATED, EventType.REMOVED, EventType.EXPIRED, EventType.EVICTED));
+        }
+        return this;
+    }
+
+    /**
+     * 转换移除原因
+     * @param event ehcache的事件
+     * @return 移除原因
+     */
+    private static RemovalCause cause(CacheEvent<?, ?> event) {
+        switch (event.getType()) {
+            case UPDATED: return RemovalCause.REPLACED;
+            case EXPIRED: return RemovalCause.EXPIRED;
+            case EVICTED: return RemovalCause.EVICTED;
+            case REMOVED:
+            default: return RemovalCause.EXPLICIT;
+        }
+    }
+
+    /**
+     * 开启或关闭本对象的统计
+     * @param enabled 是否记录
+     * @return 本实例
+     */
+    public EhcacheCache<K, V> recordStats(boolean enabled) {
+        this.stats = enabled ? StatsCounter.concurrent() : StatsCounter.disabled();
+        return this;
+    }
+
+    @Override
+    public StatsCounter statsCounter() {
+        return stats;
+    }
+
+    /**
+     * 有ehcache统计时, 命中, 未命中, 淘汰和过期取自ehcache, 加载取自本对象
+     */
+    @Override
+    public CacheStats stats() {
+        CacheStats own = stats.snapshot();
+        if (null == statistics) {
+            return own;
+        }
+        return new CacheStats(statistics.getCacheHits(), statistics.getCacheMisses(),
+                own.loadSuccessCount(), own.loadFailureCount(), own.totalLoadTime(),
+                statistics.getCacheEvictions(), statistics.getCacheExpirations());
+    }
+
 
     @Override
     public void set(K key, V value) {
@@ -71,6 +198,22 @@ public class EhcacheCache<K, V> implements CommonCache<K, V> {
 
     @Override
     public V get(K key) {
+        V v = cache.get(key);
+        if (null == statistics) {
+            if (null != v) {
+                stats.recordHits(1);
+            } else {
+                stats.recordMisses(1);
+            }
+        }
+        return v;
+    }
+
+    /**
+     * 使用ehcache的统计时, ehcache仍会记录这次读取
+     */
+    @Override
+    public V peek(K key) {
         return cache.get(key);
     }
 
@@ -92,4 +235,32 @@ public class EhcacheCache<K, V> implements CommonCache<K, V> {
         cache.clear();
     }
 
+
+
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> map = new HashMap<>();
+        Set<K> set = new HashSet<>(keys);
+        cache.getAll(set).forEach((k, v) -> {
+            if (null != v) {
+                map.put(k, v);
+            }
+        });
+        if (null == statistics) {
+            stats.recordHits(map.size());
+            stats.recordMisses(set.size() - map.size());
+        }
+        return map;
+    }
+
+    @Override
+    public void setAll(Map<? extends K, ? extends V> map) {
+        cache.putAll(map);
+    }
+
+    @Override
+    public void removeAll(Collection<? extends K> keys) {
+        cache.removeAll(new HashSet<>(keys));
+    }
+
 }
@@ -1,5 +1,12 @@
 package test.cache.ehcache;
 
+import dive.cache.common.RemovalCause;
+import dive.cache.ehcache.EhcacheCache;
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -7,6 +14,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest
 public class EhcacheTest {
@@ -54,4 +68,41 @@ public class EhcacheTest {
 
     }
 
+    @Test
+    public void test2() throws Exception {
+        CacheManager manager = CacheManagerBuilder.newCacheManagerBuilder().build(true);
+        try {
+            List<String> events = new CopyOnWriteArrayList<>();
+            EhcacheCache<Long, String> cache = new EhcacheCache<>(manager.createCache("removal",
+                    CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                            Long.class, String.class, ResourcePoolsBuilder.heap(10))
+                    .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(200)))))
+                    .removalListener((k, v, c) -> events.add(k + "=" + v + ":" + c), Runnable::run);
+            cache.set(1L, "a");
+            cache.set(1L, "b");
+            cache.remove(1L);
+            cache.set(2L, "c");
+            Thread.sleep(400L);
+            // ehcache在访问到过期的键时触发过期事件
+            Assert.assertNull(cache.get(2L));
+            Assert.assertEquals(Arrays.asList("1=a:REPLACED", "1=b:EXPLICIT", "2=c:EXPIRED"), events);
+
+            // 默认在共享的线程池中异步通知
+            CountDownLatch latch = new CountDownLatch(1);
+            EhcacheCache<Long, Unique> async = new EhcacheCache<>(manager.createCache("removal-async",
+                    CacheConfigurationBuilder.newCacheConfigurationBuilder(
+                            Long.class, Unique.class, ResourcePoolsBuilder.heap(10))))
+                    .removalListener((k, v, c) -> {
+                        if (RemovalCause.EXPLICIT == c && new Unique(1L, "1", "1").equals(v)) {
+                            latch.countDown();
+                        }
+                    });
+            async.set(1L, new Unique(1L, "1", "1"));
+            async.remove(1L);
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            manager.close();
+        }
+    }
+
 }
@@ -1,7 +1,15 @@
 package dive.cache.guava;
 
 import com.google.common.cache.LoadingCache;
+import dive.cache.common.CacheStats;
 import dive.cache.common.CommonCache;
+import dive.cache.common.RemovalCause;
+import dive.cache.common.RemovalListener;
+import dive.cache.common.StatsCounter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * 一个用于缓存键值对数据的对象, 利用ehcache实现
@@ -27,6 +35,11 @@ public class GuavaCache<K, V> implements CommonCache<K, V> {
      */
     private final LoadingCache<K, V> cache;
 
+    /**
+     * 记录经由本对象加载函数的加载, 命中, 未命中和淘汰由guava统计, 需在构建时调用 recordStats()
+     */
+    private volatile StatsCounter stats = StatsCounter.concurrent();
+
     /**
      * 构造器
      * @param cache guava的LoadingCache实例
@@ -39,6 +52,76 @@ public class GuavaCache<K, V> implements CommonCache<K, V> {
         return cache;
     }
 
+    /**
+     * 将监听器转换为guava的移除监听器, 构建时传入 CacheBuilder.removalListener
+     * guava在读写线程中调用移除监听器, 转换后的监听器只把通知交给线程池
+     * invalidateAll 在guava中为 EXPLICIT, 无法区分为 CLEARED
+     * @param listener 监听器
+     * @param executor 执行通知的线程池
+     * @param <K> 键的类型
+     * @param <V> 值的类型
+     * @return guava的移除监听器
+     */
+    public static <K, V> com.google.common.cache.RemovalListener<K, V> removalListener(
+            RemovalListener<? super K, ? super V> listener, Executor executor) {
+        RemovalListener<K, V> async = RemovalListener.async(listener, executor);
+        return n -> async.onRemoval(n.getKey(), n.getValue(), cause(n.getCause()));
+    }
+
+    /**
+     * 将监听器转换为guava的移除监听器, 在共享的单线程守护线程池中按移除顺序异步通知
+     * @param listener 监听器
+     * @param <K> 键的类型
+     * @param <V> 值的类型
+     * @return guava的移除监听器
+     */
+    public static <K, V> com.google.common.cache.RemovalListener<K, V> removalListener(
+            RemovalListener<? super K, ? super V> listener) {
+        RemovalListener<K, V> async = RemovalListener.async(listener);
+        return n -> async.onRemoval(n.getKey(), n.getValue(), cause(n.getCause()));
+    }
+
+    /**
+     * 转换移除原因
+     * @param cause guava的移除原因
+     * @return 移除原因
+     */
+    private static RemovalCause cause(com.google.common.cache.RemovalCause cause) {
+        switch (cause) {
+            case EXPLICIT: return RemovalCause.EXPLICIT;
+            case REPLACED: return RemovalCause.REPLACED;
+            case EXPIRED: return RemovalCause.EXPIRED;
+            case COLLECTED:
+            case SIZE:
+            default: return RemovalCause.EVICTED;
+        }
+    }
+
+    /**
+     * 开启或关闭本对象的加载统计, guava自身的统计由构建时的 recordStats() 决定
+     * @param enabled 是否记录
+     * @return 本实例
+     */
+    public GuavaCache<K, V> recordStats(boolean enabled) {
+        this.stats = enabled ? StatsCounter.concurrent() : StatsCounter.disabled();
+        return this;
+    }
+
+    @Override
+    public StatsCounter statsCounter() {
+        return stats;
+    }
+
+    /**
+     * guava的统计与本对象的加载统计之和, guava的淘汰次数包含过期移除
+     */
+    @Override
+    public CacheStats stats() {
+        com.google.common.cache.CacheStats s = cache.stats();
+        return new CacheStats(s.hitCount(), s.missCount(), s.loadSuccessCount(), s.loadExceptionCount(),
+                s.totalLoadTime(), s.evictionCount(), 0L).plus(stats.snapshot());
+    }
+
 
     @Override
     public void set(K key, V value) {
@@ -56,6 +139,14 @@ public class GuavaCache<K, V> implements CommonCache<K, V> {
         return cache.getIfPresent(key);
     }
 
+    /**
+     * 经由 asMap 读取, guava不记录命中或未命中
+     */
+    @Override
+    public V peek(K key) {
+        return cache.asMap().get(key);
+    }
+
 
     @Override
     public V delete(K key) {
@@ -74,4 +165,21 @@ public class GuavaCache<K, V> implements CommonCache<K, V> {
         cache.invalidateAll();
     }
 
+
+
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        return cache.getAllPresent(keys);
+    }
+
+    @Override
+    public void setAll(Map<? extends K, ? extends V> map) {
+        cache.putAll(map);
+    }
+
+    @Override
+    public void removeAll(Collection<? extends K> keys) {
+        cache.invalidateAll(keys);
+    }
+
 }
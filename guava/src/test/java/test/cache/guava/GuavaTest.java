@@ -1,5 +1,10 @@
 package test.cache.guava;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import dive.cache.common.RemovalCause;
+import dive.cache.guava.GuavaCache;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -7,6 +12,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 @RunWith(SpringRunner.class)
 @SpringBootTest
 public class GuavaTest {
@@ -54,4 +66,51 @@ public class GuavaTest {
 
     }
 
+    @Test
+    public void test2() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        List<String> events = new CopyOnWriteArrayList<>();
+        GuavaCache<Integer, String> cache = new GuavaCache<>(CacheBuilder.newBuilder()
+                .ticker(new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos.get();
+                    }
+                })
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .removalListener(GuavaCache.<Integer, String>removalListener(
+                        (k, v, c) -> events.add(k + "=" + v + ":" + c), Runnable::run))
+                .build(new CacheLoader<Integer, String>() {
+                    @Override
+                    public String load(Integer key) throws Exception {
+                        return null;
+                    }
+                }));
+        cache.set(1, "a");
+        cache.set(1, "b");
+        cache.remove(1);
+        cache.set(2, "c");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        cache.getCache().cleanUp();
+        Assert.assertEquals(Arrays.asList("1=a:REPLACED", "1=b:EXPLICIT", "2=c:EXPIRED"), events);
+
+        // 默认在共享的线程池中异步通知
+        CountDownLatch latch = new CountDownLatch(1);
+        GuavaCache<Integer, Unique> async = new GuavaCache<>(CacheBuilder.newBuilder()
+                .removalListener(GuavaCache.<Integer, Unique>removalListener((k, v, c) -> {
+                    if (RemovalCause.EXPLICIT == c && new Unique(1L, "1", "1").equals(v)) {
+                        latch.countDown();
+                    }
+                }))
+                .build(new CacheLoader<Integer, Unique>() {
+                    @Override
+                    public Unique load(Integer key) throws Exception {
+                        return null;
+                    }
+                }));
+        async.set(1, new Unique(1L, "1", "1"));
+        async.remove(1);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
 }
@@ -0,0 +1,76 @@
+package dive.cache.mime;
+
+import dive.cache.common.ExecutorAsyncTimeCache;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PersistCache 的异步视图
+ * 只在内存中就能回答的操作(存在判断, 过期时间, 已读入内存的值)直接完成, 不切换线程
+ * 需要读写文件的操作提交到 I/O 线程池, 不占用调用线程
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class AsyncPersistCache<K extends Serializable, V extends Serializable> extends ExecutorAsyncTimeCache<K, V> {
+
+    /**
+     * 默认的 I/O 线程池
+     */
+    static class Holder {
+        static final ExecutorService IO;
+        static {
+            AtomicInteger count = new AtomicInteger();
+            IO = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "mime-cache-io-" + count.incrementAndGet());
+                // 守护线程模式，不阻挡程序结束
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 被包装的缓存
+     */
+    private final PersistCache<K, V> cache;
+
+    /**
+     * 构造器
+     * @param cache 被包装的缓存
+     * @param executor 读写文件的线程池
+     */
+    AsyncPersistCache(PersistCache<K, V> cache, Executor executor) {
+        super(cache, executor);
+        this.cache = cache;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(K key) {
+        return CompletableFuture.completedFuture(this.cache.has(key));
+    }
+
+    @Override
+    public CompletableFuture<V> get(K key) {
+        if (this.cache.loaded(key)) {
+            return CompletableFuture.completedFuture(this.cache.get(key));
+        }
+        return super.get(key);
+    }
+
+    @Override
+    public CompletableFuture<Long> expire(K key) {
+        return CompletableFuture.completedFuture(this.cache.expire(key));
+    }
+
+    @Override
+    public CompletableFuture<Long> last(K key) {
+        return CompletableFuture.completedFuture(this.cache.last(key));
+    }
+
+}
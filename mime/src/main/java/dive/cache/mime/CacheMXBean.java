@@ -0,0 +1,90 @@
+package dive.cache.mime;
+
+/**
+ * 单个缓存的监控指标, 注册为 JMX MBean: dive.cache.mime:type=Cache,name=缓存名称
+ * 时间单位均为毫秒
+ * @author dawn
+ */
+public interface CacheMXBean {
+
+    /**
+     * 缓存名称
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 有效的缓存个数
+     * @return 个数, 不支持返回 -1
+     */
+    long getEntryCount();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * 命中率
+     * @return 没有读取时返回 1.0
+     */
+    double getHitRatio();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadMillis();
+
+    double getLoadP50Millis();
+
+    double getLoadP95Millis();
+
+    double getLoadP99Millis();
+
+    long getEvictionCount();
+
+    long getExpirationCount();
+
+    /**
+     * 持久化占用的磁盘字节数
+     * @return 字节数, 非持久化缓存返回 -1
+     */
+    long getBytesOnDisk();
+
+    /**
+     * 回收方式
+     * @return SWEEP 或 SAMPLE
+     */
+    String getReclaimStrategy();
+
+    /**
+     * 当前的整体回收周期, 自适应计划下随回收结果变化
+     * @return 毫秒
+     */
+    long getReclaimPeriodMillis();
+
+    /**
+     * 最近一次整体回收的耗时
+     * @return 毫秒
+     */
+    double getLastReclaimMillis();
+
+    /**
+     * 整体回收的最长耗时
+     * @return 毫秒
+     */
+    double getMaxReclaimMillis();
+
+    /**
+     * 最近一次回收移除的键个数, 含抽样回收
+     * @return 个数
+     */
+    long getLastReclaimRemoved();
+
+    /**
+     * 回收移除的键总数, 含抽样回收
+     * @return 个数
+     */
+    long getTotalReclaimRemoved();
+
+}
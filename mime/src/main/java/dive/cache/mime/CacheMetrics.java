@@ -0,0 +1,20 @@
+package dive.cache.mime;
+
+/**
+ * 缓存监控的入口
+ * 所有缓存和回收定时器默认注册为 JMX MBean, 可通过系统属性 dive.cache.mime.jmx=false 关闭
+ * @author dawn
+ */
+public final class CacheMetrics {
+
+    private CacheMetrics() {}
+
+    /**
+     * 将所有缓存和回收定时器的指标注册到指标库, 之后创建的缓存也会注册
+     * @param registry 指标库的桥接
+     */
+    public static void bind(MetricsRegistry registry) {
+        CacheUtil.getInstance().bind(registry);
+    }
+
+}
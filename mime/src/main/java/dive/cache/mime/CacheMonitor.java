@@ -0,0 +1,234 @@
+package dive.cache.mime;
+
+import dive.cache.common.CacheStats;
+import dive.cache.common.CommonCache;
+import dive.cache.common.StatsCounter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个缓存的监控, 统计取自缓存的 StatsCounter, 回收耗时由回收定时器记录
+ * @author dawn
+ */
+class CacheMonitor implements CacheMXBean {
+
+    private static final double NANOS_PER_MILLI = 1000_000d;
+
+    /**
+     * 被监控的缓存
+     */
+    private final Reclaimable cache;
+
+    /**
+     * 名称
+     */
+    private final String name;
+
+    private volatile long lastReclaimNanos;
+
+    private volatile long maxReclaimNanos;
+
+    private volatile long lastReclaimRemoved;
+
+    private final LongAdder totalReclaimRemoved = new LongAdder();
+
+    /**
+     * 当前的整体回收周期, 毫秒
+     */
+    private volatile long reclaimPeriod;
+
+    CacheMonitor(Reclaimable cache) {
+        this.cache = cache;
+        this.name = cache.name();
+    }
+
+    Reclaimable cache() {
+        return this.cache;
+    }
+
+    /**
+     * 记录一次整体回收, 仅由回收线程调用
+     * @param nanos 耗时, 纳秒
+     * @param removed 移除的键个数
+     */
+    void reclaimed(long nanos, int removed) {
+        this.lastReclaimNanos = nanos;
+        if (this.maxReclaimNanos < nanos) {
+            this.maxReclaimNanos = nanos;
+        }
+        this.removed(removed);
+    }
+
+    /**
+     * 记录下次整体回收的周期
+     * @param period 周期, 毫秒
+     */
+    void period(long period) {
+        this.reclaimPeriod = period;
+    }
+
+    /**
+     * 记录回收移除的键个数
+     * @param removed 个数
+     */
+    private void removed(int removed) {
+        this.lastReclaimRemoved = removed;
+        this.totalReclaimRemoved.add(removed);
+    }
+
+    /**
+     * 记录一次抽样回收移除的键个数
+     * @param removed 个数
+     */
+    void sampled(int removed) {
+        this.totalReclaimRemoved.add(removed);
+    }
+
+    /**
+     * 缓存的统计记录者
+     * @return 记录者, 非 CommonCache 返回空记录者
+     */
+    private StatsCounter counter() {
+        return this.cache instanceof CommonCache
+                ? ((CommonCache<?, ?>) this.cache).statsCounter()
+                : StatsCounter.disabled();
+    }
+
+    private CacheStats stats() {
+        return this.counter().snapshot();
+    }
+
+    /**
+     * 指标的标签
+     * @return 标签
+     */
+    Map<String, String> tags() {
+        return Collections.singletonMap("cache", this.name);
+    }
+
+    /**
+     * 注册到指标库
+     * @param registry 指标库
+     */
+    void bind(MetricsRegistry registry) {
+        Map<String, String> tags = this.tags();
+        registry.gauge("cache.entries", tags, this::getEntryCount);
+        registry.gauge("cache.hits", tags, this::getHitCount);
+        registry.gauge("cache.misses", tags, this::getMissCount);
+        registry.gauge("cache.hit.ratio", tags, this::getHitRatio);
+        registry.gauge("cache.load.success", tags, this::getLoadSuccessCount);
+        registry.gauge("cache.load.failure", tags, this::getLoadFailureCount);
+        registry.gauge("cache.load.p50", tags, this::getLoadP50Millis);
+        registry.gauge("cache.load.p95", tags, this::getLoadP95Millis);
+        registry.gauge("cache.load.p99", tags, this::getLoadP99Millis);
+        registry.gauge("cache.evictions", tags, this::getEvictionCount);
+        registry.gauge("cache.expirations", tags, this::getExpirationCount);
+        registry.gauge("cache.disk.bytes", tags, this::getBytesOnDisk);
+        registry.gauge("cache.reclaim.last", tags, this::getLastReclaimMillis);
+        registry.gauge("cache.reclaim.removed", tags, this::getLastReclaimRemoved);
+        registry.gauge("cache.reclaim.period", tags, this::getReclaimPeriodMillis);
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getEntryCount() {
+        return this.cache.entries();
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.stats().missCount();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return this.stats().hitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return this.stats().loadSuccessCount();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return this.stats().loadFailureCount();
+    }
+
+    @Override
+    public double getAverageLoadMillis() {
+        return this.stats().averageLoadPenalty() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadP50Millis() {
+        return this.counter().loadPercentile(0.50d) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadP95Millis() {
+        return this.counter().loadPercentile(0.95d) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLoadP99Millis() {
+        return this.counter().loadPercentile(0.99d) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return this.stats().evictionCount();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return this.stats().expirationCount();
+    }
+
+    @Override
+    public long getBytesOnDisk() {
+        return this.cache instanceof PersistCache ? ((PersistCache<?, ?>) this.cache).bytes() : -1L;
+    }
+
+    @Override
+    public String getReclaimStrategy() {
+        return this.cache.strategy().name();
+    }
+
+    @Override
+    public long getReclaimPeriodMillis() {
+        return this.reclaimPeriod;
+    }
+
+    @Override
+    public double getLastReclaimMillis() {
+        return this.lastReclaimNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxReclaimMillis() {
+        return this.maxReclaimNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getLastReclaimRemoved() {
+        return this.lastReclaimRemoved;
+    }
+
+    @Override
+    public long getTotalReclaimRemoved() {
+        return this.totalReclaimRemoved.sum();
+    }
+
+}
@@ -1,6 +1,12 @@
 package dive.cache.mime;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 定时清除和公共方法
@@ -11,17 +17,58 @@ class CacheUtil {
     /**
      * 单例对象
      */
-    private static CacheUtil instance;
+    private static volatile CacheUtil instance;
 
     /**
-     * 定时清理任务延迟执行时间，毫秒
+     * 默认的定时清理任务延迟执行时间，毫秒
      */
-    static long delay = 1000 * 60 * 3;
+    static final long delay = 1000 * 60 * 3;
 
     /**
-     * 定时任务执行周期，毫秒
+     * 默认的定时任务执行周期，毫秒
      */
-    static long period = 1000 * 60 * 7;
+    static final long period = 1000 * 60 * 7;
+
+    /**
+     * 抽样回收每轮的间隔，毫秒
+     */
+    static long cycle = 100;
+
+    /**
+     * 抽样回收每轮的时间预算，毫秒
+     */
+    static long budget = 25;
+
+    /**
+     * 抽样回收每次的样本个数
+     */
+    static int samples = 20;
+
+    /**
+     * 样本中过期比例超过该百分比时继续抽样
+     */
+    static int stale = 10;
+
+    /**
+     * 整体回收的并行度, 即同时回收的缓存个数上限
+     */
+    static volatile int parallelism = Integer.getInteger("dive.cache.mime.reclaim.parallelism",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+
+    /**
+     * 整体回收每次的时间预算，毫秒，用完后让出线程，未处理完的部分稍后继续
+     */
+    static volatile long slice = Long.getLong("dive.cache.mime.reclaim.slice", 50L);
+
+    /**
+     * 逐个处理节点时, 每处理这么多个检查一次时间预算, 取值为2的幂减一
+     */
+    static final int CHECK_MASK = 63;
+
+    /**
+     * 是否注册 JMX MBean
+     */
+    static boolean jmx = Boolean.parseBoolean(System.getProperty("dive.cache.mime.jmx", "true"));
 
     /**
      * 所有需要进行回收空间的缓存对象
@@ -29,81 +76,534 @@ class CacheUtil {
     private final CopyOnWriteArraySet<Reclaimable> caches = new CopyOnWriteArraySet<>();
 
     /**
-     * 回收空间定时器
+     * 每个缓存的监控
      */
-    private ScheduledExecutorService schedule = null;
+    private final ConcurrentHashMap<Reclaimable, CacheMonitor> monitors = new ConcurrentHashMap<>();
 
     /**
-     * 标记程序是否结束，不同状态下的回收方法不同
+     * 每个缓存由本对象注册成功的 MBean 名, 同名已被占用时不注册, 注销时也不会误删别的缓存的 MBean
      */
-    private boolean alive = true;
+    private final ConcurrentHashMap<Reclaimable, ObjectName> mbeans = new ConcurrentHashMap<>();
 
-    private CacheUtil() {}
+    /**
+     * 回收定时器的监控
+     */
+    private final ReclaimMonitor monitor = new ReclaimMonitor(caches::size);
 
     /**
-     * 设置延时，获取实例之前的最后一个有效
-     * @param delay 延时时间，毫秒
+     * 已绑定的指标库
      */
-    private static void setDelay(long delay) {
-        CacheUtil.delay = delay;
-    }
+    private final CopyOnWriteArrayList<MetricsRegistry> registries = new CopyOnWriteArrayList<>();
+
+    /**
+     * 回收空间定时器, 所有缓存共享, 关闭后为 null
+     */
+    private volatile ScheduledExecutorService schedule = null;
+
+    /**
+     * 默认的整体回收线程池, 守护线程, 与公共 ForkJoinPool 隔离
+     */
+    private ThreadPoolExecutor pool;
+
+    /**
+     * 执行整体回收的线程池, 可替换为外部的线程池
+     */
+    private volatile Executor executor;
+
+    /**
+     * 程序结束时停止定时器
+     */
+    private Thread hook;
+
+    /**
+     * 每个缓存的整体回收任务
+     */
+    private final ConcurrentHashMap<Reclaimable, ReclaimTask> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * 已到期等待执行的回收任务
+     */
+    private final ConcurrentLinkedQueue<ReclaimTask> due = new ConcurrentLinkedQueue<>();
 
     /**
-     * 设置周期，获取实例之前的最后一个有效
-     * @param period 周期，毫秒
+     * 正在执行回收任务的线程数, 不超过并行度
      */
-    private static void setPeriod(long period) {
-        CacheUtil.period = period;
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * 标记程序是否结束，不同状态下的回收方法不同
+     */
+    private volatile boolean alive = true;
+
+    /**
+     * 抽样回收从该位置的缓存开始，时间预算用完时下一轮从未处理的缓存继续
+     */
+    private int cursor;
+
+    /**
+     * 一个缓存的整体回收任务, 按各自的计划定时执行
+     */
+    private static final class ReclaimTask {
+
+        final Reclaimable cache;
+
+        final ReclaimSchedule schedule;
+
+        /**
+         * 当前周期, 毫秒
+         */
+        volatile long period;
+
+        /**
+         * 本轮已移除的键个数, 时间预算用完分段执行时累计
+         */
+        int removed;
+
+        volatile ScheduledFuture<?> future;
+
+        ReclaimTask(Reclaimable cache, ReclaimSchedule schedule) {
+            this.cache = cache;
+            this.schedule = schedule;
+            this.period = schedule.period();
+        }
+
+        void cancel() {
+            ScheduledFuture<?> f = this.future;
+            if (null != f) {
+                f.cancel(false);
+            }
+        }
+
     }
 
+    private CacheUtil() {}
+
     /**
-     * 获取单例实例
+     * 获取单例实例, 定时器已关闭时重新启动
      * @return 单例对象
      */
     static CacheUtil getInstance() {
         if (null == instance) {
             synchronized (CacheUtil.class) {
                 if (null == instance) {
-                    instance = new CacheUtil();
-                    // 守护线程模式，主线程结束则结束，不阻挡程序结束
-                    instance.schedule = new ScheduledThreadPoolExecutor(1, new ThreadPoolExecutor.DiscardPolicy());
-                    instance.schedule.scheduleWithFixedDelay(() -> instance.reclaim(), delay, period, TimeUnit.MILLISECONDS);
-                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                        // 停止定时器
-                        instance.schedule.shutdown();
-                        // 改变状态
-                        instance.alive = false;
-                    }));
+                    CacheUtil util = new CacheUtil();
+                    register(util.monitor, ReclaimerMXBean.class, "dive.cache.mime:type=Reclaimer");
+                    instance = util;
                 }
             }
         }
+        instance.start();
         return instance;
     }
 
+    /**
+     * 关闭单例的定时器, 尚未创建时不做任何事
+     */
+    static void shutdown() {
+        CacheUtil util = instance;
+        if (null != util) {
+            util.close();
+        }
+    }
 
     /**
-     * 获取单例实例
-     * @param delay 延时
-     * @param period 周期
-     * @return 单例对象
+     * 启动定时器和回收线程池, 已注册缓存的回收任务重新按计划执行
      */
-    static CacheUtil getInstance(long delay, long period) {
-        setDelay(delay);
-        setPeriod(period);
-        return getInstance();
+    private void start() {
+        if (null != this.schedule) {
+            return;
+        }
+        synchronized (this) {
+            if (null != this.schedule || !this.alive) {
+                return;
+            }
+            ThreadPoolExecutor previous = this.pool;
+            this.pool = pool();
+            if (null == this.executor || previous == this.executor) {
+                this.executor = this.pool;
+            }
+            // 守护线程模式，主线程结束则结束，不阻挡程序结束
+            ScheduledThreadPoolExecutor s = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "mime-cache-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+            s.setRemoveOnCancelPolicy(true);
+            s.scheduleWithFixedDelay(this::sample, cycle, cycle, TimeUnit.MILLISECONDS);
+            this.hook = new Thread(() -> {
+                // 停止定时器
+                s.shutdown();
+                this.pool.shutdown();
+                // 改变状态
+                this.alive = false;
+                // 持久化缓存写入内存中的状态
+                for (Reclaimable r : this.tasks.keySet()) {
+                    try {
+                        r.shutdown();
+                    } catch (RuntimeException e) {
+                        // 不影响其他缓存
+                    }
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(this.hook);
+            this.schedule = s;
+            this.tasks.values().forEach(t -> this.arm(t, t.schedule.delay()));
+        }
     }
 
+    /**
+     * 关闭定时器和默认的回收线程池, 已注册的缓存不再定时回收, 仍可手动回收
+     * 之后创建缓存或配置回收时重新启动, 已注册缓存的回收任务随之恢复
+     */
+    synchronized void close() {
+        ScheduledExecutorService s = this.schedule;
+        if (null == s) {
+            return;
+        }
+        this.schedule = null;
+        s.shutdownNow();
+        this.pool.shutdown();
+        this.due.clear();
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.hook);
+        } catch (IllegalStateException e) {
+            // 程序正在结束
+        }
+    }
 
+    /**
+     * 单例的定时器是否在运行
+     * @return 是否运行
+     */
+    static boolean isStarted() {
+        CacheUtil util = instance;
+        return null != util && null != util.schedule;
+    }
 
     /**
-     * 回收空间
+     * 默认的整体回收线程池, 线程数即并行度, 空闲时线程退出
+     * @return 线程池
      */
-    private void reclaim() {
-        caches.parallelStream().forEach(Reclaimable::reclaim);
+    private static ThreadPoolExecutor pool() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "mime-cache-reclaim-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
     }
 
+    /**
+     * 设置执行整体回收的线程池
+     * @param executor 线程池, 为 null 时恢复默认的线程池
+     */
+    void executor(Executor executor) {
+        this.executor = null == executor ? this.pool : executor;
+    }
+
+    /**
+     * 设置整体回收的并行度, 同时调整默认线程池的线程数
+     * @param parallelism 并行度
+     */
+    synchronized void parallelism(int parallelism) {
+        CacheUtil.parallelism = parallelism;
+        if (pool.getMaximumPoolSize() < parallelism) {
+            pool.setMaximumPoolSize(parallelism);
+            pool.setCorePoolSize(parallelism);
+        } else {
+            pool.setCorePoolSize(parallelism);
+            pool.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * 修改缓存的回收计划, 立即按新计划重新开始
+     * @param cache 已注册的缓存
+     * @param schedule 计划
+     */
+    void schedule(Reclaimable cache, ReclaimSchedule schedule) {
+        if (!caches.contains(cache)) {
+            throw new IllegalArgumentException("cache is not registered: " + cache.name());
+        }
+        ReclaimTask task = new ReclaimTask(cache, schedule);
+        ReclaimTask old = tasks.put(cache, task);
+        if (null != old) {
+            old.cancel();
+        }
+        arm(task, schedule.delay());
+    }
+
+    /**
+     * 缓存当前的回收周期
+     * @param cache 缓存
+     * @return 周期, 毫秒, 未注册返回 -1
+     */
+    long period(Reclaimable cache) {
+        ReclaimTask task = tasks.get(cache);
+        return null != task ? task.period : -1L;
+    }
+
+    /**
+     * 延时后执行回收任务, 定时器已关闭或任务已被替换时不执行
+     * @param task 任务
+     * @param delay 延时, 毫秒
+     */
+    private void arm(ReclaimTask task, long delay) {
+        ScheduledExecutorService s = this.schedule;
+        if (null == s || tasks.get(task.cache) != task) {
+            return;
+        }
+        CacheMonitor m = monitors.get(task.cache);
+        if (null != m) {
+            m.period(task.period);
+        }
+        try {
+            task.future = s.schedule(() -> this.due(task), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 定时器已关闭
+        }
+    }
+
+    /**
+     * 回收任务到期, 抽样回收的缓存跳过本次
+     * @param task 任务
+     */
+    private void due(ReclaimTask task) {
+        if (tasks.get(task.cache) != task) {
+            return;
+        }
+        if (ReclaimStrategy.SWEEP != task.cache.strategy()) {
+            arm(task, task.period);
+            return;
+        }
+        due.add(task);
+        dispatch();
+    }
+
+    /**
+     * 在回收线程池中执行到期的任务, 同时回收的缓存个数不超过并行度
+     */
+    private void dispatch() {
+        while (!due.isEmpty()) {
+            int n = running.get();
+            if (Math.max(1, parallelism) <= n) {
+                return;
+            }
+            if (running.compareAndSet(n, n + 1)) {
+                try {
+                    executor.execute(this::work);
+                } catch (RejectedExecutionException e) {
+                    // 线程池已满或已关闭, 在定时器线程中执行
+                    work();
+                }
+            }
+        }
+    }
+
+    /**
+     * 回收线程持续执行到期的任务
+     */
+    private void work() {
+        try {
+            ReclaimTask task;
+            while (null != (task = due.poll())) {
+                run(task);
+            }
+        } finally {
+            running.decrementAndGet();
+        }
+        if (!due.isEmpty()) {
+            // 退出前又有任务到期
+            dispatch();
+        }
+    }
+
+    /**
+     * 在时间预算内回收一个缓存, 用完时稍后继续, 否则按计划计算下次的周期
+     * @param task 任务
+     */
+    private void run(ReclaimTask task) {
+        if (!alive) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(slice);
+        int removed = 0;
+        try {
+            removed = reclaim(task.cache, deadline);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        long end = System.nanoTime();
+        boolean overBudget = deadline <= end;
+        monitor.swept(end - start, removed, overBudget);
+        task.removed += removed;
+        if (overBudget) {
+            // 可能未处理完, 让出线程稍后继续
+            arm(task, cycle);
+            return;
+        }
+        task.period = task.schedule.next(task.period, task.removed, task.cache.entries());
+        task.removed = 0;
+        arm(task, task.period);
+    }
+
+    /**
+     * 整体回收一个缓存, 并记录耗时
+     * @param cache 缓存
+     * @param deadline 截止时刻, 纳秒
+     * @return 移除的键个数
+     */
+    private int reclaim(Reclaimable cache, long deadline) {
+        long start = System.nanoTime();
+        int removed = cache.reclaim(deadline);
+        CacheMonitor m = monitors.get(cache);
+        if (null != m) {
+            m.reclaimed(System.nanoTime() - start, removed);
+        }
+        return removed;
+    }
+
+    /**
+     * 抽样回收，类似redis的主动过期
+     * 每个缓存抽样若干键，过期比例超过阈值则继续，直到比例降低或者本轮时间预算用完
+     */
+    private void sample() {
+        Reclaimable[] array = caches.stream()
+                .filter(c -> ReclaimStrategy.SAMPLE == c.strategy())
+                .toArray(Reclaimable[]::new);
+        if (0 == array.length) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget);
+        long removed = 0;
+        for (int i = 0; i < array.length; i++) {
+            Reclaimable cache = array[(cursor + i) % array.length];
+            CacheMonitor m = monitors.get(cache);
+            int sampled;
+            int expired;
+            do {
+                if (!alive) {
+                    return;
+                }
+                long result = cache.sample(samples);
+                if (result < 0) {
+                    // 不支持抽样，退回整体回收
+                    removed += reclaim(cache, deadline);
+                    break;
+                }
+                // 会过期的键不足时实际抽样的个数少于要求的个数, 按实际个数计算过期比例
+                sampled = (int) (result >>> 32);
+                expired = (int) result;
+                removed += expired;
+                if (null != m) {
+                    m.sampled(expired);
+                }
+            } while (expired * 100 > sampled * stale && System.nanoTime() < deadline);
+            if (deadline <= System.nanoTime()) {
+                cursor = (cursor + i + 1) % array.length;
+                monitor.sampled(removed, true);
+                return;
+            }
+        }
+        monitor.sampled(removed, false);
+    }
+
+    /**
+     * 注册缓存, 按默认计划回收
+     * @param reclaimable 缓存
+     */
     void add(Reclaimable reclaimable) {
-        caches.add(reclaimable);
+        add(reclaimable, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 注册缓存
+     * @param reclaimable 缓存
+     * @param schedule 整体回收的计划
+     */
+    synchronized void add(Reclaimable reclaimable, ReclaimSchedule schedule) {
+        if (caches.add(reclaimable)) {
+            CacheMonitor m = new CacheMonitor(reclaimable);
+            monitors.put(reclaimable, m);
+            ObjectName name = register(m, CacheMXBean.class,
+                    "dive.cache.mime:type=Cache,name=" + ObjectName.quote(m.getName()));
+            if (null != name) {
+                mbeans.put(reclaimable, name);
+            }
+            registries.forEach(m::bind);
+            schedule(reclaimable, schedule);
+        }
+    }
+
+    /**
+     * 注销缓存, 不再定时回收, 已绑定到指标库的指标不解除
+     * @param reclaimable 缓存
+     */
+    synchronized void remove(Reclaimable reclaimable) {
+        if (caches.remove(reclaimable)) {
+            ReclaimTask task = tasks.remove(reclaimable);
+            if (null != task) {
+                task.cancel();
+            }
+            monitors.remove(reclaimable);
+            ObjectName name = mbeans.remove(reclaimable);
+            if (null != name) {
+                unregister(name);
+            }
+        }
+    }
+
+    /**
+     * 绑定指标库, 已注册和之后注册的缓存都会绑定
+     * @param registry 指标库
+     */
+    synchronized void bind(MetricsRegistry registry) {
+        registries.add(registry);
+        monitor.bind(registry);
+        monitors.values().forEach(m -> m.bind(registry));
+    }
+
+    /**
+     * 注册 JMX MBean, 失败不影响缓存使用
+     * @param mbean 监控对象
+     * @param type MXBean 接口
+     * @param name 对象名
+     * @param <T> 接口类型
+     * @return 注册成功返回对象名, 未开启、同名已注册或失败返回 null
+     */
+    private static <T> ObjectName register(T mbean, Class<T> type, String name) {
+        if (!jmx) {
+            return null;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                return server.registerMBean(new StandardMBean(mbean, type, true), objectName).getObjectName();
+            }
+        } catch (Exception | LinkageError e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * 注销由本对象注册的 JMX MBean
+     * @param name 注册时返回的对象名
+     */
+    private static void unregister(ObjectName name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception | LinkageError e) {
+            e.printStackTrace();
+        }
     }
 
     boolean isAlive() {
@@ -120,12 +620,13 @@ class CacheUtil {
 
     /**
      * 计算过期时间
+     * @param now 当前时刻
      * @param timeout 超时时间
      * @param unit 时间单位
      * @return 过期时间的时间戳
      */
-    static long expire(long timeout, TimeUnit unit) {
-        long time = now();
+    static long expire(long now, long timeout, TimeUnit unit) {
+        long time = now;
         if (null != unit) {
             switch (unit) {
                 case MILLISECONDS: time += timeout; break;
@@ -144,10 +645,11 @@ class CacheUtil {
     /**
      * 给定过期时间是否存活
      * @param expire 过期时间戳
+     * @param now 当前时刻
      * @return 是否存活
      */
-    static boolean alive(Long expire) {
-        return null != expire && (expire < 0 || now() < expire);
+    static boolean alive(Long expire, long now) {
+        return null != expire && (expire < 0 || now < expire);
     }
 
 }
@@ -0,0 +1,61 @@
+package dive.cache.mime;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 粗粒度时钟, 由后台守护线程定时更新, 读取不调用系统时钟, 误差不超过更新周期
+ * @author dawn
+ */
+public class CoarseTicker implements Ticker, AutoCloseable {
+
+    /**
+     * 共享实例
+     */
+    static class Holder {
+        static final CoarseTicker INSTANCE = new CoarseTicker(10);
+    }
+
+    /**
+     * 更新时钟的定时器
+     */
+    private final ScheduledExecutorService schedule;
+
+    /**
+     * 当前时刻
+     */
+    private volatile long now = System.currentTimeMillis();
+
+    /**
+     * 构造器
+     * @param precision 更新周期, 毫秒
+     */
+    public CoarseTicker(long precision) {
+        if (precision <= 0) {
+            throw new IllegalArgumentException("precision must be positive");
+        }
+        this.schedule = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mime-cache-ticker");
+            // 守护线程模式，不阻挡程序结束
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.schedule.scheduleAtFixedRate(() -> this.now = System.currentTimeMillis(),
+                precision, precision, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long read() {
+        return this.now;
+    }
+
+    /**
+     * 停止更新
+     */
+    @Override
+    public void close() {
+        this.schedule.shutdown();
+    }
+
+}
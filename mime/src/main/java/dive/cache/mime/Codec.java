@@ -0,0 +1,31 @@
+package dive.cache.mime;
+
+import java.io.IOException;
+
+/**
+ * 键或值与字节之间的编解码, 持久化缓存和堆外缓存以此存储对象
+ * 编码结果必须确定, 相等的对象编码后的字节相同; 内置的编解码见 {@link Codecs}
+ * @author dawn
+ * @param <T> 对象的类型
+ */
+public interface Codec<T> {
+
+    /**
+     * 编码
+     * @param value 对象, 不为 null
+     * @return 字节
+     * @throws IOException 编码失败
+     */
+    byte[] encode(T value) throws IOException;
+
+    /**
+     * 解码
+     * @param bytes 字节
+     * @param offset 起始偏移
+     * @param length 字节数
+     * @return 对象
+     * @throws IOException 解码失败或格式不符
+     */
+    T decode(byte[] bytes, int offset, int length) throws IOException;
+
+}
@@ -0,0 +1,202 @@
+package dive.cache.mime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 内置的编解码
+ * 字符串、基本类型的包装类和字节数组直接按字节编码, 不使用反射; 其余类型使用 jdk 序列化
+ * @author dawn
+ */
+public final class Codecs {
+
+    /**
+     * UTF-8 编码的字符串
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes, int offset, int length) {
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * 字节数组, 原样保存
+     */
+    public static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+        @Override
+        public byte[] encode(byte[] value) {
+            return value.clone();
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes, int offset, int length) {
+            return Arrays.copyOfRange(bytes, offset, offset + length);
+        }
+    };
+
+    public static final Codec<Long> LONG = fixed(8, ByteBuffer::putLong, ByteBuffer::getLong);
+
+    public static final Codec<Integer> INTEGER = fixed(4, ByteBuffer::putInt, ByteBuffer::getInt);
+
+    public static final Codec<Short> SHORT = fixed(2, ByteBuffer::putShort, ByteBuffer::getShort);
+
+    public static final Codec<Byte> BYTE = fixed(1, ByteBuffer::put, ByteBuffer::get);
+
+    public static final Codec<Character> CHARACTER = fixed(2, ByteBuffer::putChar, ByteBuffer::getChar);
+
+    public static final Codec<Boolean> BOOLEAN = fixed(1, (b, v) -> b.put((byte) (v ? 1 : 0)), b -> 0 != b.get());
+
+    public static final Codec<Double> DOUBLE = fixed(8, ByteBuffer::putDouble, ByteBuffer::getDouble);
+
+    public static final Codec<Float> FLOAT = fixed(4, ByteBuffer::putFloat, ByteBuffer::getFloat);
+
+    /**
+     * jdk 序列化
+     */
+    private static final Codec<Serializable> SERIALIZATION = new Codec<Serializable>() {
+        @Override
+        public byte[] encode(Serializable value) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream os = new ObjectOutputStream(bytes)) {
+                os.writeObject(value);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Serializable decode(byte[] bytes, int offset, int length) throws IOException {
+            try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+                return (Serializable) is.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        }
+    };
+
+    /**
+     * jdk 序列化的字节流以 0xACED 开头, 与内置类型的标记不冲突
+     */
+    private static final byte STREAM_MAGIC = (byte) 0xAC;
+
+    /**
+     * 按标记编号的内置编解码, 编号写在字节的首位, 0 不使用
+     */
+    private static final Codec<?>[] TAGGED = {null, STRING, BYTES, LONG, INTEGER, SHORT, BYTE, CHARACTER, BOOLEAN, DOUBLE, FLOAT};
+
+    /**
+     * 类型对应的标记
+     */
+    private static final Map<Class<?>, Byte> TAGS = new HashMap<>();
+
+    static {
+        Class<?>[] types = {null, String.class, byte[].class, Long.class, Integer.class, Short.class, Byte.class,
+                Character.class, Boolean.class, Double.class, Float.class};
+        for (byte i = 1; i < types.length; i++) {
+            TAGS.put(types[i], i);
+        }
+    }
+
+    /**
+     * 默认的编解码, 按对象的实际类型选择
+     * 内置类型编码为 标记(1) 字节; 其余类型为 jdk 序列化的字节流, 因此也能读取全部使用 jdk 序列化写入的旧数据
+     */
+    private static final Codec<Object> DEFAULTS = new Codec<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public byte[] encode(Object value) throws IOException {
+            Byte tag = TAGS.get(value.getClass());
+            if (null == tag) {
+                return SERIALIZATION.encode((Serializable) value);
+            }
+            byte[] body = ((Codec<Object>) TAGGED[tag]).encode(value);
+            byte[] bytes = new byte[body.length + 1];
+            bytes[0] = tag;
+            System.arraycopy(body, 0, bytes, 1, body.length);
+            return bytes;
+        }
+
+        @Override
+        public Object decode(byte[] bytes, int offset, int length) throws IOException {
+            if (length < 1) {
+                throw new IOException("empty bytes");
+            }
+            byte tag = bytes[offset];
+            if (STREAM_MAGIC == tag) {
+                return SERIALIZATION.decode(bytes, offset, length);
+            }
+            if (tag < 1 || TAGGED.length <= tag) {
+                throw new IOException("unknown codec tag " + tag);
+            }
+            return TAGGED[tag].decode(bytes, offset + 1, length - 1);
+        }
+    };
+
+    private Codecs() {
+    }
+
+    /**
+     * jdk 序列化, 适用于任何可序列化的类型, 体积和耗时较大
+     * @param <T> 对象的类型
+     * @return 编解码
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Serializable> Codec<T> serialization() {
+        return (Codec<T>) SERIALIZATION;
+    }
+
+    /**
+     * 默认的编解码, 字符串、基本类型的包装类和字节数组直接编码并带一个字节的类型标记, 其余类型使用 jdk 序列化
+     * 类型事先确定时直接使用对应的编解码可省去标记
+     * @param <T> 对象的类型
+     * @return 编解码
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Codec<T> defaults() {
+        return (Codec<T>) DEFAULTS;
+    }
+
+    /**
+     * 定长的编解码
+     * @param size 字节数
+     * @param put 写入
+     * @param get 读取
+     * @param <T> 对象的类型
+     * @return 编解码
+     */
+    private static <T> Codec<T> fixed(int size, BiConsumer<ByteBuffer, T> put, Function<ByteBuffer, T> get) {
+        return new Codec<T>() {
+            @Override
+            public byte[] encode(T value) {
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                put.accept(buffer, value);
+                return buffer.array();
+            }
+
+            @Override
+            public T decode(byte[] bytes, int offset, int length) throws IOException {
+                if (size != length) {
+                    throw new IOException("expect " + size + " bytes but " + length);
+                }
+                return get.apply(ByteBuffer.wrap(bytes, offset, length));
+            }
+        };
+    }
+
+}
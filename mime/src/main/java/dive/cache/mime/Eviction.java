@@ -0,0 +1,318 @@
+package dive.cache.mime;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 容量受限时的淘汰策略, W-TinyLFU 实现
+ * 新节点先进入窗口区(LRU), 溢出后作为候选者与主区(SLRU: 试用区+保护区)最久未访问的节点比较访问频率,
+ * 频率高者留下, 使热点数据不会被一次性的扫描冲掉
+ * 读操作只尝试加锁, 竞争时放弃本次访问记录, 不阻塞读取
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class Eviction<K, V> {
+
+    /**
+     * 节点所在队列
+     */
+    static final byte NONE = 0;
+    static final byte WINDOW = 1;
+    static final byte PROBATION = 2;
+    static final byte PROTECTED = 3;
+    static final byte RETIRED = -1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 最大总权重
+     */
+    private final long maximum;
+
+    /**
+     * 窗口区最大权重, 约为总权重的1%
+     */
+    private final long windowMaximum;
+
+    /**
+     * 保护区最大权重, 约为主区的80%
+     */
+    private final long protectedMaximum;
+
+    /**
+     * 是否按自定义权重计算, 否则每个节点权重为1
+     */
+    private final boolean weighted;
+
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * 淘汰节点时的回调, 由缓存从存储中移除该节点
+     */
+    private final Consumer<Node<K, V>> evict;
+
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+    private final AccessQueue<K, V> protection = new AccessQueue<>();
+
+    /**
+     * 当前总权重
+     */
+    private long weightedSize;
+
+    /**
+     * 当前节点个数
+     */
+    private long count;
+
+    /**
+     * 构造器
+     * @param maximum 最大总权重
+     * @param weigher 权重计算, 为 null 表示按个数限制
+     * @param evict 淘汰回调
+     */
+    Eviction(long maximum, Weigher<? super K, ? super V> weigher, Consumer<Node<K, V>> evict) {
+        if (maximum < 0) {
+            throw new IllegalArgumentException("maximum must not be negative");
+        }
+        this.maximum = maximum;
+        this.windowMaximum = maximum - (long) (0.99d * maximum);
+        this.protectedMaximum = (long) (0.8d * (maximum - this.windowMaximum));
+        this.weighted = null != weigher;
+        this.weigher = this.weighted ? weigher : (k, v) -> 1;
+        this.evict = Objects.requireNonNull(evict, "evict");
+        if (!this.weighted) {
+            this.sketch.ensureCapacity(maximum);
+        }
+    }
+
+    /**
+     * 写入新节点
+     * @param old 被替换的节点, 可以为 null
+     * @param node 新节点
+     */
+    void write(Node<K, V> old, Node<K, V> node) {
+        int weight = this.weigher.weigh(node.key, node.value());
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative");
+        }
+        this.lock.lock();
+        try {
+            if (null != old) {
+                this.unlink(old);
+            }
+            if (RETIRED == node.queue) {
+                // 写入后已被移除
+                return;
+            }
+            node.weight = weight;
+            node.queue = WINDOW;
+            this.window.addLast(node);
+            this.weightedSize += weight;
+            this.count++;
+            if (this.weighted) {
+                this.sketch.ensureCapacity(this.count);
+            }
+            this.sketch.increment(node.key);
+            this.evict();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 记录一次读取
+     * @param node 被读取的节点
+     */
+    void read(Node<K, V> node) {
+        if (!this.lock.tryLock()) {
+            return;
+        }
+        try {
+            this.sketch.increment(node.key);
+            switch (node.queue) {
+                case WINDOW: this.window.moveToBack(node); break;
+                case PROBATION:
+                    // 试用区再次访问则晋升到保护区
+                    this.probation.remove(node);
+                    node.queue = PROTECTED;
+                    this.protection.addLast(node);
+                    this.demote();
+                    break;
+                case PROTECTED: this.protection.moveToBack(node); break;
+                default:
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 节点已从缓存中移除
+     * @param node 节点
+     */
+    void remove(Node<K, V> node) {
+        this.lock.lock();
+        try {
+            this.unlink(node);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 当前总权重
+     * @return 总权重
+     */
+    long weightedSize() {
+        this.lock.lock();
+        try {
+            return this.weightedSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 从队列中摘除节点, 并标记为已移除
+     * @param node 节点
+     */
+    private void unlink(Node<K, V> node) {
+        AccessQueue<K, V> queue = this.queue(node.queue);
+        if (null != queue) {
+            queue.remove(node);
+            this.weightedSize -= node.weight;
+            this.count--;
+        }
+        node.queue = RETIRED;
+    }
+
+    private AccessQueue<K, V> queue(byte queue) {
+        switch (queue) {
+            case WINDOW: return this.window;
+            case PROBATION: return this.probation;
+            case PROTECTED: return this.protection;
+            default: return null;
+        }
+    }
+
+    /**
+     * 保护区溢出时, 最久未访问的节点降级到试用区
+     */
+    private void demote() {
+        while (this.protection.weight > this.protectedMaximum) {
+            Node<K, V> node = this.protection.first;
+            this.protection.remove(node);
+            node.queue = PROBATION;
+            this.probation.addLast(node);
+        }
+    }
+
+    /**
+     * 淘汰直到总权重不超过最大值
+     */
+    private void evict() {
+        // 窗口区溢出的节点作为候选者进入试用区
+        while (this.window.weight > this.windowMaximum) {
+            Node<K, V> candidate = this.window.first;
+            this.window.remove(candidate);
+            candidate.queue = PROBATION;
+            this.probation.addLast(candidate);
+            while (this.weightedSize > this.maximum && PROBATION == candidate.queue) {
+                Node<K, V> victim = this.probation.first != candidate ? this.probation.first : this.protection.first;
+                if (null == victim || !this.admit(candidate, victim)) {
+                    victim = candidate;
+                }
+                this.discard(victim);
+            }
+        }
+        // 单个节点权重过大等情况, 按最久未访问依次淘汰
+        while (this.weightedSize > this.maximum) {
+            Node<K, V> victim = null != this.probation.first ? this.probation.first
+                    : null != this.protection.first ? this.protection.first : this.window.first;
+            if (null == victim) {
+                break;
+            }
+            this.discard(victim);
+        }
+    }
+
+    /**
+     * 候选者是否可以替换受害者
+     * @param candidate 候选者
+     * @param victim 受害者
+     * @return 是否接纳候选者
+     */
+    private boolean admit(Node<K, V> candidate, Node<K, V> victim) {
+        int candidateFrequency = this.sketch.frequency(candidate.key);
+        int victimFrequency = this.sketch.frequency(victim.key);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        // 频率较高时以小概率接纳, 防止针对哈希碰撞的攻击使受害者永远留下
+        return candidateFrequency > 5 && 0 == (ThreadLocalRandom.current().nextInt() & 127);
+    }
+
+    /**
+     * 淘汰节点
+     * @param node 节点
+     */
+    private void discard(Node<K, V> node) {
+        this.unlink(node);
+        this.evict.accept(node);
+    }
+
+    /**
+     * 按访问顺序排列的双向链表, 头部最久未访问
+     */
+    private static final class AccessQueue<K, V> {
+
+        Node<K, V> first;
+        Node<K, V> last;
+        long weight;
+
+        void addLast(Node<K, V> node) {
+            node.previousInAccess = this.last;
+            node.nextInAccess = null;
+            if (null == this.last) {
+                this.first = node;
+            } else {
+                this.last.nextInAccess = node;
+            }
+            this.last = node;
+            this.weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            Node<K, V> previous = node.previousInAccess;
+            Node<K, V> next = node.nextInAccess;
+            if (null == previous) {
+                this.first = next;
+            } else {
+                previous.nextInAccess = next;
+            }
+            if (null == next) {
+                this.last = previous;
+            } else {
+                next.previousInAccess = previous;
+            }
+            node.previousInAccess = null;
+            node.nextInAccess = null;
+            this.weight -= node.weight;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != this.last) {
+                this.remove(node);
+                this.addLast(node);
+            }
+        }
+
+    }
+
+}
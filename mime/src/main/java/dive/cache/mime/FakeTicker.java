@@ -0,0 +1,64 @@
+package dive.cache.mime;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 手动推进的时钟, 用于测试过期而无需等待
+ * @author dawn
+ */
+public class FakeTicker implements Ticker {
+
+    private final AtomicLong now;
+
+    /**
+     * 构造器, 从当前系统时刻开始
+     */
+    public FakeTicker() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * 构造器
+     * @param now 初始时刻, 毫秒时间戳
+     */
+    public FakeTicker(long now) {
+        this.now = new AtomicLong(now);
+    }
+
+    /**
+     * 推进时钟
+     * @param millis 毫秒
+     * @return 本实例
+     */
+    public FakeTicker advance(long millis) {
+        this.now.addAndGet(millis);
+        return this;
+    }
+
+    /**
+     * 推进时钟
+     * @param time 时间
+     * @param unit 时间单位
+     * @return 本实例
+     */
+    public FakeTicker advance(long time, TimeUnit unit) {
+        return this.advance(unit.toMillis(time));
+    }
+
+    /**
+     * 设置时刻
+     * @param now 毫秒时间戳
+     * @return 本实例
+     */
+    public FakeTicker set(long now) {
+        this.now.set(now);
+        return this;
+    }
+
+    @Override
+    public long read() {
+        return this.now.get();
+    }
+
+}
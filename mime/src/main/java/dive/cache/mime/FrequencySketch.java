@@ -0,0 +1,147 @@
+package dive.cache.mime;
+
+/**
+ * 估算键的访问频率, Count-Min Sketch 实现, 每个计数器4位, 最大计数15
+ * 累计次数达到采样大小后, 所有计数减半, 使频率随时间衰减
+ * 非线程安全, 由调用方加锁
+ * @author dawn
+ */
+class FrequencySketch {
+
+    /**
+     * 每个键对应的4个哈希种子
+     */
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * 计数减半时去除进位的掩码
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 统计奇数计数器的掩码
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /**
+     * 表的最大长度
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 24;
+
+    /**
+     * 计数器表, 每个long有16个计数器
+     */
+    private long[] table = new long[0];
+
+    private int tableMask;
+
+    /**
+     * 采样大小, 累计次数达到后衰减
+     */
+    private int sampleSize;
+
+    /**
+     * 当前累计次数
+     */
+    private int size;
+
+    /**
+     * 确保能够容纳给定数量的键, 扩容会丢弃已有的计数
+     * @param capacity 键的数量
+     */
+    void ensureCapacity(long capacity) {
+        int maximum = (int) Math.min(Math.max(capacity, 16), MAXIMUM_CAPACITY);
+        if (this.table.length >= maximum) {
+            return;
+        }
+        this.table = new long[ceilingPowerOfTwo(maximum)];
+        this.tableMask = this.table.length - 1;
+        this.sampleSize = 10 * maximum;
+        this.size = 0;
+    }
+
+    /**
+     * 估算频率
+     * @param key 键
+     * @return 频率, 0-15
+     */
+    int frequency(Object key) {
+        if (0 == this.table.length) {
+            return 0;
+        }
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = this.indexOf(hash, i);
+            int count = (int) ((this.table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 增加一次访问
+     * @param key 键
+     */
+    void increment(Object key) {
+        if (0 == this.table.length) {
+            return;
+        }
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= this.incrementAt(this.indexOf(hash, i), start + i);
+        }
+        if (added && ++this.size == this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    /**
+     * 计数器加一, 已满则不变
+     * @param i 表下标
+     * @param j 计数器下标, 0-15
+     * @return 是否增加
+     */
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((this.table[i] & mask) != mask) {
+            this.table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < this.table.length; i++) {
+            odd += Long.bitCount(this.table[i] & ONE_MASK);
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size = (this.size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return ((int) h) & this.tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+
+}
@@ -0,0 +1,212 @@
+package dive.cache.mime;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 持久化缓存的索引快照, 参照 Bitcask 的 hint 文件
+ * 保存检查点时每个日志段已写入的字节数和所有键的位置, 启动时一次顺序读入, 只需扫描检查点之后追加的部分
+ * 格式: 魔数(4) 版本(4) 序号(8) 段数(4) [编号(4) 字节数(8) 失效字节(8) 最小序号(8)]... [键长(4) 键 过期时间(8) 位置(8) 记录长度(4)]... 结束(-1) 校验和(4)
+ * 检查点之后原地更新的过期时间不在快照中, 非正常退出时恢复为检查点时的过期时间
+ * @author dawn
+ */
+final class HintFile {
+
+    /**
+     * 文件名, 不是日志段的后缀名, 扫描日志时忽略
+     */
+    static final String NAME = "index.hint";
+
+    private static final int MAGIC = 0x4D494D45;
+
+    private static final int VERSION = 1;
+
+    /**
+     * 检查点时下一条记录的序号
+     */
+    final long sequence;
+
+    /**
+     * 检查点时每个日志段的状态
+     */
+    final List<LogStore.Mark> marks;
+
+    /**
+     * 整个文件的内容
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * 键的位置在文件中的起始偏移
+     */
+    private final int entries;
+
+    private HintFile(long sequence, List<LogStore.Mark> marks, ByteBuffer buffer, int entries) {
+        this.sequence = sequence;
+        this.marks = marks;
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * 读取时每个键的回调
+     */
+    interface Visitor {
+
+        /**
+         * 访问一个键
+         * @param key 键的字节
+         * @param expire 过期时间
+         * @param address 记录的位置
+         * @param length 记录的字节数
+         */
+        void visit(byte[] key, long expire, long address, int length);
+    }
+
+    /**
+     * 写入快照时提供所有键
+     */
+    interface Source {
+
+        /**
+         * 依次写出所有键
+         * @param writer 写出一个键
+         * @throws IOException 写入失败
+         */
+        void forEach(Writer writer) throws IOException;
+    }
+
+    /**
+     * 写出一个键
+     */
+    interface Writer {
+
+        /**
+         * 写出一个键
+         * @param key 键的字节
+         * @param expire 过期时间
+         * @param address 记录的位置
+         * @param length 记录的字节数
+         * @throws IOException 写入失败
+         */
+        void write(byte[] key, long expire, long address, int length) throws IOException;
+    }
+
+    /**
+     * 读取快照并校验
+     * @param dir 所在目录
+     * @return 快照, 不存在返回 null
+     * @throws IOException 读取失败或已损坏
+     */
+    static HintFile read(File dir) throws IOException {
+        File file = new File(dir, NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length < 24) {
+            throw new IOException("hint file " + file.getPath() + " is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt(bytes.length - 4) != (int) crc.getValue()) {
+            throw new IOException("hint file " + file.getPath() + " checksum mismatch");
+        }
+        if (MAGIC != buffer.getInt() || VERSION != buffer.getInt()) {
+            throw new IOException("hint file " + file.getPath() + " has unknown format");
+        }
+        long sequence = buffer.getLong();
+        int count = buffer.getInt();
+        List<LogStore.Mark> marks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            marks.add(new LogStore.Mark(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+        return new HintFile(sequence, Collections.unmodifiableList(marks), buffer, buffer.position());
+    }
+
+    /**
+     * 依次访问快照中的键
+     * @param visitor 每个键的回调
+     */
+    void forEach(Visitor visitor) {
+        ByteBuffer b = this.buffer.duplicate();
+        b.position(this.entries);
+        int length;
+        while (0 <= (length = b.getInt())) {
+            byte[] key = new byte[length];
+            b.get(key);
+            visitor.visit(key, b.getLong(), b.getLong(), b.getInt());
+        }
+    }
+
+    /**
+     * 写入快照, 先写临时文件并刷盘, 再替换原文件, 中断时原文件仍然完整
+     * 快照中的位置必须已刷到磁盘
+     * @param dir 所在目录
+     * @param sequence 检查点时下一条记录的序号
+     * @param marks 检查点时每个日志段的状态
+     * @param source 所有键
+     * @throws IOException 写入失败
+     */
+    static void write(File dir, long sequence, List<LogStore.Mark> marks, Source source) throws IOException {
+        File temp = new File(dir, NAME + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(fos, new CRC32());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(marks.size());
+            for (LogStore.Mark mark : marks) {
+                out.writeInt(mark.id);
+                out.writeLong(mark.size);
+                out.writeLong(mark.dead);
+                out.writeLong(mark.minimum);
+            }
+            source.forEach((key, expire, address, length) -> {
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(expire);
+                out.writeLong(address);
+                out.writeInt(length);
+            });
+            out.writeInt(-1);
+            out.flush();
+            int crc = (int) checked.getChecksum().getValue();
+            out.writeInt(crc);
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            remove(temp);
+            throw e;
+        }
+        Files.move(temp.toPath(), new File(dir, NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 删除快照, 删除日志段前调用, 避免快照引用不存在或编号被重用的段
+     * @param dir 所在目录
+     * @return 不存在或删除成功返回 true
+     */
+    static boolean delete(File dir) {
+        return remove(new File(dir, NAME));
+    }
+
+    private static boolean remove(File file) {
+        return !file.exists() || file.delete();
+    }
+
+}
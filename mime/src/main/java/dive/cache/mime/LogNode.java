@@ -0,0 +1,36 @@
+package dive.cache.mime;
+
+/**
+ * 已写入日志的节点, 额外保存记录在日志中的位置, 持久化缓存以此作为内存索引
+ * 位置不可变, 记录被移动时以新的节点替换
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class LogNode<K, V> extends Node<K, V> {
+
+    /**
+     * 记录的位置, 高32位为日志段编号, 低32位为段内偏移
+     */
+    final long address;
+
+    /**
+     * 记录的字节数
+     */
+    final int length;
+
+    /**
+     * 构造器
+     * @param key 键
+     * @param value 值, 尚未从日志读取时为 null
+     * @param expire 过期时间
+     * @param address 记录的位置
+     * @param length 记录的字节数
+     */
+    LogNode(K key, V value, long expire, long address, int length) {
+        super(key, value, expire);
+        this.address = address;
+        this.length = length;
+    }
+
+}
@@ -0,0 +1,975 @@
+package dive.cache.mime;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 追加写的日志存储, 参照 Bitcask
+ * 记录顺序追加到当前日志段, 段的大小超过上限后新开一段; 记录写入后只有过期时间可原地更新
+ * 记录的位置由调用方保存在内存索引中, 读取时按位置随机读, 重启时按段顺序扫描重建索引
+ * 记录格式: 校验和(4) 过期时间(8) 序号(8) 标记(1) 键长(4) 值长(4) 键 值, 校验和不覆盖可原地更新的过期时间
+ * 同一个键以序号最大的记录为准, 删除写入只有键的墓碑记录
+ * 整理时把日志段中仍有效的记录连同原序号复制到新的日志段, 再删除原段, 新旧段同时存在时按序号也能得到正确结果
+ * @author dawn
+ */
+class LogStore {
+
+    /**
+     * 日志段文件的后缀名
+     */
+    static final String SUFFIX = ".log";
+
+    /**
+     * 记录头部的字节数
+     */
+    static final int HEADER = 29;
+
+    /**
+     * 墓碑标记, 表示该键已被删除
+     */
+    static final byte TOMBSTONE = 1;
+
+    /**
+     * 默认的日志段大小上限, 字节
+     */
+    static final long SEGMENT_BYTES = 64L << 20;
+
+    /**
+     * 过期时间在记录中的偏移
+     */
+    private static final int EXPIRE_OFFSET = 4;
+
+    /**
+     * 校验和覆盖的起始偏移
+     */
+    private static final int CHECKED_OFFSET = 12;
+
+    /**
+     * 所在目录
+     */
+    private final File dir;
+
+    /**
+     * 日志段大小上限, 位置以 int 保存, 不能超过 2G
+     */
+    private volatile long limit;
+
+    /**
+     * 错误日志
+     */
+    private final Consumer<String> error;
+
+    /**
+     * 所有日志段, 按编号排序
+     */
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * 当前追加的日志段, 追加时加锁更新, 整理时无锁读取
+     */
+    private volatile Segment active;
+
+    /**
+     * 下一条记录的序号, 追加时加锁
+     */
+    private long sequence = 1L;
+
+    /**
+     * 下一个日志段的编号, 加锁
+     */
+    private int next = 1;
+
+    /**
+     * 是否未关闭
+     */
+    private volatile boolean open = true;
+
+    /**
+     * 后台整理的线程, 所有持久化缓存共用一个, 整理本身按字节限速
+     */
+    static class Holder {
+        static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "mime-cache-compactor");
+            // 守护线程模式，不阻挡程序结束
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 对文件通道的一次操作
+     * @param <T> 结果类型
+     */
+    private interface Operation<T> {
+
+        /**
+         * 执行操作
+         * @param channel 文件通道
+         * @return 结果
+         * @throws IOException 读写失败
+         */
+        T apply(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * 一个日志段文件
+     */
+    static final class Segment {
+
+        final int id;
+
+        final File file;
+
+        /**
+         * 文件通道, 读写的线程被中断时通道会被关闭, 此时重新打开
+         */
+        private volatile FileChannel channel;
+
+        /**
+         * 是否已关闭, 关闭后不再重新打开通道
+         */
+        private volatile boolean closed;
+
+        /**
+         * 已写入的字节数, 只由持有追加锁的线程更新
+         */
+        volatile long size;
+
+        /**
+         * 已失效的字节数, 被覆盖、删除或过期的记录
+         */
+        final LongAdder dead = new LongAdder();
+
+        /**
+         * 段内数据记录(非墓碑)的最小序号, 判断墓碑能否丢弃时使用
+         */
+        volatile long minimum = Long.MAX_VALUE;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = this.open();
+            this.size = this.channel.size();
+        }
+
+        private FileChannel open() throws IOException {
+            return FileChannel.open(this.file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * 通道被关闭时重新打开, 已由其他线程重新打开或段已关闭时不打开
+         * @param failed 失败的通道
+         * @param e 失败的原因
+         * @throws IOException 段已关闭或打开失败
+         */
+        private synchronized void reopen(FileChannel failed, ClosedChannelException e) throws IOException {
+            if (this.closed) {
+                throw e;
+            }
+            if (this.channel == failed) {
+                this.channel = this.open();
+            }
+        }
+
+        /**
+         * 执行一次通道操作, 不受调用线程中断的影响
+         * 线程被中断时 FileChannel 会关闭通道, 之后所有读写都会失败, 因此清除中断状态, 重新打开通道后重试, 完成后恢复中断状态
+         * 其他线程的中断导致通道关闭时同样重试
+         * @param operation 操作
+         * @param <T> 结果类型
+         * @return 操作的结果
+         * @throws IOException 读写失败或段已关闭
+         */
+        private <T> T io(Operation<T> operation) throws IOException {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    FileChannel c = this.channel;
+                    try {
+                        return operation.apply(c);
+                    } catch (ClosedChannelException e) {
+                        interrupted |= Thread.interrupted();
+                        this.reopen(c, e);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * 从给定位置写入全部字节
+         * @param buffer 字节
+         * @param position 文件中的位置
+         * @throws IOException 写入失败
+         */
+        void write(ByteBuffer buffer, long position) throws IOException {
+            int start = buffer.position();
+            while (buffer.hasRemaining()) {
+                int p = buffer.position();
+                // 重试时从本次写入前的位置重写, 位置写入可以重复
+                this.io(c -> c.write((ByteBuffer) buffer.position(p), position + p - start));
+            }
+        }
+
+        /**
+         * 从给定位置读满缓冲区
+         * @param buffer 缓冲区
+         * @param position 文件中的位置
+         * @return 读满返回 true, 文件不够长返回 false
+         * @throws IOException 读取失败
+         */
+        boolean read(ByteBuffer buffer, long position) throws IOException {
+            int start = buffer.position();
+            while (buffer.hasRemaining()) {
+                int p = buffer.position();
+                if (this.io(c -> c.read((ByteBuffer) buffer.position(p), position + p - start)) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 刷到磁盘
+         * @throws IOException 刷盘失败
+         */
+        void force() throws IOException {
+            this.io(c -> {
+                c.force(false);
+                return null;
+            });
+        }
+
+        /**
+         * 截断到给定长度
+         * @param length 长度
+         * @throws IOException 截断失败
+         */
+        void truncate(long length) throws IOException {
+            this.io(c -> c.truncate(length));
+        }
+
+        /**
+         * 失效字节的占比
+         * @return 占比, 空段为 0
+         */
+        double ratio() {
+            long s = this.size;
+            return 0 == s ? 0.0d : (double) this.dead.sum() / s;
+        }
+
+        /**
+         * 记录一条数据记录的序号, 只由写入该段的线程调用
+         * @param sequence 序号
+         * @param flags 标记
+         */
+        void written(long sequence, byte flags) {
+            if (TOMBSTONE != flags && sequence < this.minimum) {
+                this.minimum = sequence;
+            }
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            try {
+                this.channel.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响删除
+            }
+        }
+    }
+
+    /**
+     * 检查点时一个日志段的状态, 保存在索引快照中
+     */
+    static final class Mark {
+
+        final int id;
+
+        /**
+         * 检查点时已写入的字节数, 之后追加的部分启动时需扫描
+         */
+        final long size;
+
+        final long dead;
+
+        final long minimum;
+
+        Mark(int id, long size, long dead, long minimum) {
+            this.id = id;
+            this.size = size;
+            this.dead = dead;
+            this.minimum = minimum;
+        }
+    }
+
+    /**
+     * 整理的输出, 写满后新开一段, 只由整理线程使用
+     */
+    final class Output {
+
+        /**
+         * 所有输出的日志段
+         */
+        private final List<Segment> written = new ArrayList<>();
+
+        private Segment current;
+
+        /**
+         * 已写入的字节数
+         */
+        private long bytes;
+
+        private Segment segment(int length) throws IOException {
+            Segment s = this.current;
+            if (null == s || (0 < s.size && LogStore.this.limit < s.size + length)) {
+                s = this.current = LogStore.this.create();
+                this.written.add(s);
+            }
+            return s;
+        }
+
+        private long write(ByteBuffer record, long sequence, byte flags) throws IOException {
+            int length = record.remaining();
+            Segment s = this.segment(length);
+            long offset = s.size;
+            s.write(record, offset);
+            s.size = offset + length;
+            s.written(sequence, flags);
+            this.bytes += length;
+            return address(s.id, offset);
+        }
+
+        /**
+         * 复制一条记录, 保留原序号, 使用新的过期时间
+         * @param address 原位置
+         * @param length 记录的字节数
+         * @param expire 过期时间
+         * @return 新的位置
+         * @throws IOException 读取或写入失败
+         */
+        long copy(long address, int length, long expire) throws IOException {
+            ByteBuffer record = LogStore.this.read(address, length);
+            if (null == record) {
+                throw new IOException("record at " + LogStore.segment(address) + ":" + LogStore.offset(address) + " is unreadable");
+            }
+            record.putLong(EXPIRE_OFFSET, expire);
+            return this.write(record, record.getLong(CHECKED_OFFSET), record.get(CHECKED_OFFSET + 8));
+        }
+
+        /**
+         * 写入墓碑, 保留原序号
+         * @param sequence 序号
+         * @param expire 过期时间
+         * @param key 键的字节
+         * @throws IOException 写入失败
+         */
+        void tombstone(long sequence, long expire, byte[] key) throws IOException {
+            this.write(record(expire, sequence, TOMBSTONE, key, new byte[0]), sequence, TOMBSTONE);
+        }
+
+        /**
+         * 已写入的字节数
+         * @return 字节数
+         */
+        long bytes() {
+            return this.bytes;
+        }
+
+        /**
+         * 输出刷到磁盘, 之后才能删除原段
+         * @throws IOException 刷盘失败
+         */
+        void force() throws IOException {
+            for (Segment s : this.written) {
+                s.force();
+            }
+        }
+    }
+
+    /**
+     * 扫描时每条记录的回调
+     */
+    interface Visitor {
+
+        /**
+         * 访问一条校验通过的记录
+         * @param address 记录的位置
+         * @param length 记录的字节数
+         * @param expire 过期时间
+         * @param sequence 序号
+         * @param flags 标记
+         * @param key 键的字节
+         */
+        void visit(long address, int length, long expire, long sequence, byte flags, byte[] key);
+    }
+
+    /**
+     * 构造器, 打开目录下已有的日志段, 在编号最大的段后继续追加
+     * @param dir 所在目录
+     * @param limit 日志段大小上限
+     * @param error 错误日志
+     * @throws IOException 打开文件失败
+     */
+    LogStore(File dir, long limit, Consumer<String> error) throws IOException {
+        if (limit <= HEADER || Integer.MAX_VALUE < limit) {
+            throw new IllegalArgumentException("segment limit must be in (" + HEADER + ", " + Integer.MAX_VALUE + "]");
+        }
+        this.dir = dir;
+        this.limit = limit;
+        this.error = error;
+        String[] list = dir.list();
+        if (null != list) {
+            for (String name : list) {
+                Integer id = id(name);
+                if (null != id) {
+                    this.segments.put(id, new Segment(id, new File(dir, name)));
+                }
+            }
+        }
+        if (!this.segments.isEmpty()) {
+            this.next = this.segments.lastKey() + 1;
+        }
+        this.active = this.segments.isEmpty() ? this.create() : this.segments.lastEntry().getValue();
+    }
+
+    /**
+     * 由文件名解析日志段编号
+     * @param name 文件名
+     * @return 编号, 不是日志段返回 null
+     */
+    static Integer id(String name) {
+        if (!name.endsWith(SUFFIX)) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 新建日志段, 使用下一个编号
+     * @return 日志段
+     * @throws IOException 创建失败
+     */
+    synchronized Segment create() throws IOException {
+        int id = this.next++;
+        Segment segment = new Segment(id, new File(this.dir, String.format("%010d", id) + SUFFIX));
+        this.segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * 设置日志段大小上限, 之后新开的段生效
+     * @param limit 上限, 字节
+     */
+    void limit(long limit) {
+        if (limit <= HEADER || Integer.MAX_VALUE < limit) {
+            throw new IllegalArgumentException("segment limit must be in (" + HEADER + ", " + Integer.MAX_VALUE + "]");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * 由日志段编号和段内偏移组成位置
+     */
+    static long address(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    static int segment(long address) {
+        return (int) (address >>> 32);
+    }
+
+    static long offset(long address) {
+        return address & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 记录的字节数
+     * @param key 键的字节数
+     * @param value 值的字节数
+     * @return 字节数
+     */
+    static int length(int key, int value) {
+        return HEADER + key + value;
+    }
+
+    /**
+     * 追加一条记录
+     * @param expire 过期时间
+     * @param flags 标记
+     * @param key 键的字节
+     * @param value 值的字节, 墓碑为空数组
+     * @return 记录的位置
+     * @throws IOException 写入失败
+     */
+    synchronized long append(long expire, byte flags, byte[] key, byte[] value) throws IOException {
+        int length = length(key.length, value.length);
+        Segment segment = this.active;
+        if (0 < segment.size && this.limit < segment.size + length) {
+            segment = this.active = this.create();
+        }
+        long sequence = this.sequence++;
+        long offset = segment.size;
+        segment.write(record(expire, sequence, flags, key, value), offset);
+        segment.size = offset + length;
+        segment.written(sequence, flags);
+        return address(segment.id, offset);
+    }
+
+    /**
+     * 批量追加记录, 同一日志段中连续的记录合并为一次写入
+     * 失败时已写入的部分保留在日志中, 由调用方按全部失败处理
+     * @param flags 每条记录的标记
+     * @param expires 每条记录的过期时间
+     * @param keys 每条记录键的字节
+     * @param values 每条记录值的字节, 墓碑为空数组
+     * @return 每条记录的位置
+     * @throws IOException 写入失败
+     */
+    synchronized long[] append(byte[] flags, long[] expires, byte[][] keys, byte[][] values) throws IOException {
+        int count = keys.length;
+        long[] addresses = new long[count];
+        ByteBuffer[] records = new ByteBuffer[count];
+        Segment segment = this.active;
+        long offset = segment.size;
+        long size = offset;
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            int length = length(keys[i].length, values[i].length);
+            if (0 < size && this.limit < size + length) {
+                write(segment, records, from, i, offset);
+                segment = this.active = this.create();
+                offset = size = segment.size;
+                from = i;
+            }
+            long sequence = this.sequence++;
+            records[i] = record(expires[i], sequence, flags[i], keys[i], values[i]);
+            segment.written(sequence, flags[i]);
+            addresses[i] = address(segment.id, size);
+            size += length;
+        }
+        write(segment, records, from, count, offset);
+        return addresses;
+    }
+
+    /**
+     * 合并为一次写入
+     * @param segment 日志段
+     * @param records 记录
+     * @param from 起始下标, 包含
+     * @param to 结束下标, 不包含
+     * @param offset 写入的偏移
+     * @throws IOException 写入失败
+     */
+    private static void write(Segment segment, ByteBuffer[] records, int from, int to, long offset) throws IOException {
+        if (from == to) {
+            return;
+        }
+        int total = 0;
+        for (int i = from; i < to; i++) {
+            total += records[i].remaining();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (int i = from; i < to; i++) {
+            buffer.put(records[i]);
+        }
+        buffer.flip();
+        segment.write(buffer, offset);
+        segment.size = offset + total;
+    }
+
+    /**
+     * 组装一条记录并计算校验和
+     * @param expire 过期时间
+     * @param sequence 序号
+     * @param flags 标记
+     * @param key 键的字节
+     * @param value 值的字节
+     * @return 可以写入的记录
+     */
+    private static ByteBuffer record(long expire, long sequence, byte flags, byte[] key, byte[] value) {
+        int length = length(key.length, value.length);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(0).putLong(expire).putLong(sequence).put(flags)
+                .putInt(key.length).putInt(value.length).put(key).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), CHECKED_OFFSET, length - CHECKED_OFFSET);
+        buffer.putInt(0, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 读取一条记录并校验
+     * @param address 记录的位置
+     * @param length 记录的字节数
+     * @return 整条记录, 所在的段已不存在或校验失败返回 null
+     */
+    ByteBuffer read(long address, int length) {
+        Segment segment = this.segments.get(segment(address));
+        if (null == segment) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            if (!segment.read(buffer, offset(address))) {
+                return null;
+            }
+        } catch (IOException e) {
+            // 段已被关闭删除, 由调用方按最新的索引重试
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), CHECKED_OFFSET, length - CHECKED_OFFSET);
+        if (buffer.getInt(0) != (int) crc.getValue()) {
+            this.error.accept("checksum mismatch at " + segment.file.getPath() + ":" + offset(address));
+            return null;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 记录中值的偏移
+     * @param record 整条记录
+     * @return 偏移
+     */
+    static int valueOffset(ByteBuffer record) {
+        return HEADER + record.getInt(HEADER - 8);
+    }
+
+    /**
+     * 原地更新记录的过期时间
+     * @param address 记录的位置
+     * @param expire 过期时间
+     */
+    void expire(long address, long expire) {
+        Segment segment = this.segments.get(segment(address));
+        if (null == segment) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(0, expire);
+        try {
+            segment.write(buffer, offset(address) + EXPIRE_OFFSET);
+        } catch (IOException e) {
+            this.error.accept("update expire in " + segment.file.getPath() + " failed: " + e);
+        }
+    }
+
+    /**
+     * 记录已失效, 计入所在段的失效字节
+     * @param address 记录的位置
+     * @param length 记录的字节数
+     */
+    void discard(long address, int length) {
+        Segment segment = this.segments.get(segment(address));
+        if (null != segment) {
+            segment.dead.add(length);
+        }
+    }
+
+    /**
+     * 下一条记录的序号
+     * @return 序号
+     */
+    synchronized long sequence() {
+        return this.sequence;
+    }
+
+    /**
+     * 检查点时每个日志段的状态, 调用方需保证期间没有整理
+     * @return 按编号排序
+     */
+    synchronized List<Mark> marks() {
+        List<Mark> marks = new ArrayList<>(this.segments.size());
+        for (Segment segment : this.segments.values()) {
+            marks.add(new Mark(segment.id, segment.size, segment.dead.sum(), segment.minimum));
+        }
+        return marks;
+    }
+
+    /**
+     * 按索引快照恢复日志段的状态, 快照中的段必须都存在且不短于检查点时的长度, 否则不做任何修改
+     * @param marks 检查点时每个日志段的状态
+     * @param sequence 检查点时下一条记录的序号
+     * @return 每个日志段已由快照覆盖的字节数, 快照与日志不符时返回 null
+     */
+    synchronized Map<Integer, Long> restore(List<Mark> marks, long sequence) {
+        for (Mark mark : marks) {
+            Segment segment = this.segments.get(mark.id);
+            if (null == segment || segment.size < mark.size) {
+                return null;
+            }
+        }
+        Map<Integer, Long> covered = new HashMap<>();
+        for (Mark mark : marks) {
+            Segment segment = this.segments.get(mark.id);
+            segment.dead.add(mark.dead);
+            segment.minimum = Math.min(segment.minimum, mark.minimum);
+            covered.put(mark.id, mark.size);
+        }
+        this.sequence = Math.max(this.sequence, sequence);
+        return covered;
+    }
+
+    /**
+     * 并行扫描所有日志段, 回调需线程安全
+     * 最后一段末尾不完整或校验失败的记录视为写入时中断, 截断丢弃; 其余段遇到损坏时跳过该段剩余部分
+     * 扫描完成后序号从已有的最大序号继续
+     * @param visitor 每条记录的回调
+     */
+    void scan(Visitor visitor) {
+        this.scan(Collections.emptyMap(), visitor);
+    }
+
+    /**
+     * 并行扫描所有日志段中未被索引快照覆盖的部分, 回调需线程安全
+     * @param covered 每个日志段已由快照覆盖的字节数, 这部分不再扫描
+     * @param visitor 每条记录的回调
+     */
+    void scan(Map<Integer, Long> covered, Visitor visitor) {
+        LongAccumulator max = new LongAccumulator(Math::max, 0L);
+        Segment a = this.active;
+        this.segments.values().parallelStream().forEach(segment -> {
+            long from = covered.getOrDefault(segment.id, 0L);
+            if (segment.size <= from) {
+                return;
+            }
+            long offset = this.scan(segment, from, (address, length, expire, sequence, flags, key) -> {
+                max.accumulate(sequence);
+                visitor.visit(address, length, expire, sequence, flags, key);
+            });
+            if (offset < segment.size && segment == a) {
+                this.truncate(segment, offset);
+            }
+        });
+        synchronized (this) {
+            this.sequence = Math.max(this.sequence, max.get() + 1);
+        }
+    }
+
+    /**
+     * 顺序扫描一个日志段, 遇到损坏的记录时停止
+     * @param segment 日志段
+     * @param visitor 每条记录的回调
+     * @return 完好部分的字节数
+     */
+    long scan(Segment segment, Visitor visitor) {
+        return this.scan(segment, 0L, visitor);
+    }
+
+    /**
+     * 从给定偏移开始顺序扫描一个日志段, 遇到损坏的记录时停止
+     * @param segment 日志段
+     * @param from 起始偏移, 必须是一条记录的开头
+     * @param visitor 每条记录的回调
+     * @return 完好部分的字节数
+     */
+    private long scan(Segment segment, long from, Visitor visitor) {
+        long offset = from;
+        long size = segment.size;
+        try (FileInputStream fis = new FileInputStream(segment.file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 1 << 16))) {
+            fis.getChannel().position(from);
+            byte[] checked = new byte[64];
+            while (offset < size) {
+                int crc = in.readInt();
+                long expire = in.readLong();
+                long sequence = in.readLong();
+                byte flags = in.readByte();
+                int keyLength = in.readInt();
+                int valueLength = in.readInt();
+                // 长度按 long 计算, 损坏的长度相加可能溢出为看似合法的值
+                long total = (long) HEADER + keyLength + valueLength;
+                if (keyLength < 0 || valueLength < 0 || size - offset < total || Integer.MAX_VALUE < total) {
+                    break;
+                }
+                int length = (int) total;
+                if (checked.length < length - CHECKED_OFFSET) {
+                    checked = new byte[length - CHECKED_OFFSET];
+                }
+                ByteBuffer head = ByteBuffer.wrap(checked, 0, HEADER - CHECKED_OFFSET);
+                head.putLong(sequence).put(flags).putInt(keyLength).putInt(valueLength);
+                in.readFully(checked, HEADER - CHECKED_OFFSET, keyLength + valueLength);
+                CRC32 check = new CRC32();
+                check.update(checked, 0, length - CHECKED_OFFSET);
+                if (crc != (int) check.getValue()) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                System.arraycopy(checked, HEADER - CHECKED_OFFSET, key, 0, keyLength);
+                segment.written(sequence, flags);
+                visitor.visit(address(segment.id, offset), length, expire, sequence, flags, key);
+                offset += length;
+            }
+        } catch (EOFException e) {
+            // 末尾不完整
+        } catch (IOException e) {
+            this.error.accept("scan " + segment.file.getPath() + " failed: " + e);
+        }
+        if (offset < size && segment != this.active) {
+            this.error.accept("corrupt record at " + segment.file.getPath() + ":" + offset + ", rest of segment skipped");
+            segment.dead.add(size - offset);
+        }
+        return offset;
+    }
+
+    /**
+     * 失效字节占比达到阈值的日志段, 不含当前追加的段
+     * @param ratio 阈值
+     * @return 按占比从高到低排序
+     */
+    List<Segment> candidates(double ratio) {
+        List<Segment> list = new ArrayList<>();
+        for (Segment segment : this.segments.values()) {
+            if (0 < segment.size && ratio <= segment.ratio()) {
+                list.add(segment);
+            }
+        }
+        // 遍历期间可能新开了段, 遍历后再排除当前追加的段, 此前追加过的段都不会再写入
+        Segment a = this.active;
+        list.remove(a);
+        list.sort(Comparator.comparingDouble(Segment::ratio).reversed());
+        return list;
+    }
+
+    /**
+     * 除给定段外所有数据记录的最小序号
+     * 序号小于该值的墓碑或失效记录, 其他段中不存在同一个键更早的数据记录, 可以直接丢弃
+     * @param except 正在整理的段
+     * @return 最小序号
+     */
+    long floor(Segment except) {
+        long floor = Long.MAX_VALUE;
+        for (Segment segment : this.segments.values()) {
+            if (segment != except) {
+                floor = Math.min(floor, segment.minimum);
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * 新的整理输出
+     * @return 输出
+     */
+    Output output() {
+        return new Output();
+    }
+
+    /**
+     * 删除已整理完的日志段, 正在读取的调用方读不到时按最新的索引重试
+     * @param segment 日志段
+     */
+    void drop(Segment segment) {
+        if (this.segments.remove(segment.id, segment)) {
+            segment.close();
+            if (!segment.file.delete()) {
+                this.error.accept("delete " + segment.file.getPath() + " failed");
+            }
+        }
+    }
+
+    private synchronized void truncate(Segment segment, long offset) {
+        try {
+            segment.truncate(offset);
+            segment.size = offset;
+        } catch (IOException e) {
+            this.error.accept("truncate " + segment.file.getPath() + " failed: " + e);
+        }
+    }
+
+    /**
+     * 删除所有日志段, 从新的编号重新开始, 旧的位置都不再有效
+     * @throws IOException 新建日志段失败
+     */
+    synchronized void clear() throws IOException {
+        for (Segment segment : this.segments.values()) {
+            this.drop(segment);
+        }
+        this.active = this.create();
+    }
+
+    /**
+     * 所有日志段
+     * @return 按编号排序的日志段, 只读
+     */
+    Map<Integer, Segment> segments() {
+        return this.segments;
+    }
+
+    /**
+     * 失效字节的总数
+     * @return 字节数
+     */
+    long dead() {
+        long dead = 0;
+        for (Segment segment : this.segments.values()) {
+            dead += segment.dead.sum();
+        }
+        return dead;
+    }
+
+    /**
+     * 刷到磁盘并关闭所有日志段, 之后不能再读写
+     */
+    synchronized void close() {
+        this.open = false;
+        this.force();
+        for (Segment segment : this.segments.values()) {
+            segment.close();
+        }
+    }
+
+    /**
+     * 是否未关闭
+     * @return 未关闭返回 true
+     */
+    boolean isOpen() {
+        return this.open;
+    }
+
+    /**
+     * 将已写入的数据刷到磁盘
+     */
+    void force() {
+        for (Segment segment : this.segments.values()) {
+            try {
+                segment.force();
+            } catch (IOException e) {
+                this.error.accept("force " + segment.file.getPath() + " failed: " + e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,817 @@
+package dive.cache.mime;
+
+import dive.cache.common.TimeCache;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * 一个用于缓存键值对数据的对象, 键为 long, 可以对键值对设置存活时间
+ * 按键的哈希分段, 每段是开放寻址(线性探测)的原始类型数组, 键和过期时间不装箱, 不为每个键创建节点
+ * 读取使用乐观读, 无锁且不分配对象; 写入只锁所在的段
+ * @author dawn
+ * @param <V> 值的类型
+ */
+public class LongKeyMemoryCache<V> implements TimeCache<Long, V>, Reclaimable {
+
+    /**
+     * 默认段数
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 每段的最小容量
+     */
+    private static final int MINIMUM_CAPACITY = 16;
+
+    /**
+     * 定时器单例
+     */
+    private final CacheUtil cacheUtil;
+
+    /**
+     * 所有段
+     */
+    private final Segment[] segments;
+
+    /**
+     * 用哈希高位选择段
+     */
+    private final int segmentShift;
+
+    /**
+     * 每段的初始容量
+     */
+    private final int initialCapacity;
+
+    /**
+     * 判断过期的时钟
+     */
+    private Ticker ticker = Ticker.system();
+
+    /**
+     * 整体回收从该段开始, 时间预算用完时下次从未处理完的段继续
+     */
+    private int reclaimCursor;
+
+    /**
+     * 一段的存储, 三个数组同一下标对应一个键值对, 值为 null 表示空位
+     * 扩容时整体替换, 乐观读取时拿到的总是同一组数组
+     */
+    private static final class Table {
+
+        final long[] keys;
+        final Object[] values;
+        final long[] expires;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.expires = new long[capacity];
+        }
+
+    }
+
+    /**
+     * 一段, 写入加写锁, 读取先乐观读, 校验失败再加读锁
+     */
+    private static final class Segment extends StampedLock {
+
+        private static final long serialVersionUID = 1L;
+
+        Table table;
+        int size;
+
+        /**
+         * 整体回收因时间预算中断时, 下次从该位置继续, 处理完时为 0
+         */
+        int sweep;
+
+        Segment(int capacity) {
+            this.table = new Table(capacity);
+        }
+
+    }
+
+    /**
+     * 混淆键的哈希
+     * @param key 键
+     * @return 哈希
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private Segment segment(long hash) {
+        return this.segments[(int) (hash >>> this.segmentShift)];
+    }
+
+    /**
+     * 查找键的位置
+     * @param table 存储
+     * @param key 键
+     * @param hash 键的哈希
+     * @return 下标, 不存在返回 -1
+     */
+    private static int find(Table table, long key, long hash) {
+        int mask = table.values.length - 1;
+        int i = (int) hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            if (null == table.values[i]) {
+                return -1;
+            }
+            if (key == table.keys[i]) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 设置或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时间
+     * @return 原来的值
+     */
+    @SuppressWarnings("unchecked")
+    private V store(long key, V value, long expire) {
+        Objects.requireNonNull(value, "value");
+        long hash = hash(key);
+        Segment segment = this.segment(hash);
+        long stamp = segment.writeLock();
+        try {
+            Table table = segment.table;
+            if ((segment.size + 1) << 2 > table.values.length * 3) {
+                table = resize(segment);
+            }
+            int mask = table.values.length - 1;
+            int i = (int) hash & mask;
+            while (null != table.values[i]) {
+                if (key == table.keys[i]) {
+                    Object old = table.values[i];
+                    table.values[i] = value;
+                    table.expires[i] = expire;
+                    return (V) old;
+                }
+                i = (i + 1) & mask;
+            }
+            table.keys[i] = key;
+            table.expires[i] = expire;
+            table.values[i] = value;
+            segment.size++;
+            return null;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 段扩容一倍, 调用方持有写锁
+     * @param segment 段
+     * @return 新的存储
+     */
+    private static Table resize(Segment segment) {
+        Table old = segment.table;
+        Table table = new Table(old.values.length << 1);
+        int mask = table.values.length - 1;
+        for (int j = 0; j < old.values.length; j++) {
+            if (null != old.values[j]) {
+                int i = (int) hash(old.keys[j]) & mask;
+                while (null != table.values[i]) {
+                    i = (i + 1) & mask;
+                }
+                table.keys[i] = old.keys[j];
+                table.values[i] = old.values[j];
+                table.expires[i] = old.expires[j];
+            }
+        }
+        segment.table = table;
+        return table;
+    }
+
+    /**
+     * 删除下标处的键值对, 后续同簇的键前移填补空位, 不留删除标记, 调用方持有写锁
+     * @param segment 段
+     * @param i 下标
+     */
+    private static void erase(Segment segment, int i) {
+        Table table = segment.table;
+        int mask = table.values.length - 1;
+        table.values[i] = null;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (null == table.values[j]) {
+                break;
+            }
+            int k = (int) hash(table.keys[j]) & mask;
+            // k 在 (i, j] 之间时该键不能前移
+            boolean stay = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!stay) {
+                table.keys[i] = table.keys[j];
+                table.values[i] = table.values[j];
+                table.expires[i] = table.expires[j];
+                table.values[j] = null;
+                i = j;
+            }
+        }
+        segment.size--;
+    }
+
+    private static boolean alive(long expire, long now) {
+        return expire < 0 || now < expire;
+    }
+
+    /**
+     * 获取存活的值
+     * @param key 键
+     * @return 存活返回值, 否则返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private V value(long key) {
+        long hash = hash(key);
+        Segment segment = this.segment(hash);
+        long now = this.ticker.read();
+        long stamp = segment.tryOptimisticRead();
+        Object value = null;
+        long expire = 0;
+        if (0 != stamp) {
+            Table table = segment.table;
+            int i = find(table, key, hash);
+            if (0 <= i) {
+                value = table.values[i];
+                expire = table.expires[i];
+            }
+        }
+        if (0 == stamp || !segment.validate(stamp)) {
+            stamp = segment.readLock();
+            try {
+                Table table = segment.table;
+                int i = find(table, key, hash);
+                value = 0 <= i ? table.values[i] : null;
+                expire = 0 <= i ? table.expires[i] : 0;
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return null != value && alive(expire, now) ? (V) value : null;
+    }
+
+    /**
+     * 获取过期时间
+     * @param key 键
+     * @return 过期时间, 不存在返回 0
+     */
+    private long expireOf(long key) {
+        long hash = hash(key);
+        Segment segment = this.segment(hash);
+        long stamp = segment.readLock();
+        try {
+            Table table = segment.table;
+            int i = find(table, key, hash);
+            return 0 <= i ? table.expires[i] : 0;
+        } finally {
+            segment.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 若存活则更新过期时间
+     * @param key 键
+     * @param expire 新的过期时间
+     * @return 存活返回值, 否则返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private V touch(long key, long expire) {
+        long hash = hash(key);
+        Segment segment = this.segment(hash);
+        long now = this.ticker.read();
+        long stamp = segment.writeLock();
+        try {
+            Table table = segment.table;
+            int i = find(table, key, hash);
+            if (i < 0 || !alive(table.expires[i], now)) {
+                return null;
+            }
+            table.expires[i] = expire;
+            return (V) table.values[i];
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 移除一个键
+     * @param key 键
+     * @return 存活返回原来的值, 否则返回 null
+     */
+    @SuppressWarnings("unchecked")
+    private V vanish(long key) {
+        long hash = hash(key);
+        Segment segment = this.segment(hash);
+        long now = this.ticker.read();
+        long stamp = segment.writeLock();
+        try {
+            Table table = segment.table;
+            int i = find(table, key, hash);
+            if (i < 0) {
+                return null;
+            }
+            Object value = table.values[i];
+            boolean alive = alive(table.expires[i], now);
+            erase(segment, i);
+            return alive ? (V) value : null;
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int reclaim() {
+        return this.reclaim(Long.MAX_VALUE);
+    }
+
+    /**
+     * 从游标处逐段回收, 段内每处理若干个位置检查一次时间预算, 用完时下次从中断的段和位置继续
+     */
+    @Override
+    public synchronized int reclaim(long deadline) {
+        int removed = 0;
+        int rounds = this.segments.length;
+        for (int n = 0; n < rounds; n++) {
+            // 若程序结束，则不用清理
+            if (!this.cacheUtil.isAlive()) {
+                break;
+            }
+            Segment segment = this.segments[this.reclaimCursor];
+            boolean finished;
+            long stamp = segment.writeLock();
+            try {
+                if (0 == n && 0 < segment.sweep) {
+                    // 从段的中间继续, 最后再回到该段处理前面的部分
+                    rounds++;
+                }
+                removed += this.reclaim(segment, segment.sweep, deadline);
+                finished = 0 == segment.sweep;
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+            if (!finished) {
+                return removed;
+            }
+            this.reclaimCursor = (this.reclaimCursor + 1) % this.segments.length;
+            if (deadline <= System.nanoTime()) {
+                break;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 从给定位置起清理一段中过期的键, 调用方持有写锁
+     * 每处理若干个位置检查一次时间预算, 用完时把中断的位置记在段的游标上
+     * @param segment 段
+     * @param from 起始位置
+     * @param deadline 截止时刻, 纳秒
+     * @return 移除的键个数
+     */
+    private int reclaim(Segment segment, int from, long deadline) {
+        long now = this.ticker.read();
+        Table table = segment.table;
+        int removed = 0;
+        int count = 0;
+        int i = from;
+        while (i < table.values.length) {
+            if ((++count & CacheUtil.CHECK_MASK) == 0 && deadline <= System.nanoTime()) {
+                segment.sweep = i;
+                return removed;
+            }
+            if (null != table.values[i] && !alive(table.expires[i], now)) {
+                // 后续的键可能前移到该位置, 需要再次检查
+                erase(segment, i);
+                removed++;
+            } else {
+                i++;
+            }
+        }
+        segment.sweep = 0;
+        return removed;
+    }
+
+    /**
+     * 遍历所有键值对
+     * @param action 遍历函数
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Long, V> action) {
+        for (Segment segment : this.segments) {
+            long now = this.ticker.read();
+            Table table;
+            long stamp = segment.readLock();
+            try {
+                table = segment.table;
+                // 复制后在锁外回调, 避免回调中写入本段时死锁
+                table = copy(table);
+            } finally {
+                segment.unlockRead(stamp);
+            }
+            for (int i = 0; i < table.values.length; i++) {
+                if (null != table.values[i] && alive(table.expires[i], now)) {
+                    action.accept(table.keys[i], (V) table.values[i]);
+                }
+            }
+        }
+    }
+
+    private static Table copy(Table table) {
+        Table copy = new Table(table.values.length);
+        System.arraycopy(table.keys, 0, copy.keys, 0, table.keys.length);
+        System.arraycopy(table.values, 0, copy.values, 0, table.values.length);
+        System.arraycopy(table.expires, 0, copy.expires, 0, table.expires.length);
+        return copy;
+    }
+
+    /**
+     * 缓存个数, 直接取自每段维护的计数, 与段数成正比
+     * 已过期但尚未回收的键也计算在内, 需要精确值时使用 {@link #exactSize()}
+     * @return 缓存个数
+     */
+    public int size() {
+        long size = 0;
+        for (Segment segment : this.segments) {
+            long stamp = segment.tryOptimisticRead();
+            int n = segment.size;
+            if (!segment.validate(stamp)) {
+                stamp = segment.readLock();
+                try {
+                    n = segment.size;
+                } finally {
+                    segment.unlockRead(stamp);
+                }
+            }
+            size += n;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * 有效的缓存个数, 逐个判断是否过期, 耗时与缓存个数成正比
+     * @return 缓存个数
+     */
+    public int exactSize() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            long now = this.ticker.read();
+            long stamp = segment.readLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.values.length; i++) {
+                    if (null != table.values[i] && alive(table.expires[i], now)) {
+                        size++;
+                    }
+                }
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long entries() {
+        return this.size();
+    }
+
+    /**
+     * 设置时钟, 应在存入数据之前设置
+     * @param ticker 时钟
+     * @return 本实例
+     */
+    public LongKeyMemoryCache<V> ticker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker");
+        this.ticker = ticker;
+        return this;
+    }
+
+    // 上面是基础方法 ------------------------------------------------
+
+    /**
+     * 构造器
+     * @param capacity 初始容量
+     * @param delay 清理任务延时时间，毫秒
+     * @param period 清理任务周期，毫秒
+     */
+    public LongKeyMemoryCache(int capacity, long delay, long period) {
+        this(capacity, ReclaimSchedule.fixed(delay, period));
+    }
+
+    /**
+     * 构造器
+     * @param delay 清理任务延时时间，毫秒
+     * @param period 清理任务周期，毫秒
+     */
+    public LongKeyMemoryCache(long delay, long period) {
+        this(0, ReclaimSchedule.fixed(delay, period));
+    }
+
+    /**
+     * 构造器
+     * @param capacity 初始容量
+     */
+    public LongKeyMemoryCache(int capacity) {
+        this(capacity, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 构造器
+     */
+    public LongKeyMemoryCache() {
+        this(0, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 构造器
+     * @param capacity 初始容量
+     * @param schedule 整体回收的计划
+     */
+    public LongKeyMemoryCache(int capacity, ReclaimSchedule schedule) {
+        Objects.requireNonNull(schedule, "schedule");
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.segments = new Segment[SEGMENTS];
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(SEGMENTS);
+        // 按 0.75 的负载计算每段容量
+        int each = (int) Math.min(1 << 30, (long) capacity * 4 / 3 / SEGMENTS + 1);
+        this.initialCapacity = Math.max(MINIMUM_CAPACITY, 1 << -Integer.numberOfLeadingZeros(each - 1));
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(this.initialCapacity);
+        }
+        this.cacheUtil = CacheUtil.getInstance();
+        this.cacheUtil.add(this, schedule);
+    }
+
+    // 原始类型的键 ------------------------------------------------
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     */
+    public void set(long key, V value) {
+        this.store(key, value, -1L);
+    }
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时刻
+     */
+    public void set(long key, V value, Instant expire) {
+        this.store(key, value, expire.toEpochMilli());
+    }
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param timeout 超时时间
+     * @param unit 时间单位
+     */
+    public void set(long key, V value, long timeout, TimeUnit unit) {
+        this.store(key, value, CacheUtil.expire(this.ticker.read(), timeout, unit));
+    }
+
+    /**
+     * 新增或更新一个键值对
+     * @param key 键
+     * @param value 值
+     * @param alive 存活毫秒数, 若为负数, 表明永不过期
+     */
+    public void set(long key, V value, long alive) {
+        this.store(key, value, alive < 0 ? -1L : this.ticker.read() + alive);
+    }
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @return 存在返回 true, 不存在返回 false
+     */
+    public boolean has(long key) {
+        return null != this.value(key);
+    }
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @param expire 若存在, 更新过期时刻
+     * @return 存在返回 true, 不存在返回 false
+     */
+    public boolean has(long key, Instant expire) {
+        return null != this.touch(key, expire.toEpochMilli());
+    }
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @param timeout 若存在, 更新超时时间
+     * @param unit 时间单位
+     * @return 存在返回 true, 不存在返回 false
+     */
+    public boolean has(long key, long timeout, TimeUnit unit) {
+        return null != this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
+    }
+
+    /**
+     * 是否存在某个键
+     * @param key 键
+     * @param alive 若存在, 更新存活毫秒数, 若为负数, 表明永不过期
+     * @return 存在返回 true, 不存在返回 false
+     */
+    public boolean has(long key, long alive) {
+        return null != this.touch(key, alive < 0 ? -1L : this.ticker.read() + alive);
+    }
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    public V get(long key) {
+        return this.value(key);
+    }
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @param expire 若存在, 更新过期时刻
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    public V get(long key, Instant expire) {
+        return this.touch(key, expire.toEpochMilli());
+    }
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @param timeout 若存在, 更新超时时间
+     * @param unit 时间单位
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    public V get(long key, long timeout, TimeUnit unit) {
+        return this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
+    }
+
+    /**
+     * 获取键对应的值
+     * @param key 键
+     * @param alive 若存在, 更新存活毫秒数, 若为负数, 表明永不过期
+     * @return 存在返回对应的值, 不存在返回 null
+     */
+    public V get(long key, long alive) {
+        return this.touch(key, alive < 0 ? -1L : this.ticker.read() + alive);
+    }
+
+    /**
+     * 删除对应键值对
+     * @param key 键
+     * @return 若存在返回值, 不存在返回 null
+     */
+    public V delete(long key) {
+        return this.vanish(key);
+    }
+
+    /**
+     * 移除对应键值对
+     * @param key 键
+     */
+    public void remove(long key) {
+        this.vanish(key);
+    }
+
+    /**
+     * 获取对应键的过期时间
+     * @param key 键
+     * @return 过期时间, 单位毫秒, 若不存在, 返回 0
+     */
+    public long expire(long key) {
+        return this.expireOf(key);
+    }
+
+    /**
+     * 获取对应键的剩余存活时间
+     * @param key 键
+     * @return 剩余存活时间, 单位毫秒, 若不存在, 返回 0
+     */
+    public long last(long key) {
+        long expire = this.expireOf(key);
+        return 0 != expire ? expire - this.ticker.read() : 0;
+    }
+
+    // 包装类型的键 ------------------------------------------------
+
+    @Override
+    public void set(Long key, V value) {
+        this.set(key.longValue(), value);
+    }
+
+    @Override
+    public boolean has(Long key) {
+        return this.has(key.longValue());
+    }
+
+    @Override
+    public V get(Long key) {
+        return this.get(key.longValue());
+    }
+
+    @Override
+    public V delete(Long key) {
+        return this.delete(key.longValue());
+    }
+
+    @Override
+    public void remove(Long key) {
+        this.remove(key.longValue());
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : this.segments) {
+            long stamp = segment.writeLock();
+            try {
+                segment.table = new Table(this.initialCapacity);
+                segment.size = 0;
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+    }
+
+    @Override
+    public void set(Long key, V value, Instant expire) {
+        this.set(key.longValue(), value, expire);
+    }
+
+    @Override
+    public void set(Long key, V value, long timeout, TimeUnit unit) {
+        this.set(key.longValue(), value, timeout, unit);
+    }
+
+    @Override
+    public void set(Long key, V value, long alive) {
+        this.set(key.longValue(), value, alive);
+    }
+
+    @Override
+    public boolean has(Long key, Instant expire) {
+        return this.has(key.longValue(), expire);
+    }
+
+    @Override
+    public boolean has(Long key, long timeout, TimeUnit unit) {
+        return this.has(key.longValue(), timeout, unit);
+    }
+
+    @Override
+    public boolean has(Long key, long alive) {
+        return this.has(key.longValue(), alive);
+    }
+
+    @Override
+    public V get(Long key, Instant expire) {
+        return this.get(key.longValue(), expire);
+    }
+
+    @Override
+    public V get(Long key, long timeout, TimeUnit unit) {
+        return this.get(key.longValue(), timeout, unit);
+    }
+
+    @Override
+    public V get(Long key, long alive) {
+        return this.get(key.longValue(), alive);
+    }
+
+    @Override
+    public long expire(Long key) {
+        return this.expire(key.longValue());
+    }
+
+    @Override
+    public long last(Long key) {
+        return this.last(key.longValue());
+    }
+
+}
@@ -1,9 +1,19 @@
 package dive.cache.mime;
 
+import dive.cache.common.Absent;
+import dive.cache.common.Refresher;
+import dive.cache.common.RemovalCause;
+import dive.cache.common.RemovalListener;
+import dive.cache.common.StatsCounter;
 import dive.cache.common.TimeCache;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.time.Instant;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
@@ -22,14 +32,69 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
     private final CacheUtil cacheUtil;
 
     /**
-     * 存储键值数据
+     * 存储键值数据和过期时间，每个键一个节点
      */
-    private final ConcurrentHashMap<K, V> values = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, Node<K, V>> nodes = new ConcurrentHashMap<>();
 
     /**
-     * 存储过期时间
+     * 容量受限时的淘汰策略, 为 null 表示不限制
      */
-    private final ConcurrentHashMap<K, Long> expires = new ConcurrentHashMap<>();
+    private Eviction<K, V> eviction;
+
+    /**
+     * 按过期时间组织节点, 回收时只处理到期的节点
+     */
+    private final TimerWheel<K, V> wheel = new TimerWheel<>(CacheUtil.now());
+
+    /**
+     * 已从时间轮取出, 但因回收的时间预算用完尚未处理的节点
+     */
+    private final ConcurrentLinkedQueue<Node<K, V>> overdue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 抽样回收时使用
+     */
+    private final Sampler<K, V> sampler = new Sampler<>(this.nodes);
+
+    /**
+     * 回收方式
+     */
+    private volatile ReclaimStrategy strategy = ReclaimStrategy.SWEEP;
+
+    /**
+     * 判断过期的时钟
+     */
+    private Ticker ticker = Ticker.system();
+
+    /**
+     * 提前刷新策略, 为 null 时不刷新
+     */
+    private volatile Refresher refresher;
+
+    /**
+     * 统计记录者
+     */
+    private volatile StatsCounter stats = StatsCounter.concurrent();
+
+    /**
+     * 移除监听器, 已包装为异步, 为 null 时不通知
+     */
+    private volatile RemovalListener<K, V> listener;
+
+    /**
+     * 软引用或弱引用模式下, 值被回收后引用进入该队列, 为 null 表示强引用
+     */
+    private ReferenceQueue<V> queue;
+
+    /**
+     * 引用模式下是否使用弱引用, 否则为软引用
+     */
+    private boolean weak;
+
+    /**
+     * 负缓存的存活毫秒数, 为 0 时不缓存加载结果为 null 的键
+     */
+    private volatile long negative;
 
     /**
      * 设置或更新一个键值对
@@ -37,44 +102,327 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
      * @param value 值
      * @param expire 过期时间
      */
-    private void store(K key, V value, Long expire) {
-        this.values.put(key, value);
-        this.expires.put(key, expire);
+    private void store(K key, V value, long expire) {
+        this.store(null == this.queue
+                ? new Node<>(key, value, expire)
+                : new ReferenceNode<>(key, value, expire, this.queue, this.weak));
+    }
+
+    /**
+     * 放入节点, 替换该键原有的节点
+     * @param node 节点
+     */
+    private void store(Node<K, V> node) {
+        Node<K, V> old = this.nodes.put(node.key, node);
+        long now = this.ticker.read();
+        if (null != old) {
+            this.wheel.deschedule(old);
+            this.notify(old, old.alive(now) ? RemovalCause.REPLACED : RemovalCause.EXPIRED);
+        }
+        if (null != this.eviction) {
+            this.eviction.write(old, node);
+        }
+        // 过期的节点由分片的回收移除, 写入时不推进时间轮
+        this.schedule(node);
+    }
+
+    /**
+     * 放入时间轮
+     * @param node 节点
+     */
+    private void schedule(Node<K, V> node) {
+        if (0 <= node.expire) {
+            this.wheel.schedule(node);
+            if (this.nodes.get(node.key) != node) {
+                // 放入时间轮前已被移除
+                this.wheel.deschedule(node);
+            }
+        }
+    }
+
+    /**
+     * 获取存活的节点, 负缓存的哨兵视为不存在
+     * @param key 键
+     * @return 存活返回节点, 否则返回 null
+     */
+    private Node<K, V> node(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        if (null == node || !node.alive(this.ticker.read()) || node.absent()) {
+            return null;
+        }
+        if (null != this.queue && null == node.value()) {
+            // 值已被垃圾回收
+            this.collected(node);
+            return null;
+        }
+        if (null != this.eviction) {
+            this.eviction.read(node);
+        }
+        return node;
+    }
+
+    /**
+     * 读取节点的值, 并记录命中或未命中
+     * @param node 存活的节点
+     * @return 值
+     */
+    private V value(Node<K, V> node) {
+        V value;
+        if (null == node || null == (value = node.value())) {
+            this.stats.recordMisses(1);
+            return null;
+        }
+        this.stats.recordHits(1);
+        return value;
+    }
+
+    /**
+     * 若存活则更新过期时间
+     * @param key 键
+     * @param expire 新的过期时间
+     * @return 存活返回节点, 否则返回 null
+     */
+    private Node<K, V> touch(K key, long expire) {
+        Node<K, V> node = this.node(key);
+        if (null != node) {
+            long previous = node.expire;
+            node.expire = expire;
+            // 延长的节点到期时由时间轮重新放入, 提前的节点需立即调整
+            if (0 <= expire && (previous < 0 || expire < previous)) {
+                this.wheel.schedule(node);
+            }
+        }
+        return node;
     }
 
     /**
      * 移除一个键
      * @param key 键
+     * @return 被移除的节点
+     */
+    private Node<K, V> vanish(K key) {
+        Node<K, V> node = this.nodes.remove(key);
+        if (null != node) {
+            this.retire(node);
+            this.notify(node, node.alive(this.ticker.read()) ? RemovalCause.EXPLICIT : RemovalCause.EXPIRED);
+        }
+        return node;
+    }
+
+    /**
+     * 移除给定的节点, 若该键已被更新则不移除
+     * @param node 节点
+     * @param cause 原因
+     * @return 是否移除
+     */
+    private boolean vanish(Node<K, V> node, RemovalCause cause) {
+        if (this.nodes.remove(node.key, node)) {
+            this.retire(node);
+            this.notify(node, cause);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 通知移除监听器
+     * @param node 被移除的节点
+     * @param cause 原因
+     */
+    private void notify(Node<K, V> node, RemovalCause cause) {
+        RemovalListener<K, V> l = this.listener;
+        if (null != l && !node.absent()) {
+            l.onRemoval(node.key, node.value(), cause);
+        }
+    }
+
+    /**
+     * 移除过期的节点
+     * @param node 节点
+     * @return 是否移除
+     */
+    private boolean expired(Node<K, V> node) {
+        if (this.vanish(node, RemovalCause.EXPIRED)) {
+            if (!node.absent()) {
+                this.stats.recordExpiration();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 节点已从存储中移除, 清理淘汰策略和时间轮
+     * @param node 节点
+     */
+    private void retire(Node<K, V> node) {
+        if (null != this.eviction) {
+            this.eviction.remove(node);
+        }
+        this.wheel.deschedule(node);
+    }
+
+    /**
+     * 移除值已被垃圾回收的节点, 记为淘汰
+     * @param node 节点
+     * @return 是否移除
      */
-    private void vanish(K key) {
-        this.expires.remove(key);
-        this.values.remove(key);
+    private boolean collected(Node<K, V> node) {
+        if (this.vanish(node, RemovalCause.EVICTED)) {
+            this.stats.recordEviction();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 移除引用队列中值已被垃圾回收的节点
+     * @return 移除的节点个数
+     */
+    @SuppressWarnings("unchecked")
+    private int drain() {
+        if (null == this.queue) {
+            return 0;
+        }
+        int removed = 0;
+        Reference<? extends V> reference;
+        while (null != (reference = this.queue.poll())) {
+            if (this.collected(((ReferenceNode.ValueReference<K, V>) reference).node())) {
+                removed++;
+            }
+        }
+        return removed;
     }
 
     /**
      * 情况所有数据
      */
     private void empty() {
-        this.expires.clear();
-        this.values.clear();
+        if (null == this.eviction && null == this.listener) {
+            this.nodes.clear();
+            this.wheel.clear();
+            this.overdue.clear();
+            return;
+        }
+        this.nodes.values().forEach(n -> this.vanish(n, RemovalCause.CLEARED));
+        this.overdue.clear();
+    }
+
+    /**
+     * 清理时间轮中到期的节点, 时间预算用完时剩余的节点留到下次处理
+     * @param now 当前时刻
+     * @param deadline 截止时刻, 纳秒
+     * @return 移除的节点个数
+     */
+    private int expire(long now, long deadline) {
+        this.overdue.addAll(this.wheel.advance(now));
+        int removed = 0;
+        int count = 0;
+        Node<K, V> node;
+        while (null != (node = this.overdue.poll())) {
+            if ((++count & CacheUtil.CHECK_MASK) == 0 && deadline <= System.nanoTime()) {
+                this.overdue.add(node);
+                break;
+            }
+            if (node.alive(now)) {
+                // 取出后过期时间又被更新
+                if (this.nodes.get(node.key) == node) {
+                    this.wheel.schedule(node);
+                }
+            } else if (this.expired(node)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int reclaim() {
+        return this.reclaim(Long.MAX_VALUE);
+    }
+
+    @Override
+    public int reclaim(long deadline) {
+        // 若程序结束，则不用清理
+        if (this.cacheUtil.isAlive()) {
+            return this.drain() + this.expire(this.ticker.read(), deadline);
+        }
+        return 0;
     }
 
     @Override
-    public void reclaim() {
-        this.expires.keySet().parallelStream()
-                // 若程序结束，则不用清理
-                .filter(k -> cacheUtil.isAlive())
-                .forEach(this::reclaim);
+    public ReclaimStrategy strategy() {
+        return this.strategy;
+    }
+
+    @Override
+    public long sample(int count) {
+        this.drain();
+        return this.sampler.sample(count, this.ticker.read(), this::expired);
     }
 
     /**
-     * 尝试清理某个键
-     * @param key 键
+     * 设置时钟, 应在存入数据之前设置
+     * @param ticker 时钟
+     * @return 本实例
      */
-    private void reclaim(K key) {
-        if (!CacheUtil.alive(this.expires.get(key))) {
-            this.vanish(key);
-        }
+    public MemoryCache<K, V> ticker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker");
+        this.ticker = ticker;
+        // 按新时钟重建时间轮
+        this.wheel.reset(ticker.read());
+        this.nodes.values().forEach(this::schedule);
+        return this;
+    }
+
+    /**
+     * 设置回收方式
+     * @param strategy 回收方式
+     * @return 本实例
+     */
+    public MemoryCache<K, V> strategy(ReclaimStrategy strategy) {
+        Objects.requireNonNull(strategy, "strategy");
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * 设置提前刷新策略, 带加载函数的读取命中即将过期的键时在后台重新加载
+     * @param refresher 刷新策略, 为 null 时不刷新
+     * @return 本实例
+     */
+    public MemoryCache<K, V> refresh(Refresher refresher) {
+        this.refresher = refresher;
+        return this;
+    }
+
+    @Override
+    public Refresher refresher() {
+        return this.refresher;
+    }
+
+    /**
+     * 开启或关闭统计, 关闭后读写路径上不再有任何统计开销
+     * @param enabled 是否记录
+     * @return 本实例
+     */
+    public MemoryCache<K, V> recordStats(boolean enabled) {
+        return this.stats(enabled ? StatsCounter.concurrent() : StatsCounter.disabled());
+    }
+
+    /**
+     * 使用给定的统计记录者, 分片时各分片共享同一个
+     * @param stats 统计记录者
+     * @return 本实例
+     */
+    MemoryCache<K, V> stats(StatsCounter stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    @Override
+    public StatsCounter statsCounter() {
+        return this.stats;
     }
 
     /**
@@ -82,9 +430,15 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
      * @param action 遍历函数
      */
     public void forEach(BiConsumer<K, V> action) {
-        this.expires.keySet().parallelStream()
-                .filter(this::has)
-                .forEach(k -> action.accept(k, get(k)));
+        long now = this.ticker.read();
+        this.nodes.values().parallelStream()
+                .filter(n -> n.alive(now) && !n.absent())
+                .forEach(n -> {
+                    V value = n.value();
+                    if (null != value) {
+                        action.accept(n.key, value);
+                    }
+                });
     }
 
     /**
@@ -92,21 +446,169 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
      * @return 流
      */
     public Stream<Pair<K, V>> stream() {
-        return this.expires.keySet().parallelStream()
-                .filter(this::has)
-                .map(k -> new Pair<>(k, get(k)));
+        long now = this.ticker.read();
+        return this.nodes.values().parallelStream()
+                .filter(n -> n.alive(now) && !n.absent())
+                .map(n -> new Pair<>(n.key, n.value()))
+                .filter(p -> null != p.getValue());
     }
 
     /**
-     * 有效的缓存个数
+     * 缓存个数, 直接取自映射表维护的计数, 常数时间
+     * 已过期但尚未回收的键也计算在内, 需要精确值时使用 {@link #exactSize()}
      * @return 缓存个数
      */
     public int size() {
-        return (int) this.expires.values().parallelStream()
-                .filter(CacheUtil::alive)
+        return (int) Math.min(Integer.MAX_VALUE, this.nodes.mappingCount());
+    }
+
+    /**
+     * 有效的缓存个数, 逐个判断是否过期, 耗时与缓存个数成正比, 负缓存的键不计算在内
+     * @return 缓存个数
+     */
+    public int exactSize() {
+        long now = this.ticker.read();
+        return (int) this.nodes.values().parallelStream()
+                .filter(n -> n.alive(now) && !n.absent())
                 .count();
     }
 
+    @Override
+    public long entries() {
+        return this.nodes.mappingCount();
+    }
+
+    /**
+     * 设置移除监听器, 在共享的单线程守护线程池中按移除顺序异步通知
+     * @param listener 监听器, 为 null 时不再通知
+     * @return 本实例
+     */
+    public MemoryCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener) {
+        return this.listener(null == listener ? null : RemovalListener.async(listener));
+    }
+
+    /**
+     * 设置移除监听器, 在给定的线程池中异步通知
+     * @param listener 监听器, 为 null 时不再通知
+     * @param executor 执行通知的线程池
+     * @return 本实例
+     */
+    public MemoryCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        return this.listener(null == listener ? null : RemovalListener.async(listener, executor));
+    }
+
+    /**
+     * 使用已包装为异步的监听器, 分片时各分片共享同一个
+     * @param listener 监听器, 可为 null
+     * @return 本实例
+     */
+    MemoryCache<K, V> listener(RemovalListener<K, V> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * 以软引用持有值, 内存不足时值可被垃圾回收, 需在存入数据之前设置
+     * 值被回收的键视为不存在, 在回收任务中移除并记为淘汰
+     * @return 本实例
+     */
+    public MemoryCache<K, V> softValues() {
+        return this.reference(false);
+    }
+
+    /**
+     * 以弱引用持有值, 值没有其他强引用时即可被垃圾回收, 需在存入数据之前设置
+     * 值被回收的键视为不存在, 在回收任务中移除并记为淘汰
+     * @return 本实例
+     */
+    public MemoryCache<K, V> weakValues() {
+        return this.reference(true);
+    }
+
+    private MemoryCache<K, V> reference(boolean weak) {
+        if (null != this.queue) {
+            throw new IllegalStateException("value strength was already set");
+        }
+        if (!this.nodes.isEmpty()) {
+            throw new IllegalStateException("value strength must be set before use");
+        }
+        this.weak = weak;
+        this.queue = new ReferenceQueue<>();
+        return this;
+    }
+
+    /**
+     * 限制最大缓存个数, 超出时按 W-TinyLFU 策略淘汰, 需在存入数据之前设置
+     * @param maximum 最大个数
+     * @return 本实例
+     */
+    public MemoryCache<K, V> maximumSize(long maximum) {
+        return this.bound(maximum, null);
+    }
+
+    /**
+     * 限制最大总权重, 超出时按 W-TinyLFU 策略淘汰, 需在存入数据之前设置
+     * @param maximum 最大总权重
+     * @param weigher 权重计算
+     * @return 本实例
+     */
+    public MemoryCache<K, V> maximumWeight(long maximum, Weigher<? super K, ? super V> weigher) {
+        Objects.requireNonNull(weigher, "weigher");
+        return this.bound(maximum, weigher);
+    }
+
+    private MemoryCache<K, V> bound(long maximum, Weigher<? super K, ? super V> weigher) {
+        if (null != this.eviction) {
+            throw new IllegalStateException("maximum was already set");
+        }
+        if (!this.nodes.isEmpty()) {
+            throw new IllegalStateException("maximum must be set before use");
+        }
+        // 哨兵不是值的类型, 不交给权重计算, 按 1 计
+        Weigher<? super K, ? super V> w = null == weigher ? null
+                : (k, v) -> Absent.INSTANCE == v ? 1 : weigher.weigh(k, v);
+        this.eviction = new Eviction<>(maximum, w, n -> {
+            if (this.nodes.remove(n.key, n)) {
+                if (!n.absent()) {
+                    this.stats.recordEviction();
+                }
+                this.notify(n, RemovalCause.EVICTED);
+            }
+            this.wheel.deschedule(n);
+        });
+        return this;
+    }
+
+    /**
+     * 开启负缓存, 加载函数返回 null 的键以哨兵存入, 存活期内带加载函数的读取直接返回 null, 不再调用加载函数
+     * 哨兵对调用方不可见: 读取视为未命中, 不出现在遍历中, 移除时不通知监听器
+     * @param alive 负缓存的存活毫秒数, 通常远短于正常值的存活时间, 为 0 时关闭
+     * @return 本实例
+     */
+    public MemoryCache<K, V> negative(long alive) {
+        if (alive < 0) {
+            throw new IllegalArgumentException("alive must not be negative");
+        }
+        this.negative = alive;
+        return this;
+    }
+
+    @Override
+    public boolean isAbsent(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        return null != node && node.alive(this.ticker.read()) && node.absent();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void markAbsent(K key) {
+        long alive = this.negative;
+        if (0 < alive) {
+            // 哨兵始终被强引用, 不需要软引用或弱引用节点
+            this.store(new Node<>(key, (V) Absent.INSTANCE, this.ticker.read() + alive));
+        }
+    }
+
     // 上面是基础方法 ------------------------------------------------
 
     /**
@@ -115,8 +617,17 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
      * @param period 清理任务周期，毫秒
      */
     public MemoryCache(long delay, long period) {
-        this.cacheUtil = CacheUtil.getInstance(delay, period);
-        this.cacheUtil.add(this);
+        this(ReclaimSchedule.fixed(delay, period));
+    }
+
+    /**
+     * 构造器
+     * @param schedule 整体回收的计划
+     */
+    public MemoryCache(ReclaimSchedule schedule) {
+        Objects.requireNonNull(schedule, "schedule");
+        this.cacheUtil = CacheUtil.getInstance();
+        this.cacheUtil.add(this, schedule);
     }
 
     /**
@@ -127,6 +638,14 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
         this.cacheUtil.add(this);
     }
 
+    /**
+     * 构造器, 作为分片使用, 不单独注册, 由所属的缓存统一回收
+     * @param cacheUtil 定时器单例
+     */
+    MemoryCache(CacheUtil cacheUtil) {
+        this.cacheUtil = cacheUtil;
+    }
+
 
     @Override
     public void set(K key, V value) {
@@ -136,20 +655,25 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
 
     @Override
     public boolean has(K key) {
-        return CacheUtil.alive(this.expires.get(key));
+        return null != this.node(key);
     }
 
     @Override
     public V get(K key) {
-        return this.has(key) ? this.values.get(key) : null;
+        return this.value(this.node(key));
+    }
+
+    @Override
+    public V peek(K key) {
+        Node<K, V> node = this.node(key);
+        return null == node ? null : node.value();
     }
 
 
     @Override
     public V delete(K key) {
-        V value = this.get(key);
-        this.vanish(key);
-        return value;
+        Node<K, V> node = this.vanish(key);
+        return null != node && node.alive(this.ticker.read()) && !node.absent() ? node.value() : null;
     }
 
     @Override
@@ -170,81 +694,57 @@ public class MemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
 
     @Override
     public void set(K key, V value, long timeout, TimeUnit unit) {
-        this.store(key, value, CacheUtil.expire(timeout, unit));
+        this.store(key, value, CacheUtil.expire(this.ticker.read(), timeout, unit));
     }
 
     @Override
     public void set(K key, V value, long alive) {
-        this.store(key, value, alive < 0 ? -1L : CacheUtil.now() + alive);
+        this.store(key, value, alive < 0 ? -1L : this.ticker.read() + alive);
     }
 
 
     @Override
     public boolean has(K key, Instant expire) {
-        boolean exist = this.has(key);
-        if (exist) {
-            this.expires.put(key, expire.toEpochMilli());
-        }
-        return exist;
+        return null != this.touch(key, expire.toEpochMilli());
     }
 
     @Override
     public boolean has(K key, long timeout, TimeUnit unit) {
-        boolean exist = this.has(key);
-        if (exist) {
-            this.expires.put(key, CacheUtil.expire(timeout, unit));
-        }
-        return exist;
+        return null != this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
     }
 
     @Override
     public boolean has(K key, long alive) {
-        boolean exist = this.has(key);
-        if (exist) {
-            this.expires.put(key, alive < 0 ? -1L : CacheUtil.now() + alive);
-        }
-        return exist;
+        return null != this.touch(key, alive < 0 ? -1L : this.ticker.read() + alive);
     }
 
 
     @Override
     public V get(K key, Instant expire) {
-        V value = this.get(key);
-        if (null != value) {
-            this.expires.put(key, expire.toEpochMilli());
-        }
-        return value;
+        return this.value(this.touch(key, expire.toEpochMilli()));
     }
 
     @Override
     public V get(K key, long timeout, TimeUnit unit) {
-        V value = this.get(key);
-        if (null != value) {
-            this.expires.put(key, CacheUtil.expire(timeout, unit));
-        }
-        return value;
+        return this.value(this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit)));
     }
 
     @Override
     public V get(K key, long alive) {
-        V value = this.get(key);
-        if (null != value) {
-            this.expires.put(key, alive < 0 ? -1L : CacheUtil.now() + alive);
-        }
-        return value;
+        return this.value(this.touch(key, alive < 0 ? -1L : this.ticker.read() + alive));
     }
 
 
     @Override
     public long expire(K key) {
-        Long expire = this.expires.get(key);
-        return null != expire ? expire : 0;
+        Node<K, V> node = this.nodes.get(key);
+        return null != node && !node.absent() ? node.expire : 0;
     }
 
     @Override
     public long last(K key) {
-        Long expire = this.expires.get(key);
-        return null != expire ? expire - CacheUtil.now() : 0;
+        Node<K, V> node = this.nodes.get(key);
+        return null != node && !node.absent() ? node.expire - this.ticker.read() : 0;
     }
 
 }
@@ -0,0 +1,25 @@
+package dive.cache.mime;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 指标注册的桥接, 由使用方对接到具体的指标库, 本模块不依赖任何指标库
+ * 例(micrometer):
+ *  CacheMetrics.bind((name, tags, value) -> Gauge.builder(name, value)
+ *      .tags(tags.entrySet().stream().map(e -> Tag.of(e.getKey(), e.getValue())).collect(Collectors.toList()))
+ *      .register(meterRegistry));
+ * @author dawn
+ */
+@FunctionalInterface
+public interface MetricsRegistry {
+
+    /**
+     * 注册一个读取时计算的指标
+     * @param name 指标名称, 如 cache.hit.ratio
+     * @param tags 标签, 缓存的指标带有 cache 标签
+     * @param value 读取指标的函数
+     */
+    void gauge(String name, Map<String, String> tags, Supplier<Number> value);
+
+}
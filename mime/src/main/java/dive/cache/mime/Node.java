@@ -0,0 +1,74 @@
+package dive.cache.mime;
+
+import dive.cache.common.Absent;
+
+/**
+ * 缓存节点，同时持有键、值和过期时间，一个键只对应一个节点
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class Node<K, V> {
+
+    /**
+     * 键
+     */
+    final K key;
+
+    /**
+     * 值
+     */
+    final V value;
+
+    /**
+     * 过期时间戳，毫秒，负数表示永不过期
+     */
+    volatile long expire;
+
+    /**
+     * 容量受限时, 所在的访问队列, 以及前后节点和权重, 由淘汰策略加锁维护
+     */
+    byte queue;
+    Node<K, V> previousInAccess;
+    Node<K, V> nextInAccess;
+    int weight;
+
+    /**
+     * 在时间轮中的前后节点, 由时间轮加锁维护
+     */
+    Node<K, V> previousInTime;
+    Node<K, V> nextInTime;
+
+    Node(K key, V value, long expire) {
+        this.key = key;
+        this.value = value;
+        this.expire = expire;
+    }
+
+    /**
+     * 值, 软引用或弱引用节点的值可能已被回收
+     * @return 值
+     */
+    V value() {
+        return this.value;
+    }
+
+    /**
+     * 是否为负缓存的哨兵, 即加载函数确认不存在的键
+     * @return 是否为哨兵
+     */
+    boolean absent() {
+        return Absent.INSTANCE == this.value();
+    }
+
+    /**
+     * 在给定时刻是否存活
+     * @param now 当前时间戳
+     * @return 是否存活
+     */
+    boolean alive(long now) {
+        long e = this.expire;
+        return e < 0 || now < e;
+    }
+
+}
@@ -0,0 +1,835 @@
+package dive.cache.mime;
+
+import dive.cache.common.TimeCache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 一个用于缓存键值对数据的对象, 可以对键值对设置存活时间, 键值按 {@link Codecs#defaults()} 编码后存放在堆外内存
+ * 堆上只保留索引: 按键序列化结果的64位哈希开放寻址, 值为记录的地址, 哈希相同的记录在堆外用链表串联
+ * 记录格式: 下一条记录地址(8) 过期时间(8) 键长度(4) 值长度(4) 键 值
+ * 按键的哈希分段, 每段有独立的锁和slab分配器; 内存不足时先清理过期记录, 再淘汰同样大小的记录,
+ * 仍然无法分配时不保存该键值对
+ * 每页只切分一种大小的块, 每段的页数决定能同时使用多少种大小, 容量应远大于段数乘以页大小
+ * @author dawn
+ * @param <K> 键的类型，需实现序列化接口, 相等的键序列化结果必须相同
+ * @param <V> 值的类型，需实现序列化接口
+ */
+public class OffHeapMemoryCache<K extends Serializable, V extends Serializable>
+        implements TimeCache<K, V>, Reclaimable {
+
+    /**
+     * 段数
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 默认每页1MB
+     */
+    private static final int SLAB_SIZE = 1 << 20;
+
+    /**
+     * 记录头的字节数
+     */
+    private static final int HEADER = 24;
+
+    private static final int NEXT = 0;
+    private static final int EXPIRE = 8;
+    private static final int KEY_LENGTH = 16;
+    private static final int VALUE_LENGTH = 20;
+
+    /**
+     * 索引的初始容量
+     */
+    private static final int INDEX_CAPACITY = 64;
+
+    /**
+     * 定时器单例
+     */
+    private final CacheUtil cacheUtil;
+
+    /**
+     * 所有段
+     */
+    private final Segment[] segments;
+
+    /**
+     * 判断过期的时钟
+     */
+    private Ticker ticker = Ticker.system();
+
+    /**
+     * 整体回收从该段开始, 时间预算用完时下次从未处理完的段继续
+     */
+    private int reclaimCursor;
+
+    /**
+     * 一段, 包括索引和堆外内存
+     */
+    private static final class Segment extends StampedLock {
+
+        private static final long serialVersionUID = 1L;
+
+        final SlabAllocator allocator;
+
+        /**
+         * 索引, 同一下标对应键的哈希和第一条记录的地址, 地址为 0 表示空位
+         */
+        long[] hashes = new long[INDEX_CAPACITY];
+        long[] addresses = new long[INDEX_CAPACITY];
+        int size;
+
+        /**
+         * 记录条数, 同一位置链表上的记录都计算在内, 已过期尚未回收的也计算在内
+         */
+        int records;
+
+        /**
+         * 内存不足淘汰记录时, 从索引的该位置继续查找
+         */
+        int hand;
+
+        /**
+         * 整体回收因时间预算中断时, 下次从索引的该位置继续, 处理完时为 0
+         */
+        int sweep;
+
+        Segment(int slabSize, long capacity) {
+            this.allocator = new SlabAllocator(slabSize, capacity);
+        }
+
+    }
+
+    // 序列化 ------------------------------------------------
+
+    private static byte[] serialize(Serializable o) {
+        try {
+            return Codecs.defaults().encode(o);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deserialize(byte[] bytes) {
+        try {
+            return (T) Codecs.defaults().decode(bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 键的64位哈希, FNV-1a 后再混淆
+     * @param bytes 序列化的键
+     * @return 哈希
+     */
+    private static long hash(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Segment segment(long hash) {
+        return this.segments[(int) (hash >>> 60)];
+    }
+
+    // 索引 ------------------------------------------------
+
+    /**
+     * 查找哈希在索引中的位置
+     * @param segment 段
+     * @param hash 哈希
+     * @return 下标, 不存在返回 -1
+     */
+    private static int slot(Segment segment, long hash) {
+        int mask = segment.addresses.length - 1;
+        int i = (int) hash & mask;
+        while (0 != segment.addresses[i]) {
+            if (hash == segment.hashes[i]) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 设置哈希对应的第一条记录
+     * @param segment 段
+     * @param hash 哈希
+     * @param address 地址, 为 0 则删除该哈希
+     */
+    private static void index(Segment segment, long hash, long address) {
+        int i = slot(segment, hash);
+        if (0 <= i) {
+            if (0 != address) {
+                segment.addresses[i] = address;
+            } else {
+                unindex(segment, i);
+            }
+            return;
+        }
+        if (0 == address) {
+            return;
+        }
+        if ((segment.size + 1) << 1 > segment.addresses.length) {
+            long[] hashes = segment.hashes;
+            long[] addresses = segment.addresses;
+            segment.hashes = new long[hashes.length << 1];
+            segment.addresses = new long[addresses.length << 1];
+            segment.size = 0;
+            segment.hand = 0;
+            for (int j = 0; j < addresses.length; j++) {
+                if (0 != addresses[j]) {
+                    insert(segment, hashes[j], addresses[j]);
+                }
+            }
+        }
+        insert(segment, hash, address);
+    }
+
+    private static void insert(Segment segment, long hash, long address) {
+        int mask = segment.addresses.length - 1;
+        int i = (int) hash & mask;
+        while (0 != segment.addresses[i]) {
+            i = (i + 1) & mask;
+        }
+        segment.hashes[i] = hash;
+        segment.addresses[i] = address;
+        segment.size++;
+    }
+
+    /**
+     * 删除索引位置, 后续同簇的位置前移填补空位
+     * @param segment 段
+     * @param i 下标
+     */
+    private static void unindex(Segment segment, int i) {
+        int mask = segment.addresses.length - 1;
+        segment.addresses[i] = 0;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (0 == segment.addresses[j]) {
+                break;
+            }
+            int k = (int) segment.hashes[j] & mask;
+            boolean stay = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!stay) {
+                segment.hashes[i] = segment.hashes[j];
+                segment.addresses[i] = segment.addresses[j];
+                segment.addresses[j] = 0;
+                i = j;
+            }
+        }
+        segment.size--;
+    }
+
+    // 记录 ------------------------------------------------
+
+    private static long next(Segment segment, long address) {
+        return segment.allocator.buffer(address).getLong(SlabAllocator.offset(address) + NEXT);
+    }
+
+    private static long expireAt(Segment segment, long address) {
+        return segment.allocator.buffer(address).getLong(SlabAllocator.offset(address) + EXPIRE);
+    }
+
+    private static int length(Segment segment, long address) {
+        ByteBuffer buffer = segment.allocator.buffer(address);
+        int offset = SlabAllocator.offset(address);
+        return HEADER + buffer.getInt(offset + KEY_LENGTH) + buffer.getInt(offset + VALUE_LENGTH);
+    }
+
+    /**
+     * 记录的键是否与给定的键相同
+     * @param segment 段
+     * @param address 地址
+     * @param key 序列化的键
+     * @return 是否相同
+     */
+    private static boolean matches(Segment segment, long address, byte[] key) {
+        ByteBuffer buffer = segment.allocator.buffer(address);
+        int offset = SlabAllocator.offset(address);
+        if (buffer.getInt(offset + KEY_LENGTH) != key.length) {
+            return false;
+        }
+        offset += HEADER;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读出记录的值
+     * @param segment 段
+     * @param address 地址
+     * @return 序列化的值
+     */
+    private static byte[] value(Segment segment, long address) {
+        ByteBuffer buffer = segment.allocator.buffer(address).duplicate();
+        int offset = SlabAllocator.offset(address);
+        byte[] value = new byte[buffer.getInt(offset + VALUE_LENGTH)];
+        buffer.position(offset + HEADER + buffer.getInt(offset + KEY_LENGTH));
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * 查找键对应的记录
+     * @param segment 段
+     * @param hash 哈希
+     * @param key 序列化的键
+     * @return 地址, 不存在返回 0
+     */
+    private static long find(Segment segment, long hash, byte[] key) {
+        int i = slot(segment, hash);
+        long address = 0 <= i ? segment.addresses[i] : 0;
+        while (0 != address && !matches(segment, address, key)) {
+            address = next(segment, address);
+        }
+        return address;
+    }
+
+    /**
+     * 从链表中摘除记录并释放内存, 调用方持有写锁
+     * @param segment 段
+     * @param hash 哈希
+     * @param address 地址
+     */
+    private static void erase(Segment segment, long hash, long address) {
+        int i = slot(segment, hash);
+        long head = segment.addresses[i];
+        long next = next(segment, address);
+        if (head == address) {
+            index(segment, hash, next);
+        } else {
+            long previous = head;
+            long current = next(segment, previous);
+            while (current != address) {
+                previous = current;
+                current = next(segment, current);
+            }
+            segment.allocator.buffer(previous).putLong(SlabAllocator.offset(previous) + NEXT, next);
+        }
+        segment.allocator.free(address, length(segment, address));
+        segment.records--;
+    }
+
+    /**
+     * 写入记录并放在链表头, 调用方持有写锁
+     * @param segment 段
+     * @param hash 哈希
+     * @param key 序列化的键
+     * @param value 序列化的值
+     * @param expire 过期时间
+     * @return 是否写入, 内存不足返回 false
+     */
+    private boolean write(Segment segment, long hash, byte[] key, byte[] value, long expire) {
+        int length = HEADER + key.length + value.length;
+        int level = segment.allocator.level(length);
+        if (level < 0) {
+            return false;
+        }
+        long address = segment.allocator.allocate(length);
+        if (0 == address) {
+            // 只淘汰同样大小的记录, 过期记录由定时回收分片清理, 写入时不扫描整段
+            while (0 == address && evict(segment, level)) {
+                address = segment.allocator.allocate(length);
+            }
+            if (0 == address) {
+                return false;
+            }
+        }
+        int i = slot(segment, hash);
+        long head = 0 <= i ? segment.addresses[i] : 0;
+        ByteBuffer buffer = segment.allocator.buffer(address).duplicate();
+        int offset = SlabAllocator.offset(address);
+        buffer.putLong(offset + NEXT, head);
+        buffer.putLong(offset + EXPIRE, expire);
+        buffer.putInt(offset + KEY_LENGTH, key.length);
+        buffer.putInt(offset + VALUE_LENGTH, value.length);
+        buffer.position(offset + HEADER);
+        buffer.put(key);
+        buffer.put(value);
+        index(segment, hash, address);
+        segment.records++;
+        return true;
+    }
+
+    /**
+     * 从上次的位置继续, 淘汰一条同样大小的记录
+     * @param segment 段
+     * @param level 块级别
+     * @return 是否淘汰
+     */
+    private static boolean evict(Segment segment, int level) {
+        int length = segment.addresses.length;
+        for (int n = 0; n < length; n++) {
+            int i = (segment.hand + n) & (length - 1);
+            long address = segment.addresses[i];
+            while (0 != address) {
+                if (segment.allocator.level(length(segment, address)) == level) {
+                    segment.hand = (i + 1) & (length - 1);
+                    erase(segment, segment.hashes[i], address);
+                    return true;
+                }
+                address = next(segment, address);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从索引的给定位置起清理一段中过期的记录, 调用方持有写锁
+     * 每处理若干个位置检查一次时间预算, 用完时把中断的位置记在段的游标上
+     * @param segment 段
+     * @param from 索引的起始位置
+     * @param deadline 截止时刻, 纳秒
+     * @return 移除的记录数
+     */
+    private int reclaim(Segment segment, int from, long deadline) {
+        long now = this.ticker.read();
+        int removed = 0;
+        int count = 0;
+        int i = from;
+        while (i < segment.addresses.length) {
+            if ((++count & CacheUtil.CHECK_MASK) == 0 && deadline <= System.nanoTime()) {
+                segment.sweep = i;
+                return removed;
+            }
+            long hash = segment.hashes[i];
+            long address = segment.addresses[i];
+            boolean erased = false;
+            while (0 != address) {
+                long next = next(segment, address);
+                if (!alive(expireAt(segment, address), now)) {
+                    erase(segment, hash, address);
+                    erased = true;
+                    removed++;
+                }
+                address = next;
+            }
+            // 删除索引位置时后续位置可能前移, 需要再次检查
+            if (!erased || segment.addresses[i] == 0 || segment.hashes[i] == hash) {
+                i++;
+            }
+        }
+        segment.sweep = 0;
+        return removed;
+    }
+
+    private static boolean alive(long expire, long now) {
+        return expire < 0 || now < expire;
+    }
+
+    // 操作 ------------------------------------------------
+
+    /**
+     * 设置或更新一个键值对, 内存不足时不保存
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时间
+     */
+    private void store(K key, V value, long expire) {
+        Objects.requireNonNull(value, "value");
+        byte[] k = serialize(key);
+        byte[] v = serialize(value);
+        long hash = hash(k);
+        Segment segment = this.segment(hash);
+        long stamp = segment.writeLock();
+        try {
+            long address = find(segment, hash, k);
+            if (0 != address) {
+                erase(segment, hash, address);
+            }
+            this.write(segment, hash, k, v, expire);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 获取存活的值
+     * @param key 键
+     * @return 存活返回值, 否则返回 null
+     */
+    private V value(K key) {
+        byte[] k = serialize(key);
+        long hash = hash(k);
+        Segment segment = this.segment(hash);
+        byte[] value = null;
+        long stamp = segment.readLock();
+        try {
+            long address = find(segment, hash, k);
+            if (0 != address && alive(expireAt(segment, address), this.ticker.read())) {
+                value = value(segment, address);
+            }
+        } finally {
+            segment.unlockRead(stamp);
+        }
+        return null != value ? deserialize(value) : null;
+    }
+
+    /**
+     * 若存活则更新过期时间
+     * @param key 键
+     * @param expire 新的过期时间
+     * @return 存活返回值, 否则返回 null
+     */
+    private V touch(K key, long expire) {
+        byte[] k = serialize(key);
+        long hash = hash(k);
+        Segment segment = this.segment(hash);
+        byte[] value = null;
+        long stamp = segment.writeLock();
+        try {
+            long address = find(segment, hash, k);
+            if (0 != address && alive(expireAt(segment, address), this.ticker.read())) {
+                segment.allocator.buffer(address).putLong(SlabAllocator.offset(address) + EXPIRE, expire);
+                value = value(segment, address);
+            }
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+        return null != value ? deserialize(value) : null;
+    }
+
+    /**
+     * 移除一个键
+     * @param key 键
+     * @param read 是否读出值
+     * @return 存活且需要读出时返回值, 否则返回 null
+     */
+    private V vanish(K key, boolean read) {
+        byte[] k = serialize(key);
+        long hash = hash(k);
+        Segment segment = this.segment(hash);
+        byte[] value = null;
+        long stamp = segment.writeLock();
+        try {
+            long address = find(segment, hash, k);
+            if (0 != address) {
+                if (read && alive(expireAt(segment, address), this.ticker.read())) {
+                    value = value(segment, address);
+                }
+                erase(segment, hash, address);
+            }
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+        return null != value ? deserialize(value) : null;
+    }
+
+    /**
+     * 获取过期时间
+     * @param key 键
+     * @return 过期时间, 不存在返回 0
+     */
+    private long expireOf(K key) {
+        byte[] k = serialize(key);
+        long hash = hash(k);
+        Segment segment = this.segment(hash);
+        long stamp = segment.readLock();
+        try {
+            long address = find(segment, hash, k);
+            return 0 != address ? expireAt(segment, address) : 0;
+        } finally {
+            segment.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int reclaim() {
+        return this.reclaim(Long.MAX_VALUE);
+    }
+
+    /**
+     * 从游标处逐段回收, 段内每处理若干个索引位置检查一次时间预算, 用完时下次从中断的段和位置继续
+     */
+    @Override
+    public synchronized int reclaim(long deadline) {
+        int removed = 0;
+        int rounds = SEGMENTS;
+        for (int n = 0; n < rounds; n++) {
+            // 若程序结束，则不用清理
+            if (!this.cacheUtil.isAlive()) {
+                break;
+            }
+            Segment segment = this.segments[this.reclaimCursor];
+            boolean finished;
+            long stamp = segment.writeLock();
+            try {
+                if (0 == n && 0 < segment.sweep) {
+                    // 从段的中间继续, 最后再回到该段处理前面的部分
+                    rounds++;
+                }
+                removed += this.reclaim(segment, segment.sweep, deadline);
+                finished = 0 == segment.sweep;
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+            if (!finished) {
+                return removed;
+            }
+            this.reclaimCursor = (this.reclaimCursor + 1) % SEGMENTS;
+            if (deadline <= System.nanoTime()) {
+                break;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 缓存个数, 直接取自每段维护的计数, 与段数成正比
+     * 已过期但尚未回收的键也计算在内, 需要精确值时使用 {@link #exactSize()}
+     * @return 缓存个数
+     */
+    public int size() {
+        long size = 0;
+        for (Segment segment : this.segments) {
+            long stamp = segment.tryOptimisticRead();
+            int n = segment.records;
+            if (!segment.validate(stamp)) {
+                stamp = segment.readLock();
+                try {
+                    n = segment.records;
+                } finally {
+                    segment.unlockRead(stamp);
+                }
+            }
+            size += n;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    /**
+     * 有效的缓存个数, 逐个判断是否过期, 耗时与缓存个数成正比
+     * @return 缓存个数
+     */
+    public int exactSize() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            long now = this.ticker.read();
+            long stamp = segment.readLock();
+            try {
+                for (long head : segment.addresses) {
+                    for (long address = head; 0 != address; address = next(segment, address)) {
+                        if (alive(expireAt(segment, address), now)) {
+                            size++;
+                        }
+                    }
+                }
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long entries() {
+        return this.size();
+    }
+
+    /**
+     * 已申请的堆外内存字节数
+     * @return 字节数
+     */
+    public long allocated() {
+        long allocated = 0;
+        for (Segment segment : this.segments) {
+            long stamp = segment.readLock();
+            try {
+                allocated += segment.allocator.allocated();
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+        return allocated;
+    }
+
+    /**
+     * 设置时钟, 应在存入数据之前设置
+     * @param ticker 时钟
+     * @return 本实例
+     */
+    public OffHeapMemoryCache<K, V> ticker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker");
+        this.ticker = ticker;
+        return this;
+    }
+
+    // 上面是基础方法 ------------------------------------------------
+
+    /**
+     * 构造器
+     * @param capacity 最多使用的堆外内存字节数, 平分给各段, 至少为每页字节数的段数倍
+     * @param slabSize 每页字节数, 单条记录不能超过该大小
+     * @param delay 清理任务延时时间，毫秒
+     * @param period 清理任务周期，毫秒
+     */
+    public OffHeapMemoryCache(long capacity, int slabSize, long delay, long period) {
+        this(capacity, slabSize, ReclaimSchedule.fixed(delay, period));
+    }
+
+    /**
+     * 构造器
+     * @param capacity 最多使用的堆外内存字节数, 平分给各段, 至少为每页字节数的段数倍
+     * @param slabSize 每页字节数, 单条记录不能超过该大小
+     */
+    public OffHeapMemoryCache(long capacity, int slabSize) {
+        this(capacity, slabSize, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 构造器, 每页1MB
+     * @param capacity 最多使用的堆外内存字节数, 至少16MB
+     */
+    public OffHeapMemoryCache(long capacity) {
+        this(capacity, SLAB_SIZE, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 构造器
+     * @param capacity 最多使用的堆外内存字节数, 平分给各段, 至少为每页字节数的段数倍
+     * @param slabSize 每页字节数, 单条记录不能超过该大小
+     * @param schedule 整体回收的计划
+     */
+    public OffHeapMemoryCache(long capacity, int slabSize, ReclaimSchedule schedule) {
+        Objects.requireNonNull(schedule, "schedule");
+        // 每段按页申请内存, 容量不足一页时实际占用会超出容量
+        if (capacity < (long) SEGMENTS * slabSize) {
+            throw new IllegalArgumentException("capacity must not be less than " + SEGMENTS + " slabs");
+        }
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            this.segments[i] = new Segment(slabSize, capacity / SEGMENTS);
+        }
+        this.cacheUtil = CacheUtil.getInstance();
+        this.cacheUtil.add(this, schedule);
+    }
+
+
+    @Override
+    public void set(K key, V value) {
+        this.store(key, value, -1L);
+    }
+
+    @Override
+    public boolean has(K key) {
+        return this.alive(this.expireOf(key));
+    }
+
+    private boolean alive(long expire) {
+        return 0 != expire && alive(expire, this.ticker.read());
+    }
+
+    @Override
+    public V get(K key) {
+        return this.value(key);
+    }
+
+    @Override
+    public V delete(K key) {
+        return this.vanish(key, true);
+    }
+
+    @Override
+    public void remove(K key) {
+        this.vanish(key, false);
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : this.segments) {
+            long stamp = segment.writeLock();
+            try {
+                segment.allocator.clear();
+                segment.hashes = new long[INDEX_CAPACITY];
+                segment.addresses = new long[INDEX_CAPACITY];
+                segment.size = 0;
+                segment.records = 0;
+                segment.hand = 0;
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+    }
+
+
+    @Override
+    public void set(K key, V value, Instant expire) {
+        this.store(key, value, expire.toEpochMilli());
+    }
+
+    @Override
+    public void set(K key, V value, long timeout, TimeUnit unit) {
+        this.store(key, value, CacheUtil.expire(this.ticker.read(), timeout, unit));
+    }
+
+    @Override
+    public void set(K key, V value, long alive) {
+        this.store(key, value, alive < 0 ? -1L : this.ticker.read() + alive);
+    }
+
+
+    @Override
+    public boolean has(K key, Instant expire) {
+        return null != this.touch(key, expire.toEpochMilli());
+    }
+
+    @Override
+    public boolean has(K key, long timeout, TimeUnit unit) {
+        return null != this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
+    }
+
+    @Override
+    public boolean has(K key, long alive) {
+        return null != this.touch(key, alive < 0 ? -1L : this.ticker.read() + alive);
+    }
+
+
+    @Override
+    public V get(K key, Instant expire) {
+        return this.touch(key, expire.toEpochMilli());
+    }
+
+    @Override
+    public V get(K key, long timeout, TimeUnit unit) {
+        return this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
+    }
+
+    @Override
+    public V get(K key, long alive) {
+        return this.touch(key, alive < 0 ? -1L : this.ticker.read() + alive);
+    }
+
+
+    @Override
+    public long expire(K key) {
+        return this.expireOf(key);
+    }
+
+    @Override
+    public long last(K key) {
+        long expire = this.expireOf(key);
+        return 0 != expire ? expire - this.ticker.read() : 0;
+    }
+
+}
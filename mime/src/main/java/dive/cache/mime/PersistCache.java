@@ -1,16 +1,33 @@
 package dive.cache.mime;
 
+import dive.cache.common.Absent;
+import dive.cache.common.AsyncTimeCache;
+import dive.cache.common.Refresher;
+import dive.cache.common.RemovalCause;
+import dive.cache.common.RemovalListener;
+import dive.cache.common.StatsCounter;
+
 import java.io.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -18,7 +35,9 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * 一个用于缓存键值对数据的对象, 可以对键值对设置存活时间, 利用java原生Map和序列化实现
+ * 一个用于缓存键值对数据的对象, 可以对键值对设置存活时间, 利用java原生Map和追加写的日志实现
+ * 每次写入在日志末尾追加一条记录, 内存中的节点即为键到记录位置的索引, 值在首次读取时从日志加载
+ * 键和值按 {@link Codec} 编码, 默认字符串、基本类型的包装类和字节数组直接编码, 其余类型使用 jdk 序列化
  * @author dawn
  * @param <K> 键的类型，需实现序列化接口，利用hashCode持久化，必须保证
  * @param <V> 值的类型，需实现序列化接口
@@ -26,37 +45,85 @@ import java.util.stream.Stream;
 public class PersistCache<K extends Serializable, V extends Serializable>
         implements dive.cache.common.PersistCache<K, V>, Reclaimable {
 
-    private static final char[] HEX_CODE_UPPER = "0123456789ABCDEF".toCharArray();
-
     /**
      * 定时器单例
      */
     private final CacheUtil cacheUtil;
 
     /**
-     * 序列化键的后缀名
+     * 旧版本按键分文件存储时, 序列化键的后缀名
      */
     private static final String SUFFIX_KEY = "_key";
 
     /**
-     * 序列化过期时间的后缀名
+     * 旧版本按键分文件存储时, 序列化过期时间的后缀名
      */
     private static final String SUFFIX_EXPIRE = "_expire";
 
+    /**
+     * 墓碑记录的值
+     */
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * 写回模式下一次写入的最多键数
+     */
+    private static final int FLUSH_BATCH = 1024;
+
     /**
      * 每个对象存储路径集合，不允许重复
      */
     private static final CopyOnWriteArraySet<String> PATHS = new CopyOnWriteArraySet<>();
 
     /**
-     * 存储键值数据
+     * 所有键值对和过期时间, 已写入日志的为 LogNode, 值尚未从日志读取时为 null
+     */
+    private final ConcurrentHashMap<K, Node<K, V>> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * 按过期时间组织节点, 回收时只处理到期的节点
+     */
+    private final TimerWheel<K, V> wheel = new TimerWheel<>(CacheUtil.now());
+
+    /**
+     * 已从时间轮取出, 但因回收的时间预算用完尚未处理的节点
+     */
+    private final ConcurrentLinkedQueue<Node<K, V>> overdue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 抽样回收时使用
+     */
+    private final Sampler<K, V> sampler = new Sampler<>(this.nodes);
+
+    /**
+     * 回收方式
+     */
+    private volatile ReclaimStrategy strategy = ReclaimStrategy.SWEEP;
+
+    /**
+     * 判断过期的时钟
+     */
+    private Ticker ticker = Ticker.system();
+
+    /**
+     * 提前刷新策略, 为 null 时不刷新
+     */
+    private volatile Refresher refresher;
+
+    /**
+     * 统计记录者
+     */
+    private volatile StatsCounter stats = StatsCounter.concurrent();
+
+    /**
+     * 移除监听器, 已包装为异步, 为 null 时不通知
      */
-    private final ConcurrentHashMap<K, V> values = new ConcurrentHashMap<>();
+    private volatile RemovalListener<K, V> listener;
 
     /**
-     * 存储过期时间
+     * 负缓存的存活毫秒数, 为 0 时不缓存加载结果为 null 的键
      */
-    private final ConcurrentHashMap<K, Long> expires = new ConcurrentHashMap<>();
+    private volatile long negative;
 
     /**
      * 本缓存对象存储路径
@@ -64,361 +131,1283 @@ public class PersistCache<K extends Serializable, V extends Serializable>
     private String path;
 
     /**
-     * 默认情况下，键的持久化名称，每个键的转换结果应当唯一
-     * 默认是 hashCode_MD5前十位
-     * hashCode一样，md5前10也一样 那就过分了啊
+     * 日志存储
+     */
+    private final LogStore log;
+
+    /**
+     * 键的编解码
+     */
+    private final Codec<K> keyCodec;
+
+    /**
+     * 值的编解码
+     */
+    private final Codec<V> valueCodec;
+
+    /**
+     * 失效字节占比达到该值的日志段在后台整理
+     */
+    private volatile double ratio = 0.5d;
+
+    /**
+     * 整理的读写限速, 默认每秒 16M
+     */
+    private final Throttle throttle = new Throttle(16L << 20);
+
+    /**
+     * 是否已提交后台整理或检查点, 同一时刻最多一个
+     */
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+
+    /**
+     * 定期写入索引快照的周期, 纳秒, 不大于 0 时只在关闭和程序结束时写入
+     */
+    private volatile long checkpointPeriod = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * 上次写入索引快照的时刻, 取自 {@link System#nanoTime()}
+     */
+    private volatile long checkpointed = System.nanoTime();
+
+    /**
+     * 是否已关闭, 正在进行的整理尽快停止
      */
-    private Function<K, String> name = k -> {
-        if (null == k) {
-            return "null";
+    private volatile boolean closed;
+
+    /**
+     * 程序即将结束, 正在进行的整理尽快停止, 结束时写入检查点不必等待整理完成
+     */
+    private volatile boolean stopping;
+
+    /**
+     * 写回模式下尚未写入日志的键, 期间重复写入的键只写一次, 也作为写入日志的锁
+     */
+    private final Set<K> dirty = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 写回模式下覆盖了已写入记录、尚未写入日志的键, 对应日志中最后写入的记录
+     * 写入索引快照, 非正常退出后恢复为该记录; 键写入日志后移除
+     */
+    private final ConcurrentHashMap<K, LogNode<K, V>> persisted = new ConcurrentHashMap<>();
+
+    /**
+     * 写回模式下等待写入的键, 有界, 满时写入方等待; 为 null 时同步写入
+     */
+    private volatile BlockingQueue<K> pending;
+
+    /**
+     * 写回模式下攒批的时长, 毫秒
+     */
+    private volatile long flushDelay;
+
+    /**
+     * 写回模式的后台写入线程
+     */
+    private volatile Thread writer;
+
+    /**
+     * 错误日志
+     */
+    private Consumer<String> error = System.err::println;
+
+    /**
+     * 设置输出日志
+     * @param error 日志输出
+     * @return 本实例
+     */
+    public PersistCache<K, V> error(Consumer<String> error) {
+        Objects.requireNonNull(error, "error log");
+        this.error = error;
+        return this;
+    }
+
+    /**
+     * 反序列化旧版本的文件
+     * @param name 文件名
+     * @return 对象
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T read(String name) {
+        File file = new File(name);
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream is = new ObjectInputStream(new FileInputStream(file))) {
+            return (T) is.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
         }
+        return null;
+    }
+
+    /**
+     * 删除文件
+     * @param file file
+     */
+    private static void delete(File file) {
         try {
-            byte[] plain = MessageDigest.getInstance("MD5").digest(k.toString().getBytes());
-            StringBuilder sb = new StringBuilder(plain.length << 1);
-            int max = 5 < plain.length ? 5 : plain.length;
-            for (int i = 0; i < max; i++) {
-                byte b = plain[i];
-                sb.append(HEX_CODE_UPPER[(b >> 4) & 0XF]).append(HEX_CODE_UPPER[b & 0XF]);
-            }
-            return k.hashCode() + "_" + sb.toString();
-        } catch (NoSuchAlgorithmException e) {
+            if (file.exists()) {
+                file.delete();
+            }
+        } catch (Exception e) {
             e.printStackTrace();
         }
-        return "error_" + k.toString();
-    };
+    }
 
     /**
-     * 已持久化的键
+     * 删除旧版本的持久化文件
+     * @param name 带有路径的文件名
      */
-    private CopyOnWriteArraySet<K> keys = new CopyOnWriteArraySet<>();
+    private static void delete(String name) {
+        delete(new File(name));
+        delete(new File(name + SUFFIX_KEY));
+        delete(new File(name + SUFFIX_EXPIRE));
+    }
+
+
 
     /**
-     * 错误日志
+     * 移除, 写入墓碑使重启后不再恢复
+     * @param key 键
+     * @return 被移除的节点
      */
-    private Consumer<String> error = System.err::println;
+    private Node<K, V> vanish(K key) {
+        Node<K, V> node = this.nodes.remove(key);
+        if (null != node) {
+            this.wheel.deschedule(node);
+            this.notify(node, node.alive(this.ticker.read()) ? RemovalCause.EXPLICIT : RemovalCause.EXPIRED);
+            this.tombstone(node);
+        }
+        return node;
+    }
+
+    /**
+     * 批量移除, 墓碑合并为一次追加写入日志
+     * @param keys 键
+     */
+    private void vanishAll(Collection<? extends K> keys) {
+        List<Node<K, V>> stored = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            Node<K, V> node = this.nodes.remove(key);
+            if (null == node) {
+                continue;
+            }
+            this.wheel.deschedule(node);
+            this.notify(node, node.alive(this.ticker.read()) ? RemovalCause.EXPLICIT : RemovalCause.EXPIRED);
+            if (node instanceof LogNode) {
+                this.discard(node);
+                stored.add(node);
+            } else {
+                this.tombstone(node);
+            }
+        }
+        for (int from = 0; from < stored.size(); from += FLUSH_BATCH) {
+            List<Node<K, V>> part = stored.subList(from, Math.min(stored.size(), from + FLUSH_BATCH));
+            int count = part.size();
+            byte[] flags = new byte[count];
+            Arrays.fill(flags, LogStore.TOMBSTONE);
+            long[] expires = new long[count];
+            byte[][] k = new byte[count][];
+            byte[][] v = new byte[count][];
+            int n = 0;
+            for (Node<K, V> node : part) {
+                try {
+                    k[n] = this.keyCodec.encode(node.key);
+                } catch (IOException e) {
+                    this.error.accept("append tombstone of " + node.key + " to " + this.path + " failed: " + e);
+                    continue;
+                }
+                v[n] = EMPTY;
+                expires[n++] = node.expire;
+            }
+            if (0 == n) {
+                continue;
+            }
+            try {
+                long[] addresses = this.log.append(Arrays.copyOf(flags, n), Arrays.copyOf(expires, n),
+                        Arrays.copyOf(k, n), Arrays.copyOf(v, n));
+                for (int i = 0; i < n; i++) {
+                    // 墓碑写入即计为失效
+                    this.log.discard(addresses[i], LogStore.length(k[i].length, 0));
+                }
+            } catch (IOException e) {
+                this.error.accept("append " + n + " tombstones to " + this.path + " failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * 移除给定的节点, 若该键已被更新则不移除
+     * 过期的记录重启时按过期时间过滤, 不需要墓碑; 写回模式下尚未写入的节点除外
+     * @param node 节点
+     * @param cause 原因
+     * @return 是否移除
+     */
+    private boolean vanish(Node<K, V> node, RemovalCause cause) {
+        if (this.nodes.remove(node.key, node)) {
+            this.wheel.deschedule(node);
+            this.notify(node, cause);
+            this.discard(node);
+            if (!(node instanceof LogNode) && !node.absent() && RemovalCause.CLEARED != cause) {
+                // 写回模式下尚未写入的节点, 日志中更早的记录过期时间不同, 需要墓碑
+                this.dirty(node.key);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 通知移除监听器, 值尚未读入内存时从日志读取, 负缓存的哨兵不通知
+     * @param node 被移除的节点
+     * @param cause 原因
+     */
+    private void notify(Node<K, V> node, RemovalCause cause) {
+        RemovalListener<K, V> l = this.listener;
+        if (null != l && !node.absent()) {
+            V value = null != node.value ? node.value : this.load(node);
+            l.onRemoval(node.key, value, cause);
+        }
+    }
+
+    /**
+     * 移除过期的节点
+     * @param node 节点
+     * @return 是否移除
+     */
+    private boolean expired(Node<K, V> node) {
+        if (this.vanish(node, RemovalCause.EXPIRED)) {
+            if (!node.absent()) {
+                this.stats.recordExpiration();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 追加一条记录
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时间, 毫秒
+     * @return 写入成功返回带位置的节点, 失败时只保存在内存中
+     */
+    private Node<K, V> append(K key, V value, long expire) {
+        try {
+            byte[] k = this.keyCodec.encode(key);
+            byte[] v = this.valueCodec.encode(value);
+            long address = this.log.append(expire, (byte) 0, k, v);
+            return new LogNode<>(key, value, expire, address, LogStore.length(k.length, v.length));
+        } catch (IOException e) {
+            this.error.accept("append " + key + " to " + this.path + " failed: " + e);
+            return new Node<>(key, value, expire);
+        }
+    }
+
+    /**
+     * 节点的记录已失效
+     * @param node 节点
+     */
+    private void discard(Node<K, V> node) {
+        if (node instanceof LogNode) {
+            LogNode<K, V> stored = (LogNode<K, V>) node;
+            this.log.discard(stored.address, stored.length);
+        }
+    }
+
+    /**
+     * 记录已失效, 并追加墓碑, 墓碑本身不含数据, 写入即计为失效
+     * @param node 被删除的节点
+     */
+    private void tombstone(Node<K, V> node) {
+        if (!(node instanceof LogNode)) {
+            // 写回模式下尚未写入的节点, 日志中可能还有该键更早的记录, 由后台线程写入墓碑
+            if (!node.absent()) {
+                this.dirty(node.key);
+            }
+            return;
+        }
+        this.discard(node);
+        try {
+            byte[] k = this.keyCodec.encode(node.key);
+            long address = this.log.append(node.expire, LogStore.TOMBSTONE, k, EMPTY);
+            this.log.discard(address, LogStore.length(k.length, 0));
+        } catch (IOException e) {
+            this.error.accept("append tombstone of " + node.key + " to " + this.path + " failed: " + e);
+        }
+    }
+
+    /**
+     * 从日志读取节点的值
+     * @param node 节点
+     * @return 值, 记录已被移动或损坏时返回 null
+     */
+    private V load(Node<K, V> node) {
+        if (!(node instanceof LogNode)) {
+            return null;
+        }
+        LogNode<K, V> stored = (LogNode<K, V>) node;
+        ByteBuffer record = this.log.read(stored.address, stored.length);
+        if (null == record) {
+            return null;
+        }
+        int offset = LogStore.valueOffset(record);
+        try {
+            return this.valueCodec.decode(record.array(), offset, stored.length - offset);
+        } catch (IOException e) {
+            this.error.accept("read value of " + node.key + " from " + this.path + " failed: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 获取存活的节点, 已过期则移除, 负缓存的哨兵视为不存在
+     * @param key 键
+     * @return 存活返回节点, 否则返回 null
+     */
+    private Node<K, V> node(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        if (null == node) {
+            return null;
+        }
+        if (!node.alive(this.ticker.read())) {
+            this.expired(node);
+            return null;
+        }
+        return node.absent() ? null : node;
+    }
+
+    /**
+     * 获取过期时间
+     * @param key 键
+     * @return 过期时间
+     */
+    private Long getExpire(K key) {
+        Node<K, V> node = this.node(key);
+        return null != node ? node.expire : null;
+    }
+
+    /**
+     * 获取值
+     * @param key 键
+     * @return 值
+     */
+    private V getValue(K key) {
+        Node<K, V> node;
+        while (null != (node = this.node(key))) {
+            if (null != node.value) {
+                return node.value;
+            }
+
+            // 值尚未读入内存
+            V value = this.load(node);
+            if (null != value) {
+                LogNode<K, V> stored = (LogNode<K, V>) node;
+                Node<K, V> loaded = new LogNode<>(key, value, node.expire, stored.address, stored.length);
+                if (this.nodes.replace(key, node, loaded)) {
+                    this.wheel.deschedule(node);
+                    this.schedule(loaded);
+                }
+                return value;
+            }
+            if (this.nodes.get(key) == node) {
+                // 记录已损坏
+                this.vanish(node, RemovalCause.EVICTED);
+                return null;
+            }
+            // 读取期间记录被移动或更新, 按最新的节点重试
+        }
+        return null;
+    }
+
+    /**
+     * 读取该键是否无需访问日志, 即不存在或值已读入内存
+     * @param key 键
+     * @return 无需访问文件返回 true
+     */
+    boolean loaded(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        return null == node || null != node.value;
+    }
+
+    /**
+     * 更新存活节点的过期时间, 并原地更新日志中的过期时间
+     * @param key 键
+     * @param expire 过期时间, 毫秒
+     * @return 存活返回节点, 否则返回 null
+     */
+    private Node<K, V> touch(K key, long expire) {
+        Node<K, V> node;
+        while (null != (node = this.node(key))) {
+            long previous = node.expire;
+            node.expire = expire;
+            if (node instanceof LogNode) {
+                this.log.expire(((LogNode<K, V>) node).address, expire);
+            }
+            // 延长的节点到期时由时间轮重新放入, 提前的节点需立即调整
+            if (0 <= expire && (previous < 0 || expire < previous)) {
+                this.wheel.schedule(node);
+            }
+            if (this.nodes.get(key) == node) {
+                break;
+            }
+            // 期间节点被读入值、移动或写入的新节点替换, 替换时可能未复制到新的过期时间, 按最新的节点重试
+        }
+        return node;
+    }
+
+    /**
+     * 放入时间轮
+     * @param node 节点
+     */
+    private void schedule(Node<K, V> node) {
+        if (0 <= node.expire) {
+            this.wheel.schedule(node);
+            if (this.nodes.get(node.key) != node) {
+                // 放入时间轮前已被移除
+                this.wheel.deschedule(node);
+            }
+        }
+    }
+
+    /**
+     * 设置或更新一个键值对, 追加写入日志, 原有的记录失效
+     * 写回模式下只放入内存, 由后台线程批量写入日志
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时间, 毫秒
+     */
+    private void store(K key, V value, long expire) {
+        boolean behind = null != this.pending;
+        this.replace(key, behind ? new Node<>(key, value, expire) : this.append(key, value, expire), behind);
+    }
+
+    /**
+     * 批量设置或更新, 合并为一次追加写入日志, 原有的记录失效
+     * 写回模式下逐个放入内存, 由后台线程批量写入日志
+     * @param map 键值对
+     * @param expire 过期时间, 毫秒
+     */
+    private void storeAll(Map<? extends K, ? extends V> map, long expire) {
+        if (null != this.pending || map.size() <= 1) {
+            map.forEach((key, value) -> this.store(key, value, expire));
+            return;
+        }
+        List<K> keys = new ArrayList<>(map.size());
+        List<V> values = new ArrayList<>(map.size());
+        List<byte[]> k = new ArrayList<>(map.size());
+        List<byte[]> v = new ArrayList<>(map.size());
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet()) {
+            try {
+                byte[] key = this.keyCodec.encode(e.getKey());
+                byte[] value = this.valueCodec.encode(e.getValue());
+                k.add(key);
+                v.add(value);
+                keys.add(e.getKey());
+                values.add(e.getValue());
+            } catch (IOException ex) {
+                // 与单个写入相同, 只保存在内存中
+                this.error.accept("append " + e.getKey() + " to " + this.path + " failed: " + ex);
+                this.replace(e.getKey(), new Node<>(e.getKey(), e.getValue(), expire), false);
+            }
+        }
+        for (int from = 0; from < keys.size(); from += FLUSH_BATCH) {
+            int count = Math.min(keys.size() - from, FLUSH_BATCH);
+            byte[] flags = new byte[count];
+            long[] expires = new long[count];
+            Arrays.fill(expires, expire);
+            long[] addresses;
+            try {
+                addresses = this.log.append(flags, expires, k.subList(from, from + count).toArray(new byte[0][]),
+                        v.subList(from, from + count).toArray(new byte[0][]));
+            } catch (IOException e) {
+                this.error.accept("append " + count + " keys to " + this.path + " failed: " + e);
+                addresses = null;
+            }
+            for (int i = 0; i < count; i++) {
+                K key = keys.get(from + i);
+                V value = values.get(from + i);
+                this.replace(key, null == addresses ? new Node<>(key, value, expire)
+                        : new LogNode<>(key, value, expire, addresses[i],
+                        LogStore.length(k.get(from + i).length, v.get(from + i).length)), false);
+            }
+        }
+    }
+
+    /**
+     * 放入新节点, 原有的节点失效
+     * @param key 键
+     * @param node 新节点
+     * @param behind 是否写回模式
+     */
+    private void replace(K key, Node<K, V> node, boolean behind) {
+        if (behind) {
+            // 替换前先记下, 写入快照时看到未写入的节点就能找到日志中的记录
+            this.persist(this.nodes.get(key));
+        }
+        Node<K, V> old = this.nodes.put(key, node);
+        if (behind) {
+            this.persist(old);
+        }
+        if (null != old) {
+            this.wheel.deschedule(old);
+            this.notify(old, old.alive(this.ticker.read()) ? RemovalCause.REPLACED : RemovalCause.EXPIRED);
+            this.discard(old);
+        }
+        this.schedule(node);
+        if (behind) {
+            this.dirty(key);
+        }
+    }
+
+    /**
+     * 写回模式下记下将被未写入的节点覆盖的记录
+     * @param node 被覆盖的节点, 未写入的节点忽略
+     */
+    private void persist(Node<K, V> node) {
+        if (node instanceof LogNode) {
+            this.persisted.put(node.key, (LogNode<K, V>) node);
+        }
+    }
+
+    /**
+     * 写回模式下标记键需要写入日志, 已标记的键不重复排队, 队列满时等待
+     * @param key 键
+     */
+    private void dirty(K key) {
+        BlockingQueue<K> queue = this.pending;
+        if (null == queue || !this.dirty.add(key)) {
+            return;
+        }
+        try {
+            queue.put(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.dirty.remove(key);
+            this.error.accept("write behind of " + key + " interrupted, not persisted until next update");
+        }
+    }
+
+    /**
+     * 把一批键的当前状态写入日志, 合并为一次写入
+     * 存活的节点写入记录后以带位置的节点替换, 期间被更新时新记录直接失效; 不存在的键写入墓碑
+     * 调用时需持有 dirty 的锁
+     * @param keys 键
+     */
+    private void flush(List<K> keys) {
+        int size = keys.size();
+        List<K> names = new ArrayList<>(size);
+        List<Node<K, V>> written = new ArrayList<>(size);
+        byte[] flags = new byte[size];
+        long[] expires = new long[size];
+        byte[][] k = new byte[size][];
+        byte[][] v = new byte[size][];
+        int count = 0;
+        for (K key : keys) {
+            if (!this.dirty.remove(key)) {
+                // 已由其他批次写入或已清空
+                continue;
+            }
+            Node<K, V> node = this.nodes.get(key);
+            if (node instanceof LogNode) {
+                this.persisted.remove(key);
+                continue;
+            }
+            boolean live = null != node && !node.absent();
+            try {
+                k[count] = this.keyCodec.encode(key);
+                v[count] = live ? this.valueCodec.encode(node.value) : EMPTY;
+            } catch (IOException e) {
+                this.error.accept("encode " + key + " failed: " + e);
+                continue;
+            }
+            flags[count] = live ? 0 : LogStore.TOMBSTONE;
+            expires[count] = live ? node.expire : -1L;
+            names.add(key);
+            written.add(live ? node : null);
+            count++;
+        }
+        if (0 == count) {
+            return;
+        }
+        long[] addresses;
+        try {
+            addresses = this.log.append(Arrays.copyOf(flags, count), Arrays.copyOf(expires, count),
+                    Arrays.copyOf(k, count), Arrays.copyOf(v, count));
+        } catch (IOException e) {
+            this.error.accept("flush " + count + " keys to " + this.path + " failed: " + e);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int length = LogStore.length(k[i].length, v[i].length);
+            Node<K, V> node = written.get(i);
+            // 替换节点前移除, 之后覆盖该节点的写入会重新记下
+            this.persisted.remove(names.get(i));
+            if (null == node) {
+                // 墓碑写入即计为失效
+                this.log.discard(addresses[i], length);
+                continue;
+            }
+            LogNode<K, V> stored = new LogNode<>(node.key, node.value, node.expire, addresses[i], length);
+            if (this.nodes.replace(node.key, node, stored)) {
+                // 替换前后原节点的过期时间可能被更新
+                stored.expire = node.expire;
+                this.wheel.deschedule(node);
+                this.schedule(stored);
+                if (expires[i] != stored.expire) {
+                    this.log.expire(addresses[i], stored.expire);
+                }
+            } else {
+                // 已被更新或移除, 由之后的写入处理, 在此之前新记录是日志中的最新状态
+                this.log.discard(addresses[i], length);
+                this.persist(stored);
+            }
+        }
+    }
+
+    /**
+     * 写回模式下把等待写入的键全部写入日志
+     */
+    public void flush() {
+        BlockingQueue<K> queue = this.pending;
+        if (null == queue) {
+            return;
+        }
+        List<K> batch = new ArrayList<>();
+        synchronized (this.dirty) {
+            while (0 < queue.drainTo(batch, FLUSH_BATCH)) {
+                this.flush(batch);
+                batch.clear();
+            }
+            // 后台线程已取出正在攒批的键, 以及已标记还未放入队列的键, 之后再取到时跳过
+            batch.addAll(this.dirty);
+            this.batches(batch);
+        }
+    }
+
+    /**
+     * 按批次上限分多次写入, 调用时需持有 dirty 的锁
+     * @param keys 键
+     */
+    private void batches(List<K> keys) {
+        for (int i = 0; i < keys.size(); i += FLUSH_BATCH) {
+            this.flush(keys.subList(i, Math.min(keys.size(), i + FLUSH_BATCH)));
+        }
+    }
+
+    /**
+     * 后台写入线程, 空闲时阻塞等待, 第一个键到达后开始攒批, 直到攒批时长结束或取出的键达到队列容量, 再批量写入
+     * 取出的键仍标记为未写入, 随时可由 {@link #flush()} 写入; 关闭时中断等待
+     */
+    private void writeBehind() {
+        BlockingQueue<K> queue = this.pending;
+        int capacity = queue.size() + queue.remainingCapacity();
+        List<K> batch = new ArrayList<>();
+        while (!this.closed) {
+            try {
+                batch.add(queue.take());
+                long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.flushDelay);
+                long wait;
+                while (batch.size() < capacity && 0 < (wait = until - System.nanoTime())) {
+                    K key = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (null != key) {
+                        batch.add(key);
+                    }
+                }
+                synchronized (this.dirty) {
+                    this.batches(batch);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                this.error.accept("write behind of " + this.path + " failed: " + e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 清空所有数据, 删除所有日志段
+     */
+    private void empty() {
+        this.nodes.values().forEach(n -> this.vanish(n, RemovalCause.CLEARED));
+        this.overdue.clear();
+        BlockingQueue<K> queue = this.pending;
+        if (null != queue) {
+            synchronized (this.dirty) {
+                queue.clear();
+                this.dirty.clear();
+                this.persisted.clear();
+            }
+        }
+        if (!HintFile.delete(new File(this.path))) {
+            this.error.accept("delete hint of " + this.path + " failed");
+        }
+        try {
+            this.log.clear();
+        } catch (IOException e) {
+            this.error.accept("clear " + this.path + " failed: " + e);
+        }
+    }
+
+    /**
+     * 回收空间
+     */
+    @Override
+    public int reclaim() {
+        return this.reclaim(Long.MAX_VALUE);
+    }
+
+    /**
+     * 时间预算用完时剩余的节点留到下次处理
+     */
+    @Override
+    public int reclaim(long deadline) {
+        // 若程序结束，则不用清理
+        if (!this.cacheUtil.isAlive()) {
+            return 0;
+        }
+        long now = this.ticker.read();
+        this.overdue.addAll(this.wheel.advance(now));
+        int removed = 0;
+        int count = 0;
+        Node<K, V> node;
+        while (null != (node = this.overdue.poll())) {
+            // 过期只在内存中标记记录失效, 不读写文件, 与内存缓存一样间隔检查
+            if ((++count & CacheUtil.CHECK_MASK) == 0 && deadline <= System.nanoTime()) {
+                this.overdue.add(node);
+                break;
+            }
+            if (!node.alive(now)) {
+                if (this.expired(node)) {
+                    removed++;
+                }
+            } else if (this.nodes.get(node.key) == node) {
+                // 取出后过期时间又被更新
+                this.wheel.schedule(node);
+            }
+        }
+        this.maintainLater();
+        return removed;
+    }
+
+    /**
+     * 有日志段需要整理或到了检查点时提交到后台整理线程, 已提交时不重复提交
+     */
+    private void maintainLater() {
+        if (this.stopped()) {
+            return;
+        }
+        boolean compact = !this.log.candidates(this.ratio).isEmpty();
+        long period = this.checkpointPeriod;
+        boolean checkpoint = 0 < period && period <= System.nanoTime() - this.checkpointed;
+        if (!(compact || checkpoint) || !this.maintaining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LogStore.Holder.COMPACTOR.execute(() -> {
+                try {
+                    // 整理完成后会写入检查点
+                    if (!compact || 0 == this.compact()) {
+                        this.checkpoint();
+                    }
+                } finally {
+                    this.maintaining.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            this.maintaining.set(false);
+        }
+    }
+
+    /**
+     * 整理失效字节占比达到阈值的日志段, 仍有效的记录复制到新的日志段后删除原段
+     * 整理期间读写照常进行, 读写按字节限速, 通常由回收任务触发在后台执行
+     * 删除日志段前先删除索引快照, 整理完成后重新写入
+     * @return 整理的日志段个数
+     */
+    public synchronized int compact() {
+        int compacted = 0;
+        for (LogStore.Segment segment : this.log.candidates(this.ratio)) {
+            if (this.stopped()) {
+                break;
+            }
+            try {
+                this.compact(segment);
+                compacted++;
+            } catch (IOException e) {
+                this.error.accept("compact " + segment.file.getPath() + " failed: " + e);
+            } catch (CancellationException e) {
+                break;
+            }
+        }
+        if (0 < compacted && !this.stopped()) {
+            this.checkpoint();
+        }
+        return compacted;
+    }
+
+    /**
+     * 写入索引快照, 启动时读入快照后只需扫描之后追加的记录
+     * 快照中的记录先刷到磁盘; 之后原地更新的过期时间在下次检查点前非正常退出时会丢失
+     * 通常在关闭、程序结束时和定期在后台执行
+     */
+    public synchronized void checkpoint() {
+        if (!this.log.isOpen()) {
+            return;
+        }
+        long start = System.nanoTime();
+        // 写回模式下先写入等待的键, 写快照期间不再写入, 之后才更新的键以日志中最后写入的记录写入快照
+        synchronized (this.dirty) {
+            this.flush();
+            List<LogStore.Mark> marks = this.log.marks();
+            // 取得状态后追加的记录序号更大, 且不在快照覆盖范围内
+            long sequence = this.log.sequence();
+            this.log.force();
+            try {
+                HintFile.write(new File(this.path), sequence, marks, writer -> {
+                    for (Node<K, V> node : this.nodes.values()) {
+                        LogNode<K, V> stored = node instanceof LogNode
+                                ? (LogNode<K, V>) node : this.persisted.get(node.key);
+                        if (null != stored) {
+                            writer.write(this.keyCodec.encode(node.key), stored.expire, stored.address, stored.length);
+                        }
+                    }
+                });
+                this.checkpointed = start;
+            } catch (IOException e) {
+                this.error.accept("write hint of " + this.path + " failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * 程序结束时写入尚未写入的更新和索引快照
+     */
+    @Override
+    public void shutdown() {
+        if (!this.closed) {
+            // 先让整理停止, 检查点需要等待整理释放锁
+            this.stopping = true;
+            this.flush();
+            this.checkpoint();
+        }
+    }
+
+    /**
+     * 整理是否应尽快停止
+     * @return 已关闭或程序即将结束返回 true
+     */
+    private boolean stopped() {
+        return this.closed || this.stopping;
+    }
+
+    /**
+     * 整理一个日志段
+     * 仍在索引中且未过期的记录复制并更新索引; 已被覆盖的记录丢弃;
+     * 已删除或已过期的键, 若其他段可能还有该键更早的记录, 以墓碑保留原序号, 避免重启后恢复旧值
+     * @param segment 日志段
+     * @throws IOException 读写失败, 原段保持不变
+     */
+    private void compact(LogStore.Segment segment) throws IOException {
+        long floor = this.log.floor(segment);
+        long now = this.ticker.read();
+        LogStore.Output output = this.log.output();
+        IOException[] failure = new IOException[1];
+        this.log.scan(segment, (address, length, expire, sequence, flags, bytes) -> {
+            if (null != failure[0]) {
+                return;
+            }
+            try {
+                this.throttle.acquire(length);
+                K key = this.keyCodec.decode(bytes, 0, bytes.length);
+                Node<K, V> node = this.nodes.get(key);
+                if (LogStore.TOMBSTONE != flags && node instanceof LogNode && ((LogNode<K, V>) node).address == address) {
+                    if (node.alive(now)) {
+                        this.move((LogNode<K, V>) node, output);
+                        return;
+                    }
+                    if (!this.expired(node)) {
+                        // 已被更新
+                        return;
+                    }
+                } else if (node instanceof LogNode || (null != node && node.absent())) {
+                    // 已被更新, 更新后的记录序号更大
+                    return;
+                } else if (null != node && LogStore.TOMBSTONE != flags) {
+                    // 更新尚未写入日志, 该记录仍是日志中的最新状态, 原样保留并计为失效
+                    this.throttle.acquire(length);
+                    long copied = output.copy(address, length, expire);
+                    this.log.discard(copied, length);
+                    this.persisted.computeIfPresent(key, (k, p) -> p.address == address
+                            ? new LogNode<>(k, null, p.expire, copied, length) : p);
+                    return;
+                }
+                if (floor <= sequence) {
+                    output.tombstone(sequence, expire, bytes);
+                }
+            } catch (IOException e) {
+                failure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+            if (this.stopped()) {
+                throw new CancellationException();
+            }
+        });
+        if (null != failure[0]) {
+            throw failure[0];
+        }
+        output.force();
+        if (!HintFile.delete(new File(this.path))) {
+            throw new IOException("delete hint of " + this.path + " failed");
+        }
+        this.log.drop(segment);
+    }
+
+    /**
+     * 把节点的记录复制到整理输出, 并以新位置的节点替换
+     * 复制期间节点被更新时新记录直接失效; 值被读入内存时按新的节点重试
+     * @param node 节点
+     * @param output 整理输出
+     * @throws IOException 读写失败
+     * @throws InterruptedException 限速等待时被中断
+     */
+    private void move(LogNode<K, V> node, LogStore.Output output) throws IOException, InterruptedException {
+        long expire = node.expire;
+        long address = output.copy(node.address, node.length, expire);
+        this.throttle.acquire(node.length);
+        LogNode<K, V> current = node;
+        while (true) {
+            LogNode<K, V> moved = new LogNode<>(current.key, current.value, current.expire, address, current.length);
+            if (this.nodes.replace(current.key, current, moved)) {
+                // 替换前后原节点的过期时间可能被更新
+                moved.expire = current.expire;
+                this.wheel.deschedule(current);
+                this.schedule(moved);
+                if (expire != moved.expire) {
+                    // 复制后过期时间又被更新
+                    this.log.expire(address, moved.expire);
+                }
+                return;
+            }
+            Node<K, V> latest = this.nodes.get(current.key);
+            if (!(latest instanceof LogNode) || ((LogNode<K, V>) latest).address != node.address) {
+                this.log.discard(address, node.length);
+                return;
+            }
+            current = (LogNode<K, V>) latest;
+        }
+    }
+
+    @Override
+    public ReclaimStrategy strategy() {
+        return this.strategy;
+    }
+
+    @Override
+    public long sample(int count) {
+        return this.sampler.sample(count, this.ticker.read(), this::expired);
+    }
+
+    /**
+     * 设置时钟, 应在存入数据之前设置
+     * @param ticker 时钟
+     * @return 本实例
+     */
+    public PersistCache<K, V> ticker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker");
+        this.ticker = ticker;
+        // 按新时钟重建时间轮
+        this.wheel.reset(ticker.read());
+        this.nodes.values().forEach(this::schedule);
+        return this;
+    }
 
     /**
-     * 设置输出日志
-     * @param error 日志输出
+     * 设置回收方式
+     * @param strategy 回收方式
      * @return 本实例
      */
-    public PersistCache<K, V> error(Consumer<String> error) {
-        Objects.requireNonNull(error, "error log");
-        this.error = error;
+    public PersistCache<K, V> strategy(ReclaimStrategy strategy) {
+        Objects.requireNonNull(strategy, "strategy");
+        this.strategy = strategy;
         return this;
     }
 
     /**
-     * 生成持久化文件名
-     * @param key 键
-     * @return 文件名
+     * 设置提前刷新策略, 带加载函数的读取命中即将过期的键时在后台重新加载
+     * @param refresher 刷新策略, 为 null 时不刷新
+     * @return 本实例
      */
-    private String name(K key) {
-        return this.name.apply(key);
+    public PersistCache<K, V> refresh(Refresher refresher) {
+        this.refresher = refresher;
+        return this;
+    }
+
+    @Override
+    public Refresher refresher() {
+        return this.refresher;
     }
 
     /**
-     * 序列化对象
-     * @param file 文件对象
-     * @param o 序列化对象
+     * 设置移除监听器, 在共享的单线程守护线程池中按移除顺序异步通知
+     * 值尚未读入内存的键在移除前从文件读取值
+     * @param listener 监听器, 为 null 时不再通知
+     * @return 本实例
      */
-    private void write(File file, Serializable o) {
-        if (!file.exists()) {
-            try {
-                if (!file.createNewFile()) {
-                    this.error.accept("createNewFile " + file.getPath() + " failed");
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(file))) {
-            os.writeObject(o);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public PersistCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener) {
+        this.listener = null == listener ? null : RemovalListener.async(listener);
+        return this;
     }
 
     /**
-     * 反序列化对象
-     * @param name 文件名
-     * @return 对象
+     * 设置移除监听器, 在给定的线程池中异步通知
+     * @param listener 监听器, 为 null 时不再通知
+     * @param executor 执行通知的线程池
+     * @return 本实例
      */
-    @SuppressWarnings("unchecked")
-    private static <T> T read(String name) {
-        File file = new File(name);
-        if (!file.exists()) {
-            return null;
-        }
-        try (ObjectInputStream is = new ObjectInputStream(new FileInputStream(file))) {
-            return (T) is.readObject();
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        return null;
+    public PersistCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        this.listener = null == listener ? null : RemovalListener.async(listener, executor);
+        return this;
     }
 
     /**
-     * 删除文件
-     * @param file file
+     * 异步视图, 读写文件在共享的 I/O 线程池中执行
+     * @return 异步缓存
      */
-    private static void delete(File file) {
-        try {
-            if (file.exists()) {
-                file.delete();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    public AsyncTimeCache<K, V> async() {
+        return this.async(AsyncPersistCache.Holder.IO);
     }
 
     /**
-     * 删除持久化
-     * @param name 带有路径的文件名
+     * 异步视图, 读写文件在给定的线程池中执行, 内存中能完成的操作直接完成
+     * @param executor 读写文件的线程池
+     * @return 异步缓存
      */
-    private void delete(String name) {
-        delete(new File(name));
-        delete(new File(name + SUFFIX_KEY));
-        delete(new File(name + SUFFIX_EXPIRE));
+    @Override
+    public AsyncTimeCache<K, V> async(Executor executor) {
+        return new AsyncPersistCache<>(this, executor);
     }
 
-
-
     /**
-     * 移除
-     * @param key 键
+     * 开启或关闭统计, 关闭后读写路径上不再有任何统计开销
+     * @param enabled 是否记录
+     * @return 本实例
      */
-    private void vanish(K key) {
-        this.expires.remove(key);
-        this.values.remove(key);
-        if (this.keys.contains(key)) {
-            // 若有持久化，则删除
-            this.keys.remove(key);
-            this.delete(this.path + "/" + name(key));
-        }
+    public PersistCache<K, V> recordStats(boolean enabled) {
+        this.stats = enabled ? StatsCounter.concurrent() : StatsCounter.disabled();
+        return this;
+    }
+
+    @Override
+    public StatsCounter statsCounter() {
+        return this.stats;
     }
 
     /**
-     * 持久化值
-     * @param name 文件名
-     * @param value 值
+     * 遍历所有键值对
+     * @param action 遍历函数
      */
-    private void writeValue(String name, V value) {
-        this.write(new File(this.path + "/" + name), value);
+    public void forEach(BiConsumer<K, V> action) {
+        this.nodes.keySet().parallelStream()
+                .filter(this::has)
+                .forEach(k -> action.accept(k, get(k)));
     }
 
     /**
-     * 持久化键
-     * @param name 文件名
-     * @param key 键
+     * 将所有缓存键值对数据变成流
+     * @return 流
      */
-    private void writeKey(String name, K key) {
-        this.write(new File(this.path + "/" + name + SUFFIX_KEY), key);
+    public Stream<Map.Entry<K, V>> stream() {
+        return this.nodes.keySet().parallelStream()
+                .filter(this::has)
+                .map(k -> new Pair<>(k, get(k)));
     }
 
     /**
-     * 持久化过期时间
-     * @param name 文件名
-     * @param expire 过期时间, 毫秒
+     * 缓存个数, 直接取自映射表维护的计数, 常数时间
+     * 已过期但尚未回收的键也计算在内, 需要精确值时使用 {@link #exactSize()}
+     * @return 缓存个数
      */
-    private void writeExpire(String name, Long expire) {
-        this.write(new File(this.path + "/" + name + SUFFIX_EXPIRE), expire);
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, this.nodes.mappingCount());
     }
 
     /**
-     * 获取过期时间
-     * @param key 键
-     * @return 过期时间
+     * 有效的缓存个数, 逐个判断是否过期, 耗时与缓存个数成正比
+     * @return 缓存个数
      */
-    private Long getExpire(K key) {
-        Long expire = this.expires.get(key);
-        if (CacheUtil.alive(expire)) {
-            // 如果内存里有，直接返回内存里的
-            return expire;
-        }
+    public int exactSize() {
+        long now = this.ticker.read();
+        return (int) this.nodes.values().stream()
+                .filter(n -> n.alive(now) && !n.absent())
+                .count();
+    }
 
-        if (!this.keys.contains(key)) {
-            // 如果键没有进行持久化，则不存在键
-            return null;
-        }
+    @Override
+    public long entries() {
+        return this.nodes.mappingCount();
+    }
 
-        // 持久化文件名
-        String name = this.name(key);
-        expire = PersistCache.read(this.path + "/" + name + SUFFIX_EXPIRE);
-        boolean disappear = true;
-        if (CacheUtil.alive(expire)) {
-            try {
-                // 获取值
-                V value = PersistCache.read(this.path + "/" + name);
-                if (null != value) {
-                    // 若值也存在，缓存入内存
-                    this.values.put(key, value);
-                    this.expires.put(key, expire);
-                    disappear = false;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-        if (disappear) {
-            this.vanish(key);
-            expire = null;
-        }
-        return expire;
+    @Override
+    public String name() {
+        return this.path;
     }
 
     /**
-     * 获取值
-     * @param key 键
-     * @return 值
+     * 持久化文件占用的字节数
+     * @return 字节数
      */
-    private V getValue(K key) {
-        if (!CacheUtil.alive(this.getExpire(key))) {
-            return null;
-        }
-
-        V value = this.values.get(key);
-        if (null != value) {
-            return value;
+    public long bytes() {
+        File[] files = new File(this.path).listFiles();
+        long bytes = 0;
+        if (null != files) {
+            for (File file : files) {
+                bytes += file.length();
+            }
         }
+        return bytes;
+    }
 
-        if (!this.keys.contains(key)) {
-            return null;
-        }
 
-        String name = this.name(key);
-        value = PersistCache.read(this.path + "/" + name);
-        boolean disappear = true;
-        if (null != value) {
-            // 若存在值，则进一步判断过期时间
+    /**
+     * 关闭缓存, 日志刷到磁盘后关闭, 不再定时回收, 释放存储路径使其可以重新打开
+     * 关闭后不应再使用本实例
+     */
+    public void close() {
+        this.closed = true;
+        this.cacheUtil.remove(this);
+        Thread w = this.writer;
+        if (null != w) {
+            // 写入线程空闲时阻塞在队列上, 剩余的键由下面的 flush 写入
+            w.interrupt();
             try {
-                Long expire = PersistCache.read(this.path + "/" + name + SUFFIX_EXPIRE);
-                if (CacheUtil.alive(expire)) {
-                    // 未过期，存入内存
-                    this.values.put(key, value);
-                    this.expires.put(key, expire);
-                    disappear = false;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
-        if (disappear) {
-            this.vanish(key);
-            value = null;
+        this.flush();
+        synchronized (this) {
+            // 等待正在进行的整理停止
+            this.checkpoint();
+            this.log.close();
         }
-        return value;
+        PATHS.remove(this.path);
     }
 
     /**
-     * 设置或更新一个键值对
-     * @param key 键
-     * @param value 值
-     * @param expire 过期时间, 毫秒
+     * 设置后台整理
+     * @param ratio 失效字节占比达到该值的日志段被整理, 取值 (0, 1]
+     * @param bytesPerSecond 整理每秒读写的字节数上限, 不大于 0 时不限速
+     * @return 本实例
      */
-    private void store(K key, V value, Long expire) {
-        Long e = this.getExpire(key);
-        if (null != e) {
-            String name = this.name(key);
-            this.writeValue(name, value);
-            this.values.put(key, value);
-            if (!e.equals(expire)) {
-                this.writeExpire(name, expire);
-                this.expires.put(key, expire);
-            }
-            return;
+    public PersistCache<K, V> compaction(double ratio, long bytesPerSecond) {
+        if (!(0 < ratio && ratio <= 1)) {
+            throw new IllegalArgumentException("ratio must be in (0, 1]");
         }
-        this.values.put(key, value);
-        this.expires.put(key, expire);
-        this.write(key, value, expire);
+        this.ratio = ratio;
+        this.throttle.rate(bytesPerSecond);
+        return this;
     }
 
     /**
-     * 持久化
-     * @param key 键
-     * @param value 值
-     * @param expire 过期时间, 毫秒
+     * 设置日志段大小上限, 之后新开的日志段生效, 段越小整理的粒度越细
+     * @param bytes 上限, 字节, 默认 64M
+     * @return 本实例
      */
-    private void write(K key, V value, Long expire) {
-        this.keys.add(key);
-        String name = this.name(key);
-        this.writeValue(name, value);
-        this.writeKey(name, key);
-        this.writeExpire(name, expire);
+    public PersistCache<K, V> segmentBytes(long bytes) {
+        this.log.limit(bytes);
+        return this;
     }
 
     /**
-     * 清空所有数据
+     * 开启写回模式, 写入只放入内存, 由后台线程合并后批量写入日志, 开启后不能关闭
+     * 攒批期间同一个键多次写入只写一次; 等待写入的键达到上限时写入方等待, 关闭和程序结束时全部写入
+     * 非正常退出时尚未写入的更新会丢失
+     * @param capacity 等待写入的键个数上限
+     * @param delay 攒批的时长, 毫秒, 等待写入的键达到上限时立即写入
+     * @return 本实例
      */
-    private void empty() {
-        this.expires.clear();
-        this.values.clear();
-        this.keys.stream()
-                .map(k -> this.path + "/" + this.name(k))
-                .forEach(this::delete);
-        this.keys.clear();
+    public synchronized PersistCache<K, V> writeBehind(int capacity, long delay) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay must not be negative");
+        }
+        if (null != this.pending) {
+            throw new IllegalStateException("write behind is already enabled");
+        }
+        this.flushDelay = delay;
+        this.pending = new LinkedBlockingQueue<>(capacity);
+        Thread thread = new Thread(this::writeBehind, "mime-cache-writer-" + new File(this.path).getName());
+        // 守护线程模式，不阻挡程序结束, 程序结束时由钩子写入剩余的更新
+        thread.setDaemon(true);
+        thread.start();
+        this.writer = thread;
+        return this;
     }
 
     /**
-     * 回收空间
+     * 设置定期写入索引快照的周期, 周期越短非正常退出后启动时需扫描的记录越少
+     * @param period 周期, 毫秒, 不大于 0 时只在关闭和程序结束时写入
+     * @return 本实例
      */
-    @Override
-    public void reclaim() {
-        Stream.concat(this.expires.keySet().stream(), this.keys.stream())
-                .distinct() // 所有的键
-                .parallel()
-                // 若程序结束，则不用清理
-                .filter(k -> this.cacheUtil.isAlive())
-                .forEach(this::reclaim);
+    public PersistCache<K, V> checkpointPeriod(long period) {
+        this.checkpointPeriod = TimeUnit.MILLISECONDS.toNanos(period);
+        return this;
     }
 
     /**
-     * 尝试清理某个键
-     * @param key 键
+     * 日志中已失效, 等待整理的字节数
+     * @return 字节数
      */
-    private void reclaim(K key) {
-        if (!CacheUtil.alive(this.getExpire(key))) {
-            this.vanish(key);
-        }
+    public long deadBytes() {
+        return this.log.dead();
     }
 
     /**
-     * 遍历所有键值对
-     * @param action 遍历函数
+     * 开启负缓存, 加载函数返回 null 的键以哨兵存入, 存活期内带加载函数的读取直接返回 null, 不再调用加载函数
+     * 哨兵只保存在内存中, 不写入文件, 重启后失效
+     * @param alive 负缓存的存活毫秒数, 通常远短于正常值的存活时间, 为 0 时关闭
+     * @return 本实例
      */
-    public void forEach(BiConsumer<K, V> action) {
-        Stream.concat(this.expires.keySet().stream(), this.keys.stream())
-                .distinct()
-                .parallel()
-                .filter(this::has)
-                .forEach(k -> action.accept(k, get(k)));
+    public PersistCache<K, V> negative(long alive) {
+        if (alive < 0) {
+            throw new IllegalArgumentException("alive must not be negative");
+        }
+        this.negative = alive;
+        return this;
     }
 
-    /**
-     * 将所有缓存键值对数据变成流
-     * @return 流
-     */
-    public Stream<Map.Entry<K, V>> stream() {
-        return Stream.concat(this.expires.keySet().stream(), this.keys.stream())
-                .distinct()
-                .parallel()
-                .filter(this::has)
-                .map(k -> new Pair<>(k, get(k)));
+    @Override
+    public boolean isAbsent(K key) {
+        Node<K, V> node = this.nodes.get(key);
+        return null != node && node.alive(this.ticker.read()) && node.absent();
     }
 
-    /**
-     * 有效的缓存个数
-     * @return 缓存个数
-     */
-    public int size() {
-        return (int) Stream.concat(this.expires.keySet().stream(), this.keys.stream())
-                .distinct()
-                .map(this::getExpire)
-                .filter(CacheUtil::alive)
-                .count();
+    @Override
+    @SuppressWarnings("unchecked")
+    public void markAbsent(K key) {
+        long alive = this.negative;
+        if (alive <= 0) {
+            return;
+        }
+        Node<K, V> node = new Node<>(key, (V) Absent.INSTANCE, this.ticker.read() + alive);
+        Node<K, V> old = this.nodes.put(key, node);
+        if (null != old) {
+            this.wheel.deschedule(old);
+            this.notify(old, old.alive(this.ticker.read()) ? RemovalCause.REPLACED : RemovalCause.EXPIRED);
+            this.tombstone(old);
+        }
+        this.schedule(node);
     }
 
-
     // ------------------------------------------------
 
     /**
@@ -442,29 +1431,55 @@ public class PersistCache<K extends Serializable, V extends Serializable>
      * @param alias 缓存别名, 也是缓存路径下的下级文件夹名称
      */
     public PersistCache(String path, String alias) {
-        this(path, alias, null, CacheUtil.delay, CacheUtil.period);
+        this(path, alias, null, ReclaimSchedule.defaults());
     }
 
     /**
      * 构造器
      * @param alias 缓存别名, 也是缓存路径下的下级文件夹名称
-     * @param name 键转字符串函数
+     * @param name 键转字符串函数, 旧版本按键分文件存储时使用, 日志存储不再需要
      */
     public PersistCache(String alias, Function<K, String> name) {
-        this(".mime_cache", alias, name, CacheUtil.delay, CacheUtil.period);
+        this(".mime_cache", alias, name, ReclaimSchedule.defaults());
     }
 
     /**
      * 构造器
      * @param path 缓存路径
      * @param alias 缓存别名, 也是缓存路径下的下级文件夹名称
-     * @param name 键转字符串函数
+     * @param name 键转字符串函数, 旧版本按键分文件存储时使用, 日志存储不再需要
      * @param delay 清理任务延时时间，毫秒
      * @param period 清理任务周期，毫秒
      */
     public PersistCache(String path, String alias, Function<K, String> name, long delay, long period) {
+        this(path, alias, name, ReclaimSchedule.fixed(delay, period));
+    }
+
+    /**
+     * 构造器
+     * @param path 缓存路径
+     * @param alias 缓存别名, 也是缓存路径下的下级文件夹名称
+     * @param name 键转字符串函数, 旧版本按键分文件存储时使用, 日志存储不再需要
+     * @param schedule 整体回收的计划
+     */
+    public PersistCache(String path, String alias, Function<K, String> name, ReclaimSchedule schedule) {
+        this(path, alias, Codecs.defaults(), Codecs.defaults(), schedule);
+    }
+
+    /**
+     * 构造器, 指定键和值的编解码, 同一路径下的数据必须始终使用相同的编解码读写
+     * @param path 缓存路径
+     * @param alias 缓存别名, 也是缓存路径下的下级文件夹名称
+     * @param keyCodec 键的编解码
+     * @param valueCodec 值的编解码
+     * @param schedule 整体回收的计划
+     */
+    public PersistCache(String path, String alias, Codec<K> keyCodec, Codec<V> valueCodec, ReclaimSchedule schedule) {
         Objects.requireNonNull(path, "path");
         Objects.requireNonNull(alias, "alias");
+        Objects.requireNonNull(keyCodec, "key codec");
+        Objects.requireNonNull(valueCodec, "value codec");
+        Objects.requireNonNull(schedule, "schedule");
         path = path.trim() + "/" + alias.trim();
         File file = new File(path);
         if (!file.exists() && !file.mkdirs()) {
@@ -477,30 +1492,152 @@ public class PersistCache<K extends Serializable, V extends Serializable>
             throw new RuntimeException("dir '" + path + "' is used");
         }
 
-        cacheUtil = CacheUtil.getInstance(delay, period);
+        cacheUtil = CacheUtil.getInstance();
 
-        if (null != name) {
-            this.name = name;
-        }
         this.path = path;
-        String[] list = file.list();
-        if (null != list) {
-            Set<String> set = Arrays.stream(list).collect(Collectors.toSet());
-            for (String n : set) {
-                String nk = n + SUFFIX_KEY;
-                String ne = n + SUFFIX_EXPIRE;
-                if (set.contains(nk) && set.contains(ne)) {
-                    K key = PersistCache.read(path + "/" + nk);
-                    if (null != key) {
-                        this.keys.add(key);
-                    } else {
-                        this.delete(path + "/" + n);
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        try {
+            this.log = new LogStore(file, LogStore.SEGMENT_BYTES, m -> this.error.accept(m));
+        } catch (IOException e) {
+            throw new RuntimeException("open log in '" + path + "' fail", e);
+        }
+        this.recover();
+        this.migrate(file);
+        PATHS.add(path);
+        this.cacheUtil.add(this, schedule);
+    }
+
+    /**
+     * 重建索引时每个键序号最大的记录
+     */
+    private static final class Latest {
+        final long sequence;
+        final long address;
+        final int length;
+        final long expire;
+        final boolean tombstone;
+
+        Latest(long sequence, long address, int length, long expire, byte flags) {
+            this.sequence = sequence;
+            this.address = address;
+            this.length = length;
+            this.expire = expire;
+            this.tombstone = LogStore.TOMBSTONE == flags;
+        }
+    }
+
+    /**
+     * 重建索引, 先读入索引快照, 再并行扫描快照之后追加的记录; 快照不存在或已损坏时并行扫描全部日志
+     * 每个键以序号最大的记录为准, 墓碑和已过期的键不恢复, 其余记录计为失效, 值在首次读取时加载
+     */
+    private void recover() {
+        Map<K, Latest> map = new ConcurrentHashMap<>();
+        Map<Integer, Long> covered = this.restore(map);
+        this.log.scan(covered, (address, length, expire, sequence, flags, bytes) -> {
+            K key;
+            try {
+                key = this.keyCodec.decode(bytes, 0, bytes.length);
+            } catch (IOException e) {
+                this.error.accept("read key from " + this.path + " failed: " + e);
+                this.log.discard(address, length);
+                return;
+            }
+            map.merge(key, new Latest(sequence, address, length, expire, flags), (latest, found) -> {
+                if (latest.sequence < found.sequence || (latest.sequence == found.sequence && found.tombstone)) {
+                    // 整理中断时原记录和转成的墓碑同时存在, 序号相同, 以墓碑为准
+                    this.log.discard(latest.address, latest.length);
+                    return found;
+                }
+                this.log.discard(found.address, found.length);
+                return latest;
+            });
+        });
+        long now = this.ticker.read();
+        map.forEach((key, latest) -> {
+            if (!latest.tombstone && CacheUtil.alive(latest.expire, now)) {
+                Node<K, V> node = new LogNode<>(key, null, latest.expire, latest.address, latest.length);
+                this.nodes.put(key, node);
+                this.wheel.schedule(node);
+            } else {
+                this.log.discard(latest.address, latest.length);
+            }
+        });
+    }
+
+    /**
+     * 读入索引快照, 快照中的键以序号 0 放入, 检查点之后追加的记录都比它新
+     * 位置不在快照覆盖范围内的键忽略, 扫描时得到该记录
+     * @param map 每个键的最新记录
+     * @return 每个日志段已由快照覆盖的字节数, 快照不可用时为空, 需扫描全部日志
+     */
+    private Map<Integer, Long> restore(Map<K, Latest> map) {
+        File dir = new File(this.path);
+        HintFile hint;
+        try {
+            hint = HintFile.read(dir);
+        } catch (IOException e) {
+            this.error.accept("read hint of " + this.path + " failed, scan all segments: " + e);
+            return Collections.emptyMap();
+        }
+        if (null == hint) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Long> covered = this.log.restore(hint.marks, hint.sequence);
+        if (null == covered) {
+            this.error.accept("hint of " + this.path + " does not match segments, scan all segments");
+            return Collections.emptyMap();
+        }
+        hint.forEach((bytes, expire, address, length) -> {
+            Long size = covered.get(LogStore.segment(address));
+            if (null == size || size < LogStore.offset(address) + length) {
+                return;
+            }
+            try {
+                map.put(this.keyCodec.decode(bytes, 0, bytes.length), new Latest(0L, address, length, expire, (byte) 0));
+            } catch (IOException e) {
+                this.error.accept("read key from hint of " + this.path + " failed: " + e);
+                this.log.discard(address, length);
+            }
+        });
+        return covered;
+    }
+
+    /**
+     * 将旧版本按键分文件存储的数据追加到日志, 之后删除原文件
+     * @param dir 所在目录
+     */
+    private void migrate(File dir) {
+        String[] list = dir.list();
+        if (null == list) {
+            return;
+        }
+        Set<String> set = Arrays.stream(list).collect(Collectors.toSet());
+        for (String n : set) {
+            String nk = n + SUFFIX_KEY;
+            String ne = n + SUFFIX_EXPIRE;
+            if (set.contains(nk) && set.contains(ne)) {
+                String name = this.path + "/" + n;
+                K key = PersistCache.read(name + SUFFIX_KEY);
+                Long expire = PersistCache.read(name + SUFFIX_EXPIRE);
+                V value = PersistCache.read(name);
+                if (null != key && null != value && CacheUtil.alive(expire, this.ticker.read())) {
+                    Node<K, V> node = this.append(key, value, expire);
+                    if (node instanceof LogNode) {
+                        // 与重启后一致, 值在首次读取时加载
+                        LogNode<K, V> stored = (LogNode<K, V>) node;
+                        node = new LogNode<>(key, null, expire, stored.address, stored.length);
                     }
+                    Node<K, V> old = this.nodes.put(key, node);
+                    if (null != old) {
+                        this.wheel.deschedule(old);
+                        this.discard(old);
+                    }
+                    this.wheel.schedule(node);
                 }
+                PersistCache.delete(name);
             }
         }
-        PATHS.add(path);
-        this.cacheUtil.add(this);
     }
 
 
@@ -512,11 +1649,22 @@ public class PersistCache<K extends Serializable, V extends Serializable>
 
     @Override
     public boolean has(K key) {
-        return CacheUtil.alive(this.getExpire(key));
+        return null != this.getExpire(key);
     }
 
     @Override
     public V get(K key) {
+        V value = this.getValue(key);
+        if (null != value) {
+            this.stats.recordHits(1);
+        } else {
+            this.stats.recordMisses(1);
+        }
+        return value;
+    }
+
+    @Override
+    public V peek(K key) {
         return this.getValue(key);
     }
 
@@ -538,6 +1686,40 @@ public class PersistCache<K extends Serializable, V extends Serializable>
     }
 
 
+    /**
+     * 已读入内存的值直接返回, 其余的值在调用线程中读取文件
+     */
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> map = new HashMap<>();
+        for (K key : keys) {
+            V value = this.getValue(key);
+            if (null != value) {
+                map.put(key, value);
+            }
+        }
+        this.stats.recordHits(map.size());
+        this.stats.recordMisses(keys.size() - map.size());
+        return map;
+    }
+
+    /**
+     * 合并为一次追加写入文件
+     */
+    @Override
+    public void setAll(Map<? extends K, ? extends V> map) {
+        this.storeAll(map, -1L);
+    }
+
+    /**
+     * 墓碑合并为一次追加写入文件
+     */
+    @Override
+    public void removeAll(Collection<? extends K> keys) {
+        this.vanishAll(keys);
+    }
+
+
     @Override
     public void set(K key, V value, Instant expire) {
         this.store(key, value, expire.toEpochMilli());
@@ -545,54 +1727,42 @@ public class PersistCache<K extends Serializable, V extends Serializable>
 
     @Override
     public void set(K key, V value, long timeout, TimeUnit unit) {
-        this.store(key, value, CacheUtil.expire(timeout, unit));
+        this.store(key, value, CacheUtil.expire(this.ticker.read(), timeout, unit));
     }
 
     @Override
     public void set(K key, V value, long alive) {
-        this.store(key, value, CacheUtil.now() + alive);
+        this.store(key, value, this.ticker.read() + alive);
+    }
+
+    /**
+     * 合并为一次追加写入文件
+     */
+    @Override
+    public void setAll(Map<? extends K, ? extends V> map, long alive) {
+        this.storeAll(map, this.ticker.read() + alive);
     }
 
     @Override
     public boolean has(K key, Instant expire) {
-        boolean exist = this.has(key);
-        if (exist && this.keys.contains(key)) {
-            Long e = expire.toEpochMilli();
-            this.writeExpire(this.name(key), e);
-            this.expires.put(key, e);
-        }
-        return exist;
+        return null != this.touch(key, expire.toEpochMilli());
     }
 
     @Override
     public boolean has(K key, long timeout, TimeUnit unit) {
-        boolean exist = this.has(key);
-        if (exist && this.keys.contains(key)) {
-            Long e = CacheUtil.expire(timeout, unit);
-            this.writeExpire(this.name(key), e);
-            this.expires.put(key, e);
-        }
-        return exist;
+        return null != this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
     }
 
     @Override
     public boolean has(K key, long alive) {
-        boolean exist = this.has(key);
-        if (exist && this.keys.contains(key)) {
-            Long e = CacheUtil.now() + alive;
-            writeExpire(name(key), e);
-            expires.put(key, e);
-        }
-        return exist;
+        return null != this.touch(key, this.ticker.read() + alive);
     }
 
     @Override
     public V get(K key, Instant expire) {
         V value = this.get(key);
-        if (null != value && this.keys.contains(key)) {
-            Long e = expire.toEpochMilli();
-            this.writeExpire(name(key), e);
-            this.expires.put(key, e);
+        if (null != value) {
+            this.touch(key, expire.toEpochMilli());
         }
         return value;
     }
@@ -600,10 +1770,8 @@ public class PersistCache<K extends Serializable, V extends Serializable>
     @Override
     public V get(K key, long timeout, TimeUnit unit) {
         V value = this.get(key);
-        if (null != value && this.keys.contains(key)) {
-            Long e = CacheUtil.expire(timeout, unit);
-            this.writeExpire(this.name(key), e);
-            this.expires.put(key, e);
+        if (null != value) {
+            this.touch(key, CacheUtil.expire(this.ticker.read(), timeout, unit));
         }
         return value;
     }
@@ -611,10 +1779,8 @@ public class PersistCache<K extends Serializable, V extends Serializable>
     @Override
     public V get(K key, long alive) {
         V value = this.get(key);
-        if (null != value && this.keys.contains(key)) {
-            Long e = CacheUtil.now() + alive;
-            this.writeExpire(this.name(key), e);
-            this.expires.put(key, e);
+        if (null != value) {
+            this.touch(key, this.ticker.read() + alive);
         }
         return value;
     }
@@ -629,7 +1795,7 @@ public class PersistCache<K extends Serializable, V extends Serializable>
     @Override
     public long last(K key) {
         Long expire = this.getExpire(key);
-        return null != expire ? expire - CacheUtil.now() : 0;
+        return null != expire ? expire - this.ticker.read() : 0;
     }
 
 
@@ -0,0 +1,143 @@
+package dive.cache.mime;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 回收定时器的监控, 仅由回收线程记录
+ * @author dawn
+ */
+class ReclaimMonitor implements ReclaimerMXBean {
+
+    private static final double NANOS_PER_MILLI = 1000_000d;
+
+    /**
+     * 注册的缓存个数
+     */
+    private final IntSupplier caches;
+
+    private final LongAdder sweepCount = new LongAdder();
+
+    private volatile long lastSweepNanos;
+
+    private volatile long maxSweepNanos;
+
+    private final LongAdder totalSweepNanos = new LongAdder();
+
+    private volatile long lastSweepRemoved;
+
+    private final LongAdder sweepOverBudgetCount = new LongAdder();
+
+    private final LongAdder sampleRounds = new LongAdder();
+
+    private final LongAdder sampleOverBudgetRounds = new LongAdder();
+
+    private final LongAdder totalRemoved = new LongAdder();
+
+    ReclaimMonitor(IntSupplier caches) {
+        this.caches = caches;
+    }
+
+    /**
+     * 记录一次整体回收
+     * @param nanos 耗时, 纳秒
+     * @param removed 移除的键个数
+     * @param overBudget 是否因时间预算用完而留下未处理的部分
+     */
+    void swept(long nanos, long removed, boolean overBudget) {
+        this.sweepCount.increment();
+        if (overBudget) {
+            this.sweepOverBudgetCount.increment();
+        }
+        this.lastSweepNanos = nanos;
+        if (this.maxSweepNanos < nanos) {
+            this.maxSweepNanos = nanos;
+        }
+        this.totalSweepNanos.add(nanos);
+        this.lastSweepRemoved = removed;
+        this.totalRemoved.add(removed);
+    }
+
+    /**
+     * 记录一轮抽样回收
+     * @param removed 移除的键个数
+     * @param overBudget 是否因时间预算用完而结束
+     */
+    void sampled(long removed, boolean overBudget) {
+        this.sampleRounds.increment();
+        if (overBudget) {
+            this.sampleOverBudgetRounds.increment();
+        }
+        this.totalRemoved.add(removed);
+    }
+
+    /**
+     * 注册到指标库
+     * @param registry 指标库
+     */
+    void bind(MetricsRegistry registry) {
+        Map<String, String> tags = Collections.emptyMap();
+        registry.gauge("cache.reclaimer.caches", tags, this::getCacheCount);
+        registry.gauge("cache.reclaimer.sweeps", tags, this::getSweepCount);
+        registry.gauge("cache.reclaimer.sweep.last", tags, this::getLastSweepMillis);
+        registry.gauge("cache.reclaimer.sweep.max", tags, this::getMaxSweepMillis);
+        registry.gauge("cache.reclaimer.sweep.removed", tags, this::getLastSweepRemoved);
+        registry.gauge("cache.reclaimer.sweep.over.budget", tags, this::getSweepOverBudgetCount);
+        registry.gauge("cache.reclaimer.sample.rounds", tags, this::getSampleRounds);
+        registry.gauge("cache.reclaimer.sample.over.budget", tags, this::getSampleOverBudgetRounds);
+        registry.gauge("cache.reclaimer.removed", tags, this::getTotalRemoved);
+    }
+
+    @Override
+    public int getCacheCount() {
+        return this.caches.getAsInt();
+    }
+
+    @Override
+    public long getSweepCount() {
+        return this.sweepCount.sum();
+    }
+
+    @Override
+    public double getLastSweepMillis() {
+        return this.lastSweepNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxSweepMillis() {
+        return this.maxSweepNanos / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTotalSweepMillis() {
+        return this.totalSweepNanos.sum() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getLastSweepRemoved() {
+        return this.lastSweepRemoved;
+    }
+
+    @Override
+    public long getSweepOverBudgetCount() {
+        return this.sweepOverBudgetCount.sum();
+    }
+
+    @Override
+    public long getSampleRounds() {
+        return this.sampleRounds.sum();
+    }
+
+    @Override
+    public long getSampleOverBudgetRounds() {
+        return this.sampleOverBudgetRounds.sum();
+    }
+
+    @Override
+    public long getTotalRemoved() {
+        return this.totalRemoved.sum();
+    }
+
+}
@@ -0,0 +1,143 @@
+package dive.cache.mime;
+
+/**
+ * 单个缓存的整体回收计划, 不可变
+ * 固定周期的计划每次间隔相同; 自适应的计划在回收到较多过期键时缩短周期, 较少时延长周期
+ * @author dawn
+ */
+public final class ReclaimSchedule {
+
+    /**
+     * 过期键占比超过该百分比时缩短周期
+     */
+    private static final int SHORTEN = 10;
+
+    /**
+     * 过期键占比低于该百分比时延长周期
+     */
+    private static final int LENGTHEN = 1;
+
+    /**
+     * 默认计划
+     */
+    private static final ReclaimSchedule DEFAULT = fixed(CacheUtil.delay, CacheUtil.period);
+
+    /**
+     * 首次回收的延时，毫秒
+     */
+    private final long delay;
+
+    /**
+     * 初始周期，毫秒
+     */
+    private final long period;
+
+    /**
+     * 最短周期，毫秒
+     */
+    private final long minimum;
+
+    /**
+     * 最长周期，毫秒
+     */
+    private final long maximum;
+
+    private ReclaimSchedule(long delay, long period, long minimum, long maximum) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay must not be negative");
+        }
+        if (minimum <= 0 || period < minimum || maximum < period) {
+            throw new IllegalArgumentException("period must satisfy 0 < minimum <= period <= maximum");
+        }
+        this.delay = delay;
+        this.period = period;
+        this.minimum = minimum;
+        this.maximum = maximum;
+    }
+
+    /**
+     * 固定周期
+     * @param delay 首次回收的延时，毫秒
+     * @param period 周期，毫秒
+     * @return 计划
+     */
+    public static ReclaimSchedule fixed(long delay, long period) {
+        return new ReclaimSchedule(delay, period, period, period);
+    }
+
+    /**
+     * 自适应周期, 每次回收后按过期键的占比减半或加倍, 不超出给定范围
+     * @param delay 首次回收的延时，毫秒
+     * @param period 初始周期，毫秒
+     * @param minimum 最短周期，毫秒
+     * @param maximum 最长周期，毫秒
+     * @return 计划
+     */
+    public static ReclaimSchedule adaptive(long delay, long period, long minimum, long maximum) {
+        return new ReclaimSchedule(delay, period, minimum, maximum);
+    }
+
+    /**
+     * 默认计划, 延时3分钟, 每7分钟回收一次
+     * @return 计划
+     */
+    public static ReclaimSchedule defaults() {
+        return DEFAULT;
+    }
+
+    public long delay() {
+        return delay;
+    }
+
+    public long period() {
+        return period;
+    }
+
+    public long minimum() {
+        return minimum;
+    }
+
+    public long maximum() {
+        return maximum;
+    }
+
+    /**
+     * 是否自适应
+     * @return 最短和最长周期不同时为自适应
+     */
+    public boolean isAdaptive() {
+        return minimum != maximum;
+    }
+
+    /**
+     * 根据本次回收的结果计算下次的周期
+     * @param current 本次的周期，毫秒
+     * @param removed 本次移除的键个数
+     * @param entries 回收后剩余的键个数, 不支持统计时为负数
+     * @return 下次的周期，毫秒
+     */
+    long next(long current, int removed, long entries) {
+        if (!this.isAdaptive()) {
+            return this.period;
+        }
+        long total = removed + Math.max(0L, entries);
+        if (removed * 100L > total * SHORTEN) {
+            return Math.max(this.minimum, current / 2);
+        }
+        if (0 == removed || removed * 100L < total * LENGTHEN) {
+            return Math.min(this.maximum, current * 2);
+        }
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "ReclaimSchedule{" +
+                "delay=" + delay +
+                ", period=" + period +
+                ", minimum=" + minimum +
+                ", maximum=" + maximum +
+                '}';
+    }
+
+}
@@ -0,0 +1,20 @@
+package dive.cache.mime;
+
+/**
+ * 回收过期数据的方式
+ * @author dawn
+ */
+public enum ReclaimStrategy {
+
+    /**
+     * 按周期回收所有到期的数据
+     */
+    SWEEP,
+
+    /**
+     * 类似redis的主动过期, 每轮随机抽样少量会过期的键并移除已过期的,
+     * 过期比例高于阈值时继续抽样, 每轮有时间预算, 清理工作量与过期数据量成正比
+     */
+    SAMPLE,
+
+}
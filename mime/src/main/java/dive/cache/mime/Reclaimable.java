@@ -7,6 +7,56 @@ package dive.cache.mime;
 public interface Reclaimable {
     /**
      * 回收空间
+     * @return 移除的键个数
      */
-    void reclaim();
+    int reclaim();
+
+    /**
+     * 在时间预算内回收空间, 预算用完时让出线程, 未处理完的部分下次继续
+     * @param deadline 截止时刻, 取自 {@link System#nanoTime()}
+     * @return 移除的键个数
+     */
+    default int reclaim(long deadline) {
+        return reclaim();
+    }
+
+    /**
+     * 回收方式
+     * @return 回收方式
+     */
+    default ReclaimStrategy strategy() {
+        return ReclaimStrategy.SWEEP;
+    }
+
+    /**
+     * 抽样检查会过期的键, 移除其中已过期的
+     * 会过期的键不足时实际抽样的个数可能少于要求的个数
+     * @param count 样本个数
+     * @return 高 32 位为实际抽样的个数, 低 32 位为其中已过期的个数, 不支持抽样返回 -1
+     */
+    default long sample(int count) {
+        return -1L;
+    }
+
+    /**
+     * 名称, 用于监控
+     * @return 名称
+     */
+    default String name() {
+        return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * 程序结束时调用, 把只在内存中的状态写到磁盘, 不应耗时过长
+     */
+    default void shutdown() {
+    }
+
+    /**
+     * 有效的缓存个数, 用于监控
+     * @return 个数, 不支持返回 -1
+     */
+    default long entries() {
+        return -1;
+    }
 }
@@ -0,0 +1,83 @@
+package dive.cache.mime;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * 回收任务的配置入口
+ * 所有缓存共享一个定时器, 每个缓存按各自的 {@link ReclaimSchedule} 整体回收
+ * 整体回收默认在独立的守护线程池 mime-cache-reclaim-N 中执行, 不占用公共 ForkJoinPool
+ * 也可通过系统属性 dive.cache.mime.reclaim.parallelism 和 dive.cache.mime.reclaim.slice 设置初始值
+ * @author dawn
+ */
+public final class Reclaimer {
+
+    private Reclaimer() {}
+
+    /**
+     * 使用外部的线程池执行整体回收, 线程池的生命周期由调用方管理
+     * @param executor 线程池, 为 null 时恢复默认的线程池
+     */
+    public static void executor(Executor executor) {
+        CacheUtil.getInstance().executor(executor);
+    }
+
+    /**
+     * 设置整体回收的并行度, 即同时回收的缓存个数上限
+     * @param parallelism 并行度, 至少为 1
+     */
+    public static void parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        CacheUtil.getInstance().parallelism(parallelism);
+    }
+
+    /**
+     * 设置整体回收每次的时间预算, 用完后让出线程, 未处理完的缓存稍后继续
+     * @param millis 毫秒, 至少为 1
+     */
+    public static void slice(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("slice must be positive");
+        }
+        CacheUtil.slice = millis;
+    }
+
+    /**
+     * 修改缓存的回收计划, 立即按新计划重新开始
+     * @param cache 已创建的缓存
+     * @param schedule 计划
+     */
+    public static void schedule(Reclaimable cache, ReclaimSchedule schedule) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(schedule, "schedule");
+        CacheUtil.getInstance().schedule(cache, schedule);
+    }
+
+    /**
+     * 缓存当前的回收周期, 自适应计划下随回收结果变化
+     * @param cache 已创建的缓存
+     * @return 周期, 毫秒, 未注册返回 -1
+     */
+    public static long period(Reclaimable cache) {
+        return CacheUtil.getInstance().period(cache);
+    }
+
+    /**
+     * 关闭共享的定时器和默认的回收线程池, 已创建的缓存不再定时回收, 仍可手动调用 reclaim
+     * 之后创建缓存或调用本类的其他方法会重新启动, 已创建缓存的回收计划随之恢复
+     */
+    public static void close() {
+        CacheUtil.shutdown();
+    }
+
+    /**
+     * 共享的定时器是否在运行
+     * @return 是否运行
+     */
+    public static boolean isRunning() {
+        return CacheUtil.isStarted();
+    }
+
+}
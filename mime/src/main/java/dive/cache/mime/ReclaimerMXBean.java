@@ -0,0 +1,70 @@
+package dive.cache.mime;
+
+/**
+ * 回收定时器的监控指标, 注册为 JMX MBean: dive.cache.mime:type=Reclaimer
+ * 时间单位均为毫秒
+ * @author dawn
+ */
+public interface ReclaimerMXBean {
+
+    /**
+     * 注册的缓存个数
+     * @return 个数
+     */
+    int getCacheCount();
+
+    /**
+     * 整体回收的次数, 每个缓存每次回收计一次
+     * @return 次数
+     */
+    long getSweepCount();
+
+    /**
+     * 最近一次整体回收一个缓存的耗时
+     * @return 毫秒
+     */
+    double getLastSweepMillis();
+
+    /**
+     * 整体回收的最长耗时
+     * @return 毫秒
+     */
+    double getMaxSweepMillis();
+
+    /**
+     * 整体回收的总耗时
+     * @return 毫秒
+     */
+    double getTotalSweepMillis();
+
+    /**
+     * 最近一次整体回收移除的键个数
+     * @return 个数
+     */
+    long getLastSweepRemoved();
+
+    /**
+     * 因时间预算用完而分段进行的整体回收次数
+     * @return 次数
+     */
+    long getSweepOverBudgetCount();
+
+    /**
+     * 抽样回收的轮数
+     * @return 轮数
+     */
+    long getSampleRounds();
+
+    /**
+     * 因时间预算用完而提前结束的抽样轮数, 持续增长说明过期键堆积
+     * @return 轮数
+     */
+    long getSampleOverBudgetRounds();
+
+    /**
+     * 回收移除的键总数, 含抽样回收
+     * @return 个数
+     */
+    long getTotalRemoved();
+
+}
@@ -0,0 +1,92 @@
+package dive.cache.mime;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+/**
+ * 以软引用或弱引用持有值的节点, 值被垃圾回收后引用进入队列, 由回收任务移除节点
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class ReferenceNode<K, V> extends Node<K, V> {
+
+    /**
+     * 值的引用
+     */
+    private final Reference<V> reference;
+
+    /**
+     * 构造器
+     * @param key 键
+     * @param value 值
+     * @param expire 过期时间
+     * @param queue 值被回收后引用进入的队列
+     * @param weak 是否弱引用, 否则为软引用
+     */
+    ReferenceNode(K key, V value, long expire, ReferenceQueue<V> queue, boolean weak) {
+        super(key, null, expire);
+        this.reference = weak ? new WeakValue<>(value, queue, this) : new SoftValue<>(value, queue, this);
+    }
+
+    @Override
+    V value() {
+        return this.reference.get();
+    }
+
+    /**
+     * 由进入队列的引用找回节点
+     * @param <K> 键的类型
+     * @param <V> 值的类型
+     */
+    interface ValueReference<K, V> {
+
+        /**
+         * 引用所属的节点
+         * @return 节点
+         */
+        Node<K, V> node();
+
+    }
+
+    /**
+     * 软引用, 内存不足时才会被回收
+     */
+    static final class SoftValue<K, V> extends SoftReference<V> implements ValueReference<K, V> {
+
+        private final Node<K, V> node;
+
+        SoftValue(V value, ReferenceQueue<V> queue, Node<K, V> node) {
+            super(value, queue);
+            this.node = node;
+        }
+
+        @Override
+        public Node<K, V> node() {
+            return this.node;
+        }
+
+    }
+
+    /**
+     * 弱引用, 值没有其他强引用时即可被回收
+     */
+    static final class WeakValue<K, V> extends WeakReference<V> implements ValueReference<K, V> {
+
+        private final Node<K, V> node;
+
+        WeakValue(V value, ReferenceQueue<V> queue, Node<K, V> node) {
+            super(value, queue);
+            this.node = node;
+        }
+
+        @Override
+        public Node<K, V> node() {
+            return this.node;
+        }
+
+    }
+
+}
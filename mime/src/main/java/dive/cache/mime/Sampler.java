@@ -0,0 +1,65 @@
+package dive.cache.mime;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 抽样检查会过期的节点
+ * ConcurrentHashMap 不支持随机访问, 用跨轮次保留的游标依次抽样, 按哈希分布近似随机, 且最终覆盖所有节点
+ * 仅由回收线程使用
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class Sampler<K, V> {
+
+    /**
+     * 每个样本最多遍历的节点数, 避免永不过期的节点过多时遍历太久
+     */
+    private static final int VISITS = 10;
+
+    private final ConcurrentHashMap<K, Node<K, V>> nodes;
+
+    private Iterator<Node<K, V>> cursor;
+
+    Sampler(ConcurrentHashMap<K, Node<K, V>> nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * 抽样并移除已过期的节点
+     * @param count 样本个数
+     * @param now 当前时刻
+     * @param expire 移除过期节点
+     * @return 高 32 位为实际抽样的个数, 低 32 位为其中已过期的个数
+     */
+    long sample(int count, long now, Consumer<Node<K, V>> expire) {
+        int expired = 0;
+        int sampled = 0;
+        boolean restarted = false;
+        for (int visited = 0; sampled < count && visited < count * VISITS; visited++) {
+            if (null == this.cursor || !this.cursor.hasNext()) {
+                if (restarted) {
+                    break;
+                }
+                this.cursor = this.nodes.values().iterator();
+                restarted = true;
+                if (!this.cursor.hasNext()) {
+                    break;
+                }
+            }
+            Node<K, V> node = this.cursor.next();
+            if (node.expire < 0) {
+                continue;
+            }
+            sampled++;
+            if (!node.alive(now)) {
+                expire.accept(node);
+                expired++;
+            }
+        }
+        return (long) sampled << 32 | expired;
+    }
+
+}
@@ -0,0 +1,480 @@
+package dive.cache.mime;
+
+import dive.cache.common.Refresher;
+import dive.cache.common.RemovalListener;
+import dive.cache.common.StatsCounter;
+import dive.cache.common.TimeCache;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 一个用于缓存键值对数据的对象, 可以对键值对设置存活时间
+ * 按键的哈希分为多个互相独立的分片, 每个分片有自己的存储、时间轮和淘汰策略, 写入和清理只涉及所在的分片
+ * 回收时逐个分片进行, 抽样回收每次只处理游标所指的一个分片
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+public class ShardedMemoryCache<K, V> implements TimeCache<K, V>, Reclaimable {
+
+    /**
+     * 默认分片数
+     */
+    private static final int SHARDS = 16;
+
+    /**
+     * 定时器单例
+     */
+    private final CacheUtil cacheUtil;
+
+    /**
+     * 所有分片
+     */
+    private final MemoryCache<K, V>[] shards;
+
+    /**
+     * 分片数减一, 分片数为2的幂
+     */
+    private final int mask;
+
+    /**
+     * 回收方式
+     */
+    private volatile ReclaimStrategy strategy = ReclaimStrategy.SWEEP;
+
+    /**
+     * 提前刷新策略, 为 null 时不刷新
+     */
+    private volatile Refresher refresher;
+
+    /**
+     * 各分片共享的统计记录者
+     */
+    private volatile StatsCounter stats = StatsCounter.concurrent();
+
+    /**
+     * 抽样回收从该分片开始
+     */
+    private int cursor;
+
+    /**
+     * 整体回收从该分片开始, 时间预算用完时下次从未处理的分片继续
+     */
+    private int reclaimCursor;
+
+    /**
+     * 键所在的分片
+     * @param key 键
+     * @return 分片
+     */
+    private MemoryCache<K, V> shard(K key) {
+        // 乘法混淆后取高位, 避免低位相同的哈希集中在同一分片
+        int h = null == key ? 0 : key.hashCode() * 0x9E3779B9;
+        return this.shards[(h >>> 16) & this.mask];
+    }
+
+    /**
+     * 对每个分片执行
+     * @param action 操作
+     */
+    private void each(Consumer<MemoryCache<K, V>> action) {
+        for (MemoryCache<K, V> shard : this.shards) {
+            action.accept(shard);
+        }
+    }
+
+    @Override
+    public int reclaim() {
+        return this.reclaim(Long.MAX_VALUE);
+    }
+
+    /**
+     * 从游标处逐个分片回收, 时间预算用完时下次从未处理完的分片继续
+     */
+    @Override
+    public synchronized int reclaim(long deadline) {
+        // 若程序结束，则不用清理
+        if (!this.cacheUtil.isAlive()) {
+            return 0;
+        }
+        int removed = 0;
+        for (int i = 0; i < this.shards.length; i++) {
+            int index = (this.reclaimCursor + i) & this.mask;
+            removed += this.shards[index].reclaim(deadline);
+            if (deadline <= System.nanoTime()) {
+                // 该分片可能未处理完, 下次从它开始
+                this.reclaimCursor = index;
+                return removed;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public ReclaimStrategy strategy() {
+        return this.strategy;
+    }
+
+    @Override
+    public long sample(int count) {
+        int index = this.cursor;
+        this.cursor = (index + 1) % this.shards.length;
+        return this.shards[index].sample(count);
+    }
+
+    /**
+     * 设置时钟, 应在存入数据之前设置
+     * @param ticker 时钟
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> ticker(Ticker ticker) {
+        Objects.requireNonNull(ticker, "ticker");
+        this.each(s -> s.ticker(ticker));
+        return this;
+    }
+
+    /**
+     * 设置回收方式
+     * @param strategy 回收方式
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> strategy(ReclaimStrategy strategy) {
+        Objects.requireNonNull(strategy, "strategy");
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * 设置提前刷新策略, 带加载函数的读取命中即将过期的键时在后台重新加载
+     * @param refresher 刷新策略, 为 null 时不刷新
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> refresh(Refresher refresher) {
+        this.refresher = refresher;
+        return this;
+    }
+
+    @Override
+    public Refresher refresher() {
+        return this.refresher;
+    }
+
+    /**
+     * 开启或关闭统计, 关闭后读写路径上不再有任何统计开销
+     * @param enabled 是否记录
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> recordStats(boolean enabled) {
+        this.stats = enabled ? StatsCounter.concurrent() : StatsCounter.disabled();
+        this.each(s -> s.stats(this.stats));
+        return this;
+    }
+
+    @Override
+    public StatsCounter statsCounter() {
+        return this.stats;
+    }
+
+    /**
+     * 设置移除监听器, 各分片共享同一个异步通知
+     * @param listener 监听器, 为 null 时不再通知
+     * @return 本实例
+     * @see MemoryCache#removalListener(RemovalListener)
+     */
+    public ShardedMemoryCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener) {
+        RemovalListener<K, V> async = null == listener ? null : RemovalListener.async(listener);
+        this.each(s -> s.listener(async));
+        return this;
+    }
+
+    /**
+     * 设置移除监听器, 在给定的线程池中异步通知
+     * @param listener 监听器, 为 null 时不再通知
+     * @param executor 执行通知的线程池
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> removalListener(RemovalListener<? super K, ? super V> listener, Executor executor) {
+        RemovalListener<K, V> async = null == listener ? null : RemovalListener.async(listener, executor);
+        this.each(s -> s.listener(async));
+        return this;
+    }
+
+    /**
+     * 以软引用持有值, 需在存入数据之前设置
+     * @return 本实例
+     * @see MemoryCache#softValues()
+     */
+    public ShardedMemoryCache<K, V> softValues() {
+        this.each(MemoryCache::softValues);
+        return this;
+    }
+
+    /**
+     * 以弱引用持有值, 需在存入数据之前设置
+     * @return 本实例
+     * @see MemoryCache#weakValues()
+     */
+    public ShardedMemoryCache<K, V> weakValues() {
+        this.each(MemoryCache::weakValues);
+        return this;
+    }
+
+    /**
+     * 限制最大缓存个数, 平均分给各分片, 每个分片各自按 W-TinyLFU 策略淘汰, 需在存入数据之前设置
+     * @param maximum 最大个数
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> maximumSize(long maximum) {
+        long each = this.divide(maximum);
+        this.each(s -> s.maximumSize(each));
+        return this;
+    }
+
+    /**
+     * 限制最大总权重, 平均分给各分片, 每个分片各自按 W-TinyLFU 策略淘汰, 需在存入数据之前设置
+     * @param maximum 最大总权重
+     * @param weigher 权重计算
+     * @return 本实例
+     */
+    public ShardedMemoryCache<K, V> maximumWeight(long maximum, Weigher<? super K, ? super V> weigher) {
+        long each = this.divide(maximum);
+        this.each(s -> s.maximumWeight(each, weigher));
+        return this;
+    }
+
+    /**
+     * 开启负缓存, 各分片使用相同的存活时间
+     * @param alive 负缓存的存活毫秒数, 为 0 时关闭
+     * @return 本实例
+     * @see MemoryCache#negative(long)
+     */
+    public ShardedMemoryCache<K, V> negative(long alive) {
+        if (alive < 0) {
+            throw new IllegalArgumentException("alive must not be negative");
+        }
+        this.each(s -> s.negative(alive));
+        return this;
+    }
+
+    private long divide(long maximum) {
+        if (maximum < 0) {
+            throw new IllegalArgumentException("maximum must not be negative");
+        }
+        return (maximum + this.shards.length - 1) / this.shards.length;
+    }
+
+    /**
+     * 遍历所有键值对, 逐个分片进行
+     * @param action 遍历函数
+     */
+    public void forEach(BiConsumer<K, V> action) {
+        this.each(s -> s.forEach(action));
+    }
+
+    /**
+     * 将所有缓存键值对数据变成流
+     * @return 流
+     */
+    public Stream<Pair<K, V>> stream() {
+        return Arrays.stream(this.shards).flatMap(MemoryCache::stream);
+    }
+
+    /**
+     * 缓存个数, 各分片计数之和, 已过期但尚未回收的键也计算在内
+     * @return 缓存个数
+     */
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, this.entries());
+    }
+
+    /**
+     * 有效的缓存个数, 逐个判断是否过期
+     * @return 缓存个数
+     */
+    public int exactSize() {
+        int size = 0;
+        for (MemoryCache<K, V> shard : this.shards) {
+            size += shard.exactSize();
+        }
+        return size;
+    }
+
+    @Override
+    public long entries() {
+        long entries = 0;
+        for (MemoryCache<K, V> shard : this.shards) {
+            entries += shard.entries();
+        }
+        return entries;
+    }
+
+    /**
+     * 分片数
+     * @return 分片数
+     */
+    public int shards() {
+        return this.shards.length;
+    }
+
+    // 上面是基础方法 ------------------------------------------------
+
+    /**
+     * 构造器
+     * @param shards 分片数, 向上取整为2的幂
+     * @param delay 清理任务延时时间，毫秒
+     * @param period 清理任务周期，毫秒
+     */
+    public ShardedMemoryCache(int shards, long delay, long period) {
+        this(shards, ReclaimSchedule.fixed(delay, period));
+    }
+
+    /**
+     * 构造器
+     * @param shards 分片数, 向上取整为2的幂
+     */
+    public ShardedMemoryCache(int shards) {
+        this(shards, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 构造器
+     */
+    public ShardedMemoryCache() {
+        this(SHARDS, ReclaimSchedule.defaults());
+    }
+
+    /**
+     * 构造器
+     * @param shards 分片数, 向上取整为2的幂
+     * @param schedule 整体回收的计划
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardedMemoryCache(int shards, ReclaimSchedule schedule) {
+        Objects.requireNonNull(schedule, "schedule");
+        if (shards <= 0 || 1 << 16 < shards) {
+            throw new IllegalArgumentException("shards must be in [1, 65536]");
+        }
+        int count = 1 << -Integer.numberOfLeadingZeros(shards - 1);
+        this.shards = new MemoryCache[count];
+        this.mask = count - 1;
+        this.cacheUtil = CacheUtil.getInstance();
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new MemoryCache<K, V>(this.cacheUtil).stats(this.stats);
+        }
+        this.cacheUtil.add(this, schedule);
+    }
+
+
+    @Override
+    public void set(K key, V value) {
+        this.shard(key).set(key, value);
+    }
+
+    @Override
+    public boolean has(K key) {
+        return this.shard(key).has(key);
+    }
+
+    @Override
+    public V get(K key) {
+        return this.shard(key).get(key);
+    }
+
+    @Override
+    public V peek(K key) {
+        return this.shard(key).peek(key);
+    }
+
+    @Override
+    public V delete(K key) {
+        return this.shard(key).delete(key);
+    }
+
+    @Override
+    public void remove(K key) {
+        this.shard(key).remove(key);
+    }
+
+    @Override
+    public void clear() {
+        this.each(MemoryCache::clear);
+    }
+
+
+    @Override
+    public void set(K key, V value, Instant expire) {
+        this.shard(key).set(key, value, expire);
+    }
+
+    @Override
+    public void set(K key, V value, long timeout, TimeUnit unit) {
+        this.shard(key).set(key, value, timeout, unit);
+    }
+
+    @Override
+    public void set(K key, V value, long alive) {
+        this.shard(key).set(key, value, alive);
+    }
+
+
+    @Override
+    public boolean has(K key, Instant expire) {
+        return this.shard(key).has(key, expire);
+    }
+
+    @Override
+    public boolean has(K key, long timeout, TimeUnit unit) {
+        return this.shard(key).has(key, timeout, unit);
+    }
+
+    @Override
+    public boolean has(K key, long alive) {
+        return this.shard(key).has(key, alive);
+    }
+
+
+    @Override
+    public V get(K key, Instant expire) {
+        return this.shard(key).get(key, expire);
+    }
+
+    @Override
+    public V get(K key, long timeout, TimeUnit unit) {
+        return this.shard(key).get(key, timeout, unit);
+    }
+
+    @Override
+    public V get(K key, long alive) {
+        return this.shard(key).get(key, alive);
+    }
+
+
+    @Override
+    public boolean isAbsent(K key) {
+        return this.shard(key).isAbsent(key);
+    }
+
+    @Override
+    public void markAbsent(K key) {
+        this.shard(key).markAbsent(key);
+    }
+
+
+    @Override
+    public long expire(K key) {
+        return this.shard(key).expire(key);
+    }
+
+    @Override
+    public long last(K key) {
+        return this.shard(key).last(key);
+    }
+
+}
@@ -0,0 +1,178 @@
+package dive.cache.mime;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 堆外内存的slab分配器, 内存按固定大小的页(直接内存 ByteBuffer)申请, 每页只切分同一种大小的块
+ * 块大小从64字节起按1.25倍递增, 释放的块挂在对应大小的空闲链表上, 链表指针写在块的前8个字节, 不占用堆
+ * 地址为 页序号(从1开始) << 32 | 页内偏移, 0 表示空
+ * 非线程安全, 由调用方加锁
+ * @author dawn
+ */
+class SlabAllocator {
+
+    /**
+     * 最小的块
+     */
+    private static final int MINIMUM_CHUNK = 64;
+
+    /**
+     * 块大小增长因子
+     */
+    private static final double FACTOR = 1.25d;
+
+    /**
+     * 每页字节数
+     */
+    private final int slabSize;
+
+    /**
+     * 最多申请的页数
+     */
+    private final int maximumSlabs;
+
+    /**
+     * 各级块大小
+     */
+    private final int[] chunks;
+
+    /**
+     * 各级块的空闲链表头
+     */
+    private final long[] frees;
+
+    /**
+     * 各级块当前切分的页和偏移, 地址形式
+     */
+    private final long[] cursors;
+
+    /**
+     * 所有页, 下标0不使用
+     */
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    /**
+     * 构造器
+     * @param slabSize 每页字节数
+     * @param capacity 最多使用的字节数, 不少于一页, 按整页向下取整
+     */
+    SlabAllocator(int slabSize, long capacity) {
+        if (slabSize < MINIMUM_CHUNK) {
+            throw new IllegalArgumentException("slab size must not be less than " + MINIMUM_CHUNK);
+        }
+        if (capacity < slabSize) {
+            throw new IllegalArgumentException("capacity must not be less than slab size");
+        }
+        this.slabSize = slabSize;
+        this.maximumSlabs = (int) Math.min(Integer.MAX_VALUE - 1, capacity / slabSize);
+        List<Integer> sizes = new ArrayList<>();
+        double size = MINIMUM_CHUNK;
+        while (size < slabSize) {
+            int chunk = ((int) Math.ceil(size) + 7) & ~7;
+            if (chunk >= slabSize) {
+                break;
+            }
+            sizes.add(chunk);
+            size = chunk * FACTOR;
+        }
+        sizes.add(slabSize);
+        this.chunks = sizes.stream().mapToInt(Integer::intValue).toArray();
+        this.frees = new long[this.chunks.length];
+        this.cursors = new long[this.chunks.length];
+        this.slabs.add(null);
+    }
+
+    /**
+     * 能容纳给定字节数的最小块的级别
+     * @param size 字节数
+     * @return 级别, 超过页大小返回 -1
+     */
+    int level(int size) {
+        for (int i = 0; i < this.chunks.length; i++) {
+            if (size <= this.chunks[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 分配一块内存
+     * @param size 字节数
+     * @return 地址, 内存不足返回 0
+     */
+    long allocate(int size) {
+        int level = this.level(size);
+        if (level < 0) {
+            return 0;
+        }
+        long address = this.frees[level];
+        if (0 != address) {
+            this.frees[level] = this.buffer(address).getLong(offset(address));
+            return address;
+        }
+        int chunk = this.chunks[level];
+        address = this.cursors[level];
+        if (0 == address || offset(address) + chunk > this.slabSize) {
+            if (this.slabs.size() > this.maximumSlabs) {
+                return 0;
+            }
+            this.slabs.add(ByteBuffer.allocateDirect(this.slabSize));
+            address = ((long) (this.slabs.size() - 1)) << 32;
+        }
+        this.cursors[level] = address + chunk;
+        return address;
+    }
+
+    /**
+     * 释放内存
+     * @param address 地址
+     * @param size 分配时的字节数
+     */
+    void free(long address, int size) {
+        int level = this.level(size);
+        this.buffer(address).putLong(offset(address), this.frees[level]);
+        this.frees[level] = address;
+    }
+
+    /**
+     * 释放所有页
+     */
+    void clear() {
+        this.slabs.clear();
+        this.slabs.add(null);
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.frees[i] = 0;
+            this.cursors[i] = 0;
+        }
+    }
+
+    /**
+     * 地址所在的页
+     * @param address 地址
+     * @return 页
+     */
+    ByteBuffer buffer(long address) {
+        return this.slabs.get((int) (address >>> 32));
+    }
+
+    /**
+     * 地址在页内的偏移
+     * @param address 地址
+     * @return 偏移
+     */
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * 已申请的堆外内存字节数
+     * @return 字节数
+     */
+    long allocated() {
+        return (long) (this.slabs.size() - 1) * this.slabSize;
+    }
+
+}
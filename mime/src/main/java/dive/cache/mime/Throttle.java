@@ -0,0 +1,59 @@
+package dive.cache.mime;
+
+/**
+ * 按字节数限速的令牌桶, 最多积攒一秒的额度
+ * 仅由单个线程使用
+ * @author dawn
+ */
+class Throttle {
+
+    /**
+     * 每秒字节数, 不大于 0 时不限速
+     */
+    private volatile long rate;
+
+    /**
+     * 剩余额度, 为负时需等待
+     */
+    private long available;
+
+    /**
+     * 上次补充额度的时刻, 纳秒
+     */
+    private long last = System.nanoTime();
+
+    Throttle(long rate) {
+        this.rate = rate;
+    }
+
+    void rate(long rate) {
+        this.rate = rate;
+    }
+
+    long rate() {
+        return this.rate;
+    }
+
+    /**
+     * 消耗额度, 不足时睡眠到补足为止
+     * @param bytes 字节数
+     * @throws InterruptedException 等待时被中断
+     */
+    void acquire(long bytes) throws InterruptedException {
+        long r = this.rate;
+        if (r <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        // 最多积攒一秒, 也避免长时间空闲后乘法溢出
+        long elapsed = Math.min(now - this.last, 1_000_000_000L);
+        this.available = Math.min(r, this.available + elapsed * r / 1_000_000_000L);
+        this.last = now;
+        this.available -= bytes;
+        if (this.available < 0) {
+            long nanos = -this.available * 1_000_000_000L / r;
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        }
+    }
+
+}
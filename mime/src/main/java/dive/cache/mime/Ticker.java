@@ -0,0 +1,32 @@
+package dive.cache.mime;
+
+/**
+ * 时钟, 缓存用它判断过期, 读数为毫秒时间戳
+ * @author dawn
+ */
+@FunctionalInterface
+public interface Ticker {
+
+    /**
+     * 当前时刻
+     * @return 毫秒时间戳
+     */
+    long read();
+
+    /**
+     * 系统时钟, 每次读取调用 System.currentTimeMillis()
+     * @return 系统时钟
+     */
+    static Ticker system() {
+        return System::currentTimeMillis;
+    }
+
+    /**
+     * 共享的粗粒度时钟, 后台线程每10毫秒更新一次, 读取只是一次volatile读
+     * @return 粗粒度时钟
+     */
+    static Ticker coarse() {
+        return CoarseTicker.Holder.INSTANCE;
+    }
+
+}
@@ -0,0 +1,227 @@
+package dive.cache.mime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分层时间轮, 按过期时间戳把节点挂到对应的时间槽, 推进时只处理到期的时间槽
+ * 层级跨度约为 1秒, 1分钟, 1小时, 1.5天, 其余放入溢出槽
+ * 到期槽中尚未过期的节点(过期时间被延长)会重新放入对应的槽
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+class TimerWheel<K, V> {
+
+    /**
+     * 每层每个时间槽的跨度, 毫秒, 均为2的幂
+     */
+    private static final long[] SPANS = {
+            1L << 10, // 1.02秒
+            1L << 16, // 1.09分钟
+            1L << 22, // 1.17小时
+            1L << 27, // 1.55天
+            1L << 31, // 24.86天
+    };
+
+    private static final long[] SHIFT = {10, 16, 22, 27, 31};
+
+    /**
+     * 每层的时间槽个数, 每层总跨度即下一层的单槽跨度, 最后一层为溢出槽
+     */
+    private static final int[] BUCKETS = {64, 64, 32, 16, 1};
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 时间槽, 每个槽是以哨兵节点为头的双向循环链表
+     */
+    private final Node<K, V>[][] wheel;
+
+    /**
+     * 上次推进的时刻
+     */
+    private volatile long time;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimerWheel(long now) {
+        this.time = now;
+        this.wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            this.wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Node<K, V> sentinel = new Node<>(null, null, 0);
+                sentinel.previousInTime = sentinel;
+                sentinel.nextInTime = sentinel;
+                this.wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * 放入时间轮, 永不过期的节点不放入
+     * @param node 节点
+     */
+    void schedule(Node<K, V> node) {
+        this.lock.lock();
+        try {
+            this.link(node);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 从时间轮中移除
+     * @param node 节点
+     */
+    void deschedule(Node<K, V> node) {
+        this.lock.lock();
+        try {
+            this.unlink(node);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 推进时间轮, 取出所有已过期的节点
+     * @param now 当前时刻
+     * @return 已过期的节点, 已从时间轮中移除
+     */
+    List<Node<K, V>> advance(long now) {
+        this.lock.lock();
+        try {
+            long previous = this.time;
+            if (now <= previous) {
+                return Collections.emptyList();
+            }
+            this.time = now;
+            List<Node<K, V>> expired = new ArrayList<>();
+            for (int i = 0; i < SHIFT.length; i++) {
+                long previousTicks = previous >>> SHIFT[i];
+                long currentTicks = now >>> SHIFT[i];
+                if (currentTicks <= previousTicks) {
+                    break;
+                }
+                this.expire(i, previousTicks, currentTicks - previousTicks, now, expired);
+            }
+            return expired;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 清空时间轮, 并从给定时刻重新开始
+     * @param now 当前时刻
+     */
+    void reset(long now) {
+        this.lock.lock();
+        try {
+            this.clear();
+            this.time = now;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 清空时间轮
+     */
+    void clear() {
+        this.lock.lock();
+        try {
+            for (Node<K, V>[] buckets : this.wheel) {
+                for (Node<K, V> sentinel : buckets) {
+                    Node<K, V> node = sentinel.nextInTime;
+                    while (node != sentinel) {
+                        Node<K, V> next = node.nextInTime;
+                        node.previousInTime = null;
+                        node.nextInTime = null;
+                        node = next;
+                    }
+                    sentinel.previousInTime = sentinel;
+                    sentinel.nextInTime = sentinel;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 处理一层中经过的时间槽
+     * @param level 层
+     * @param previousTicks 上次推进时该层的刻度
+     * @param delta 经过的刻度数
+     * @param now 当前时刻
+     * @param expired 收集过期节点
+     */
+    private void expire(int level, long previousTicks, long delta, long now, List<Node<K, V>> expired) {
+        Node<K, V>[] buckets = this.wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node<K, V> sentinel = buckets[i & mask];
+            Node<K, V> node = sentinel.nextInTime;
+            sentinel.previousInTime = sentinel;
+            sentinel.nextInTime = sentinel;
+            while (node != sentinel) {
+                Node<K, V> next = node.nextInTime;
+                node.previousInTime = null;
+                node.nextInTime = null;
+                if (!node.alive(now)) {
+                    expired.add(node);
+                } else {
+                    // 过期时间被更新过, 重新放入
+                    this.link(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * 按过期时间挂入对应的时间槽
+     * @param node 节点
+     */
+    private void link(Node<K, V> node) {
+        long expire = node.expire;
+        if (expire < 0) {
+            return;
+        }
+        if (null != node.nextInTime) {
+            this.unlink(node);
+        }
+        long time = Math.max(expire, this.time);
+        long duration = time - this.time;
+        Node<K, V> sentinel = this.wheel[BUCKETS.length - 1][0];
+        for (int i = 0; i < BUCKETS.length - 1; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFT[i];
+                sentinel = this.wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+                break;
+            }
+        }
+        node.nextInTime = sentinel;
+        node.previousInTime = sentinel.previousInTime;
+        sentinel.previousInTime.nextInTime = node;
+        sentinel.previousInTime = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        Node<K, V> next = node.nextInTime;
+        if (null != next) {
+            Node<K, V> previous = node.previousInTime;
+            next.previousInTime = previous;
+            previous.nextInTime = next;
+            node.previousInTime = null;
+            node.nextInTime = null;
+        }
+    }
+
+}
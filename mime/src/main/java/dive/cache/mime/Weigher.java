@@ -0,0 +1,20 @@
+package dive.cache.mime;
+
+/**
+ * 计算键值对的权重, 用于按总权重限制缓存大小
+ * @author dawn
+ * @param <K> 键的类型
+ * @param <V> 值的类型
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * 计算权重
+     * @param key 键
+     * @param value 值
+     * @return 权重, 不能为负数
+     */
+    int weigh(K key, V value);
+
+}
@@ -1,53 +1,86 @@
 package test.cache.mime;
 
+import dive.cache.mime.CacheMetrics;
+import dive.cache.mime.Codec;
+import dive.cache.mime.Codecs;
+import dive.cache.mime.FakeTicker;
+import dive.cache.mime.LongKeyMemoryCache;
 import dive.cache.mime.MemoryCache;
+import dive.cache.mime.OffHeapMemoryCache;
 import dive.cache.mime.PersistCache;
+import dive.cache.mime.ReclaimSchedule;
+import dive.cache.mime.ReclaimStrategy;
+import dive.cache.mime.Reclaimer;
+import dive.cache.mime.ShardedMemoryCache;
+import dive.cache.common.AsyncTimeCache;
+import dive.cache.common.CacheStats;
+import dive.cache.common.Refresher;
+import dive.cache.common.RemovalCause;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
 public class MimeTest {
 
-//    @Autowired
-    private UniqueMemoryCache cache;
-//    @Autowired
-    private UniquePersistCache persistCache;
-
     @Test
-    public void test() throws InterruptedException {
+    public void test() {
+        FakeTicker ticker = new FakeTicker();
+        UniqueMemoryCache cache = new UniqueMemoryCache();
+        cache.ticker(ticker);
         Unique unique1 = new Unique(1L, "1", "1");
         cache.clear();
 
         Assert.assertFalse(cache.has(1));
         cache.set(1, unique1, 50L);
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertTrue(cache.has(1));
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertFalse(cache.has(1));
 
         cache.set(1, unique1, 50L);
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertTrue(cache.has(1, 50L));
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertTrue(cache.has(1));
 
         cache.set(1, unique1, 50L);
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertEquals(unique1, cache.get(1));
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertNull(cache.get(1));
 
         cache.set(1, unique1, 50L);
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertEquals(unique1, cache.get(1, 50L));
-        Thread.sleep(30L);
+        ticker.advance(30L);
         Assert.assertEquals(unique1, cache.get(1));
 
         cache.set(1, unique1, 300L);
@@ -59,34 +92,36 @@ public class MimeTest {
     }
 
     @Test
-    public void test2() throws InterruptedException {
-        UniquePersistCache cache = persistCache;
+    public void test2() {
+        FakeTicker ticker = new FakeTicker();
+        UniquePersistCache cache = new UniquePersistCache();
+        cache.ticker(ticker);
         Unique unique1 = new Unique(1L, "1", "1");
         cache.clear();
 
         Assert.assertFalse(cache.has(1));
         cache.set(1, unique1, 500L);
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertTrue(cache.has(1));
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertFalse(cache.has(1));
 
         cache.set(1, unique1, 500L);
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertTrue(cache.has(1, 500L));
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertTrue(cache.has(1));
 
         cache.set(1, unique1, 500L);
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertEquals(unique1, cache.get(1));
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertNull(cache.get(1));
 
         cache.set(1, unique1, 500L);
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertEquals(unique1, cache.get(1, 500L));
-        Thread.sleep(300L);
+        ticker.advance(300L);
         Assert.assertEquals(unique1, cache.get(1));
 
         cache.set(1, unique1, 3000L);
@@ -97,7 +132,7 @@ public class MimeTest {
 
         cache.set(1, unique1, 3000L);
         cache.persist(1);
-        Thread.sleep(1000L);
+        ticker.advance(1000L);
         Assert.assertTrue(cache.has(1));
         cache.delete(1);
         Assert.assertFalse(cache.has(1));
@@ -145,4 +180,1070 @@ public class MimeTest {
         }
     }
 
+    @Test
+    public void test5() {
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().maximumSize(100);
+        Unique unique = new Unique(1L, "1", "1");
+
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, unique);
+        }
+        // 热点数据
+        for (int j = 0; j < 20; j++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get(i);
+            }
+        }
+        // 扫描
+        for (int i = 100; i < 10000; i++) {
+            cache.set(i, unique);
+        }
+        Assert.assertTrue(cache.size() <= 100);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(cache.has(i));
+        }
+    }
+
+    @Test
+    public void test6() {
+        FakeTicker ticker = new FakeTicker();
+        LongKeyMemoryCache<Unique> cache = new LongKeyMemoryCache<Unique>().ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+
+        for (long i = 0; i < 10000; i++) {
+            cache.set(i, unique, i % 2 == 0 ? 50L : -1L);
+        }
+        Assert.assertEquals(10000, cache.size());
+        ticker.advance(60L);
+        cache.reclaim();
+        Assert.assertEquals(5000, cache.size());
+        for (long i = 0; i < 10000; i++) {
+            Assert.assertEquals(i % 2 == 1, cache.has(i));
+        }
+
+        Assert.assertEquals(unique, cache.delete(1L));
+        Assert.assertNull(cache.get(1L));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test7() {
+        FakeTicker ticker = new FakeTicker();
+        OffHeapMemoryCache<Integer, Unique> cache = new OffHeapMemoryCache<Integer, Unique>(1 << 26).ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+
+        for (int i = 0; i < 10000; i++) {
+            cache.set(i, unique, i % 2 == 0 ? 50L : -1L);
+        }
+        Assert.assertEquals(unique, cache.get(1));
+        ticker.advance(60L);
+        cache.reclaim();
+        Assert.assertEquals(5000, cache.size());
+        Assert.assertNull(cache.get(0));
+
+        Assert.assertTrue(cache.has(1, 50L));
+        ticker.advance(60L);
+        Assert.assertFalse(cache.has(1));
+        Assert.assertEquals(unique, cache.delete(3));
+        Assert.assertFalse(cache.has(3));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+
+        // 容量不足每段一页时拒绝创建
+        try {
+            new OffHeapMemoryCache<Integer, Unique>(1 << 20);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void test8() throws Exception {
+        MemoryCache<Integer, Unique> cache = new MemoryCache<>();
+        Unique unique = new Unique(1L, "1", "1");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        Future<?>[] futures = new Future<?>[16];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = executor.submit(() -> {
+                start.await();
+                return cache.get(1, () -> {
+                    loads.incrementAndGet();
+                    try {
+                        Thread.sleep(100L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return unique;
+                }, 1000L);
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            Assert.assertEquals(unique, future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, loads.get());
+
+        try {
+            cache.computeIfAbsent(2, k -> cache.computeIfAbsent(2, kk -> unique));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertFalse(cache.has(2));
+        }
+    }
+
+    @Test
+    public void test9() throws Exception {
+        PersistCache<Integer, Unique> persist = new PersistCache<>(".mime_cache", "async" + System.nanoTime(), null, 100000, 100000);
+        AsyncTimeCache<Integer, Unique> cache = persist.async();
+        Unique unique = new Unique(1L, "1", "1");
+
+        cache.set(1, unique, 1000L).get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(cache.has(1).get());
+        Assert.assertEquals(unique, cache.get(1).get(5, TimeUnit.SECONDS));
+        Assert.assertNull(cache.get(2).get(5, TimeUnit.SECONDS));
+
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Unique> pending = new CompletableFuture<>();
+        CompletableFuture<Unique> first = cache.get(3, k -> {
+            loads.incrementAndGet();
+            return pending;
+        }, 1000L);
+        CompletableFuture<Unique> second = cache.get(3, k -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(unique);
+        }, 1000L);
+        pending.complete(unique);
+        Assert.assertEquals(unique, first.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(unique, second.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertTrue(persist.has(3));
+
+        Assert.assertEquals(unique, cache.delete(1).get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(cache.has(1).get());
+        cache.clear().get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(0, persist.size());
+    }
+
+    @Test
+    public void test10() {
+        FakeTicker ticker = new FakeTicker();
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>()
+                .refresh(new Refresher(0.2d, Runnable::run));
+        cache.ticker(ticker);
+        AtomicInteger loads = new AtomicInteger();
+
+        Unique first = cache.get(1, () -> new Unique((long) loads.incrementAndGet(), "1", "1"), 1000L);
+        Assert.assertEquals(1, loads.get());
+        ticker.advance(500L);
+        Assert.assertEquals(first, cache.get(1, () -> new Unique((long) loads.incrementAndGet(), "1", "1"), 1000L));
+        Assert.assertEquals(1, loads.get());
+
+        // 进入最后 20% 的存活时间, 返回旧值并刷新
+        ticker.advance(350L);
+        Assert.assertEquals(first, cache.get(1, () -> new Unique((long) loads.incrementAndGet(), "1", "1"), 1000L));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1000L, cache.last(1));
+        Assert.assertEquals(new Unique(2L, "1", "1"), cache.get(1));
+    }
+
+    @Test
+    public void test11() {
+        String alias = "bulk" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<>(".mime_cache", alias, null, 100000, 100000);
+        Map<Integer, Unique> map = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            map.put(i, new Unique((long) i, "1", "1"));
+        }
+        cache.setAll(map, 100000L);
+        cache.setAll(new HashMap<>(map));
+        Assert.assertEquals(20, cache.size());
+        Assert.assertEquals(-1L, cache.expire(3));
+
+        Map<Integer, Unique> all = cache.getAll(Arrays.asList(1, 2, 3, 100));
+        Assert.assertEquals(3, all.size());
+        Assert.assertEquals(map.get(2), all.get(2));
+        Assert.assertFalse(all.containsKey(100));
+
+        cache.removeAll(Arrays.asList(1, 2));
+        Assert.assertFalse(cache.has(1));
+        Assert.assertEquals(18, cache.size());
+
+        MemoryCache<Integer, Unique> memory = new MemoryCache<>();
+        memory.setAll(map, 1000L);
+        Assert.assertEquals(20, memory.getAll(map.keySet()).size());
+        memory.removeAll(map.keySet());
+        Assert.assertEquals(0, memory.size());
+        cache.clear();
+    }
+
+    @Test
+    public void test12() {
+        FakeTicker ticker = new FakeTicker();
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().maximumSize(10);
+        cache.ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+
+        cache.set(1, unique, 50L);
+        Assert.assertEquals(unique, cache.get(1));
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals(unique, cache.get(3, () -> unique));
+        ticker.advance(2000L);
+        cache.reclaim();
+        for (int i = 100; i < 120; i++) {
+            cache.set(i, unique);
+        }
+
+        CacheStats stats = cache.stats();
+        Assert.assertEquals(1, stats.hitCount());
+        Assert.assertEquals(2, stats.missCount());
+        Assert.assertEquals(1, stats.loadSuccessCount());
+        Assert.assertEquals(1, stats.expirationCount());
+        Assert.assertTrue(stats.evictionCount() >= 10);
+        Assert.assertEquals(1d / 3, stats.hitRate(), 0.0001d);
+
+        cache.recordStats(false);
+        cache.get(1);
+        Assert.assertEquals(CacheStats.empty(), cache.stats());
+    }
+
+    @Test
+    public void test13() throws Exception {
+        String alias = "jmx" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<>(".mime_cache", alias, null, 100000, 100000);
+        Unique unique = new Unique(1L, "1", "1");
+        cache.set(1, unique);
+        cache.get(1);
+        cache.get(2);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("dive.cache.mime:type=Cache,name=" + ObjectName.quote(cache.name()));
+        Assert.assertEquals(1L, server.getAttribute(name, "EntryCount"));
+        Assert.assertEquals(0.5d, (Double) server.getAttribute(name, "HitRatio"), 0.0001d);
+        Assert.assertTrue((Long) server.getAttribute(name, "BytesOnDisk") > 0);
+        Assert.assertTrue(server.isRegistered(new ObjectName("dive.cache.mime:type=Reclaimer")));
+
+        Map<String, Number> gauges = new HashMap<>();
+        CacheMetrics.bind((metric, tags, value) -> {
+            if (cache.name().equals(tags.get("cache"))) {
+                gauges.put(metric, value.get());
+            }
+        });
+        Assert.assertEquals(1L, gauges.get("cache.entries"));
+        Assert.assertEquals(1L, gauges.get("cache.hits"));
+        cache.clear();
+    }
+
+    @Test
+    public void test14() throws Exception {
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().weakValues();
+        Unique unique = new Unique(1L, "1", "1");
+        cache.set(1, unique);
+        cache.set(2, new Unique(2L, "2", "2"));
+        for (int i = 0; i < 10 && cache.reclaim() == 0; i++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(unique, cache.get(1));
+        Assert.assertFalse(cache.has(2));
+        Assert.assertEquals(1, cache.stats().evictionCount());
+
+        MemoryCache<Integer, Unique> soft = new MemoryCache<Integer, Unique>().softValues();
+        soft.set(1, unique);
+        Assert.assertEquals(unique, soft.get(1));
+        try {
+            soft.weakValues();
+            Assert.fail();
+        } catch (IllegalStateException ignored) {
+        }
+        cache.clear();
+        soft.clear();
+    }
+
+    @Test
+    public void test15() {
+        FakeTicker ticker = new FakeTicker();
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, unique, i % 2 == 0 ? 50L : -1L);
+        }
+        cache.set(1, unique);
+        Assert.assertEquals(100, cache.size());
+        ticker.advance(2000L);
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(50, cache.exactSize());
+        cache.reclaim();
+        Assert.assertEquals(50, cache.size());
+        cache.remove(1);
+        Assert.assertEquals(49, cache.size());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test16() {
+        FakeTicker ticker = new FakeTicker();
+        ShardedMemoryCache<Integer, Unique> cache = new ShardedMemoryCache<Integer, Unique>(5).ticker(ticker);
+        Assert.assertEquals(8, cache.shards());
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 1000; i++) {
+            cache.set(i, unique, i % 2 == 0 ? 50L : -1L);
+        }
+        Assert.assertEquals(1000, cache.size());
+        Assert.assertEquals(unique, cache.get(1));
+        ticker.advance(2000L);
+        Assert.assertNull(cache.get(0));
+        Assert.assertEquals(500, cache.reclaim());
+        Assert.assertEquals(500, cache.size());
+        Assert.assertEquals(500, cache.stream().count());
+        Assert.assertEquals(500, cache.stats().expirationCount());
+        Assert.assertEquals(unique, cache.delete(1));
+        Assert.assertFalse(cache.has(1));
+
+        ShardedMemoryCache<Integer, Unique> bounded = new ShardedMemoryCache<Integer, Unique>(4).maximumSize(100);
+        for (int i = 0; i < 1000; i++) {
+            bounded.set(i, unique);
+        }
+        Assert.assertTrue(bounded.size() <= 100);
+        cache.clear();
+        bounded.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test17() {
+        FakeTicker ticker = new FakeTicker();
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 10000; i++) {
+            cache.set(i, unique, 50L);
+        }
+        ticker.advance(2000L);
+        // 时间预算已用完, 只处理一小段
+        int removed = cache.reclaim(System.nanoTime());
+        Assert.assertTrue(0 < removed && removed < 10000);
+        Assert.assertEquals(10000 - removed, cache.reclaim());
+        Assert.assertEquals(0, cache.size());
+
+        ShardedMemoryCache<Integer, Unique> sharded = new ShardedMemoryCache<Integer, Unique>(4).ticker(ticker);
+        for (int i = 0; i < 10000; i++) {
+            sharded.set(i, unique, 50L);
+        }
+        ticker.advance(2000L);
+        removed = sharded.reclaim(System.nanoTime());
+        Assert.assertTrue(0 < removed && removed < 10000);
+        Assert.assertEquals(10000 - removed, sharded.reclaim());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Reclaimer.executor(executor);
+        Reclaimer.parallelism(2);
+        Reclaimer.slice(20L);
+        Reclaimer.executor(null);
+        executor.shutdown();
+        try {
+            Reclaimer.parallelism(0);
+            Assert.fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void test18() throws Exception {
+        MemoryCache<Integer, Unique> slow = new MemoryCache<>(1000L, 20000L);
+        MemoryCache<Integer, Unique> fast = new MemoryCache<>(10L, 500L);
+        Assert.assertEquals(20000L, Reclaimer.period(slow));
+        Assert.assertEquals(500L, Reclaimer.period(fast));
+
+        MemoryCache<Integer, Unique> cache = new MemoryCache<>(ReclaimSchedule.adaptive(0L, 100L, 50L, 800L));
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 1000; i++) {
+            cache.set(i, unique, 10L);
+        }
+        for (int i = 0; i < 50 && 0 < cache.size(); i++) {
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(0, cache.size());
+        for (int i = 0; i < 50 && Reclaimer.period(cache) < 800L; i++) {
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(800L, Reclaimer.period(cache));
+
+        Reclaimer.close();
+        Assert.assertFalse(Reclaimer.isRunning());
+        cache.set(1, unique, 10L);
+        Thread.sleep(1500L);
+        Assert.assertEquals(1, cache.size());
+        new MemoryCache<Integer, Unique>().clear();
+        Assert.assertTrue(Reclaimer.isRunning());
+        for (int i = 0; i < 50 && 0 < cache.size(); i++) {
+            Thread.sleep(100L);
+        }
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test19() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        List<String> events = new CopyOnWriteArrayList<>();
+        MemoryCache<Integer, String> cache = new MemoryCache<Integer, String>().ticker(ticker)
+                .removalListener((k, v, c) -> events.add(k + "=" + v + ":" + c), Runnable::run);
+        cache.set(1, "a");
+        cache.set(1, "b");
+        cache.set(2, "c", 50L);
+        cache.set(3, "d");
+        cache.remove(3);
+        ticker.advance(2000L);
+        cache.reclaim();
+        cache.clear();
+        Assert.assertEquals(Arrays.asList("1=a:REPLACED", "3=d:EXPLICIT", "2=c:EXPIRED", "1=b:CLEARED"), events);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        PersistCache<Integer, Unique> persist = new PersistCache<>(".mime_cache", "removal" + System.nanoTime());
+        Unique unique = new Unique(1L, "1", "1");
+        persist.removalListener((k, v, c) -> {
+            if (RemovalCause.EXPLICIT == c && unique.equals(v)) {
+                latch.countDown();
+            }
+        });
+        persist.set(1, unique);
+        persist.remove(1);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        persist.clear();
+    }
+
+    @Test
+    public void test20() {
+        FakeTicker ticker = new FakeTicker();
+        AtomicInteger loads = new AtomicInteger();
+        MemoryCache<Integer, String> cache = new MemoryCache<Integer, String>().ticker(ticker).negative(100L);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNull(cache.get(1, () -> {
+                loads.incrementAndGet();
+                return null;
+            }, 10000L));
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertFalse(cache.has(1));
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(0, cache.exactSize());
+        Assert.assertEquals(0L, cache.stream().count());
+        ticker.advance(200L);
+        Assert.assertEquals("1", cache.computeIfAbsent(1, k -> {
+            loads.incrementAndGet();
+            return "1";
+        }, 10000L));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals("1", cache.get(1));
+
+        PersistCache<Integer, Unique> persist = new PersistCache<Integer, Unique>(".mime_cache", "negative" + System.nanoTime())
+                .negative(100L);
+        persist.ticker(ticker);
+        Assert.assertNull(persist.get(2, () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        Assert.assertNull(persist.get(2, () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        Assert.assertEquals(3, loads.get());
+        Assert.assertFalse(persist.has(2));
+        Assert.assertEquals(0L, persist.bytes());
+        Unique unique = new Unique(2L, "2", "2");
+        persist.set(2, unique);
+        Assert.assertEquals(unique, persist.get(2));
+        Assert.assertTrue(0L < persist.bytes());
+        persist.clear();
+    }
+
+    @Test
+    public void test21() throws Exception {
+        String alias = "log" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<>(".mime_cache", alias);
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, new Unique((long) i, "1", "1"));
+        }
+        cache.set(1, new Unique(100L, "1", "1"));
+        cache.set(2, new Unique(2L, "2", "2"), 100000L);
+        cache.has(2, 200000L);
+        cache.remove(3);
+        long expire = cache.expire(2);
+        File[] files = new File(cache.name()).listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        cache.close();
+
+        // 旧版本按键分文件存储的数据在打开时导入
+        String legacy = cache.name() + "/legacy";
+        try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(legacy + "_key"))) {
+            os.writeObject(1000);
+        }
+        try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(legacy + "_expire"))) {
+            os.writeObject(-1L);
+        }
+        try (ObjectOutputStream os = new ObjectOutputStream(new FileOutputStream(legacy))) {
+            os.writeObject(new Unique(1000L, "1", "1"));
+        }
+
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(new Unique(100L, "1", "1"), cache.get(1));
+        Assert.assertEquals(new Unique(2L, "2", "2"), cache.get(2));
+        Assert.assertEquals(expire, cache.expire(2));
+        Assert.assertFalse(cache.has(3));
+        Assert.assertEquals(new Unique(99L, "1", "1"), cache.get(99));
+        Assert.assertEquals(new Unique(1000L, "1", "1"), cache.get(1000));
+        Assert.assertFalse(new File(legacy).exists());
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test22() throws Exception {
+        String alias = "compact" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<Integer, Unique>(".mime_cache", alias)
+                .segmentBytes(4096).compaction(0.5d, 0L);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 200; i++) {
+                cache.set(i, new Unique((long) (round * 1000 + i), "1", "1"));
+            }
+        }
+        for (int i = 0; i < 200; i += 2) {
+            cache.remove(i);
+        }
+        long before = cache.bytes();
+        Assert.assertTrue(0 < cache.deadBytes());
+        Assert.assertTrue(0 < cache.compact());
+        Assert.assertTrue(cache.bytes() < before);
+        for (int i = 1; i < 200; i += 2) {
+            Assert.assertEquals(new Unique((long) (4000 + i), "1", "1"), cache.get(i));
+        }
+        cache.close();
+
+        // 整理后重启, 删除的键不会恢复
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(100, cache.size());
+        for (int i = 0; i < 200; i++) {
+            if (0 == i % 2) {
+                Assert.assertFalse(cache.has(i));
+            } else {
+                Assert.assertEquals(new Unique((long) (4000 + i), "1", "1"), cache.get(i));
+            }
+        }
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test23() throws Exception {
+        String alias = "hint" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<>(".mime_cache", alias);
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, new Unique((long) i, "1", "1"));
+        }
+        cache.checkpoint();
+        File hint = new File(cache.name(), "index.hint");
+        Assert.assertTrue(hint.exists());
+
+        // 检查点之后的写入在启动时扫描得到
+        for (int i = 50; i < 100; i++) {
+            cache.set(i, new Unique((long) (1000 + i), "1", "1"));
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.remove(i);
+        }
+        cache.set(100, new Unique(100L, "1", "1"));
+
+        // 复制当前文件, 相当于没有关闭就退出
+        String crash = alias + "c";
+        String corrupt = alias + "d";
+        for (String copy : Arrays.asList(crash, corrupt)) {
+            File dir = new File(".mime_cache", copy);
+            Assert.assertTrue(dir.mkdirs());
+            File[] files = new File(cache.name()).listFiles();
+            Assert.assertNotNull(files);
+            for (File file : files) {
+                Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+            }
+        }
+        // 损坏的快照不使用, 扫描全部日志
+        try (RandomAccessFile file = new RandomAccessFile(new File(".mime_cache/" + corrupt, "index.hint"), "rw")) {
+            file.seek(30);
+            file.write(~file.read());
+        }
+        cache.close();
+
+        for (String name : Arrays.asList(alias, crash, corrupt)) {
+            cache = new PersistCache<>(".mime_cache", name);
+            Assert.assertEquals(91, cache.size());
+            for (int i = 0; i < 10; i++) {
+                Assert.assertFalse(cache.has(i));
+            }
+            for (int i = 10; i < 50; i++) {
+                Assert.assertEquals(new Unique((long) i, "1", "1"), cache.get(i));
+            }
+            for (int i = 50; i < 100; i++) {
+                Assert.assertEquals(new Unique((long) (1000 + i), "1", "1"), cache.get(i));
+            }
+            Assert.assertEquals(new Unique(100L, "1", "1"), cache.get(100));
+            cache.set(101, new Unique(101L, "1", "1"));
+            cache.close();
+            cache = new PersistCache<>(".mime_cache", name);
+            Assert.assertEquals(92, cache.size());
+            cache.clear();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void test24() throws Exception {
+        Codec<Object> codec = Codecs.defaults();
+        Object[] values = {"字符串", new byte[]{1, 2, 3}, 1L, 2, (short) 3, (byte) 4, 'c', true, 1.5d, 2.5f,
+                new Unique(1L, "1", "1")};
+        for (Object value : values) {
+            byte[] bytes = codec.encode(value);
+            Object decoded = codec.decode(bytes, 0, bytes.length);
+            if (value instanceof byte[]) {
+                Assert.assertArrayEquals((byte[]) value, (byte[]) decoded);
+            } else {
+                Assert.assertEquals(value, decoded);
+            }
+        }
+        Assert.assertEquals(9, codec.encode(1L).length);
+        Assert.assertEquals(8, Codecs.LONG.encode(1L).length);
+        byte[] serialized = Codecs.serialization().encode(1L);
+        Assert.assertEquals(1L, codec.decode(serialized, 0, serialized.length));
+
+        // 指定编解码读写, 默认编解码也能读取 jdk 序列化写入的数据
+        String alias = "codec" + System.nanoTime();
+        PersistCache<String, Long> cache = new PersistCache<>(".mime_cache", alias,
+                Codecs.STRING, Codecs.LONG, ReclaimSchedule.defaults());
+        cache.set("a", 1L);
+        cache.close();
+        cache = new PersistCache<>(".mime_cache", alias, Codecs.STRING, Codecs.LONG, ReclaimSchedule.defaults());
+        Assert.assertEquals(Long.valueOf(1L), cache.get("a"));
+        cache.clear();
+        cache.close();
+
+        alias = "codec" + System.nanoTime();
+        PersistCache<Integer, Unique> persist = new PersistCache<>(".mime_cache", alias,
+                Codecs.serialization(), Codecs.serialization(), ReclaimSchedule.defaults());
+        persist.set(1, new Unique(1L, "1", "1"));
+        persist.close();
+        persist = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(new Unique(1L, "1", "1"), persist.get(1));
+        persist.set(2, new Unique(2L, "2", "2"));
+        persist.close();
+        persist = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(2, persist.size());
+        Assert.assertEquals(new Unique(2L, "2", "2"), persist.get(2));
+        persist.clear();
+        persist.close();
+    }
+
+    @Test
+    public void test25() throws Exception {
+        String alias = "behind" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<Integer, Unique>(".mime_cache", alias)
+                .writeBehind(1024, 60_000L);
+        cache.set(0, new Unique(0L, "0", "0"));
+        cache.flush();
+        long bytes = cache.bytes();
+        Assert.assertTrue(0 < bytes);
+
+        // 攒批期间重复写入的键只写一次
+        for (int i = 0; i < 100; i++) {
+            cache.set(1, new Unique((long) i, "1", "1"));
+        }
+        Assert.assertEquals(new Unique(99L, "1", "1"), cache.get(1));
+        Assert.assertEquals(bytes, cache.bytes());
+        cache.flush();
+        long once = cache.bytes() - bytes;
+        Assert.assertTrue(0 < once && once < bytes * 2);
+        cache.remove(0);
+        cache.close();
+
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertFalse(cache.has(0));
+        Assert.assertEquals(new Unique(99L, "1", "1"), cache.get(1));
+        cache.close();
+
+        // 队列写满时写入方等待后台写入
+        cache = new PersistCache<Integer, Unique>(".mime_cache", alias).writeBehind(4, 60_000L);
+        for (int i = 0; i < 100; i++) {
+            cache.set(i, new Unique((long) i, "1", "1"));
+        }
+        cache.remove(1);
+        cache.close();
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(99, cache.size());
+        Assert.assertFalse(cache.has(1));
+        Assert.assertEquals(new Unique(99L, "1", "1"), cache.get(99));
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test26() {
+        FakeTicker ticker = new FakeTicker();
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+        // 过期时间分布在时间轮的各层, 最后一个超出最高层, 放在溢出槽
+        long[] alive = {500L, 10_000L, 70_000L, 1_800_000L, 18_000_000L, 864_000_000L, 5_184_000_000L};
+        for (int i = 0; i < alive.length; i++) {
+            cache.set(i, unique, alive[i]);
+        }
+        cache.set(-1, unique);
+        long now = 0L;
+        for (int i = 0; i < alive.length; i++) {
+            // 到期前逐层降级, 不会提前回收
+            long step = Math.max(100L, alive[i] / 64);
+            while (now + step < alive[i]) {
+                ticker.advance(step);
+                now += step;
+                cache.reclaim();
+                Assert.assertEquals(alive.length - i + 1, cache.size());
+            }
+            // 到期后最多晚一个最低层的槽
+            ticker.advance(alive[i] - now + 2048L);
+            now = alive[i] + 2048L;
+            cache.reclaim();
+            Assert.assertEquals(alive.length - i, cache.size());
+            Assert.assertFalse(cache.has(i));
+        }
+        Assert.assertTrue(cache.has(-1));
+
+        // 延长过期时间后原来的槽到期时重新挂入, 一次跨过多轮也不会漏掉
+        cache.set(0, unique, 3_000L);
+        cache.set(1, unique, 3_000L);
+        Assert.assertTrue(cache.has(0, 200_000L));
+        ticker.advance(5_000L);
+        cache.reclaim();
+        Assert.assertEquals(2, cache.size());
+        Assert.assertFalse(cache.has(1));
+        ticker.advance(150_000L);
+        cache.reclaim();
+        Assert.assertEquals(2, cache.size());
+        ticker.advance(50_000L);
+        cache.reclaim();
+        Assert.assertEquals(1, cache.size());
+        ticker.advance(100_000_000_000L);
+        cache.reclaim();
+        Assert.assertEquals(1, cache.size());
+        cache.clear();
+    }
+
+    @Test
+    public void test27() {
+        FakeTicker ticker = new FakeTicker();
+        MemoryCache<Integer, Unique> cache = new MemoryCache<Integer, Unique>().ticker(ticker)
+                .strategy(ReclaimStrategy.SAMPLE);
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 30; i++) {
+            cache.set(i, unique, i < 10 ? 50L : -1L);
+        }
+        for (int i = 30; i < 40; i++) {
+            cache.set(i, unique, 60_000L);
+        }
+        ticker.advance(2000L);
+
+        // 只抽样会过期的键, 不足时按实际抽样的个数返回
+        long result = cache.sample(100);
+        Assert.assertEquals(20, (int) (result >>> 32));
+        Assert.assertEquals(10, (int) result);
+        Assert.assertEquals(30, cache.size());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertFalse(cache.has(i));
+        }
+        result = cache.sample(5);
+        Assert.assertEquals(5, (int) (result >>> 32));
+        Assert.assertEquals(0, (int) result);
+        Assert.assertEquals(30, cache.size());
+        cache.clear();
+    }
+
+    @Test
+    public void test28() {
+        FakeTicker ticker = new FakeTicker();
+        LongKeyMemoryCache<Unique> longKey = new LongKeyMemoryCache<Unique>().ticker(ticker);
+        OffHeapMemoryCache<Integer, Unique> offHeap = new OffHeapMemoryCache<Integer, Unique>(1 << 26).ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 10000; i++) {
+            longKey.set((long) i, unique, i % 2 == 0 ? 50L : -1L);
+            offHeap.set(i, unique, i % 2 == 0 ? 50L : -1L);
+        }
+        ticker.advance(60L);
+
+        // 截止时刻已过, 每次只处理一小部分, 从上次中断处继续直到全部处理完
+        int calls = 0;
+        int removed = 0;
+        while (removed < 5000 && calls < 100000) {
+            removed += longKey.reclaim(System.nanoTime());
+            calls++;
+        }
+        Assert.assertEquals(5000, removed);
+        Assert.assertTrue(calls > 16);
+        Assert.assertEquals(5000, longKey.size());
+        calls = 0;
+        removed = 0;
+        while (removed < 5000 && calls < 100000) {
+            removed += offHeap.reclaim(System.nanoTime());
+            calls++;
+        }
+        Assert.assertEquals(5000, removed);
+        Assert.assertTrue(calls > 16);
+        Assert.assertEquals(5000, offHeap.size());
+
+        // 整体回收在中途开始时也处理完所有段
+        for (int i = 0; i < 10000; i += 2) {
+            longKey.set((long) i, unique, 50L);
+        }
+        longKey.reclaim(System.nanoTime());
+        ticker.advance(60L);
+        longKey.reclaim();
+        Assert.assertEquals(5000, longKey.size());
+        longKey.clear();
+        offHeap.clear();
+    }
+
+    @Test
+    public void test29() throws Exception {
+        String alias = "interrupt" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<>(".mime_cache", alias);
+        cache.set(0, new Unique(0L, "0", "0"));
+
+        // 被中断的线程读写时通道会被关闭, 重新打开后继续使用, 中断状态保留
+        Thread.currentThread().interrupt();
+        cache.set(1, new Unique(1L, "1", "1"));
+        Assert.assertEquals(new Unique(0L, "0", "0"), cache.get(0));
+        Assert.assertTrue(Thread.interrupted());
+        cache.set(2, new Unique(2L, "2", "2"));
+        Assert.assertEquals(new Unique(1L, "1", "1"), cache.get(1));
+        cache.close();
+
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(3, cache.size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(new Unique((long) i, String.valueOf(i), String.valueOf(i)), cache.get(i));
+        }
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test30() throws Exception {
+        String alias = "garbage" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<>(".mime_cache", alias);
+        cache.set(0, new Unique(0L, "0", "0"));
+        cache.close();
+
+        // 末尾的记录头损坏, 键长和值长相加溢出, 启动时截断而不是抛出异常
+        File[] logs = new File(".mime_cache", alias).listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(logs);
+        File log = logs[logs.length - 1];
+        long length = log.length();
+        try (FileOutputStream out = new FileOutputStream(log, true)) {
+            ByteBuffer garbage = ByteBuffer.allocate(29);
+            garbage.putInt(0).putLong(-1L).putLong(Long.MAX_VALUE).put((byte) 0)
+                    .putInt(Integer.MAX_VALUE).putInt(Integer.MAX_VALUE);
+            out.write(garbage.array());
+        }
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(length, log.length());
+        Assert.assertEquals(new Unique(0L, "0", "0"), cache.get(0));
+        cache.set(1, new Unique(1L, "1", "1"));
+        cache.close();
+
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(new Unique(1L, "1", "1"), cache.get(1));
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test31() throws Exception {
+        String alias = "stopping" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<Integer, Unique>(".mime_cache", alias)
+                .segmentBytes(4096).compaction(0.5d, 1000L);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 200; i++) {
+                cache.set(i, new Unique((long) (round * 1000 + i), "1", "1"));
+            }
+        }
+        for (int i = 0; i < 200; i += 2) {
+            cache.remove(i);
+        }
+
+        // 限速的整理要很久, 程序结束时不等它完成
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Integer> compaction = executor.submit(cache::compact);
+        Thread.sleep(200L);
+        long start = System.nanoTime();
+        cache.shutdown();
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        compaction.get(1, TimeUnit.SECONDS);
+        executor.shutdown();
+        cache.close();
+
+        cache = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(100, cache.size());
+        for (int i = 1; i < 200; i += 2) {
+            Assert.assertEquals(new Unique((long) (4000 + i), "1", "1"), cache.get(i));
+        }
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test32() throws Exception {
+        String alias = "dirty" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<Integer, Unique>(".mime_cache", alias)
+                .writeBehind(1024, 60_000L);
+        cache.set(1, new Unique(1L, "a", "a"));
+        cache.flush();
+        // 已写入的键又被更新, 检查点不能丢掉它
+        cache.set(1, new Unique(1L, "b", "b"));
+        cache.checkpoint();
+        cache.set(1, new Unique(1L, "c", "c"));
+        cache.set(2, new Unique(2L, "c", "c"));
+
+        // 复制当前文件, 相当于没有关闭就退出, 尚未写入的更新丢失, 已写入的保留
+        String crash = alias + "c";
+        File dir = new File(".mime_cache", crash);
+        Assert.assertTrue(dir.mkdirs());
+        File[] files = new File(cache.name()).listFiles();
+        Assert.assertNotNull(files);
+        for (File file : files) {
+            Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+        }
+        cache.clear();
+        cache.close();
+
+        cache = new PersistCache<>(".mime_cache", crash);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(new Unique(1L, "b", "b"), cache.get(1));
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test33() throws Exception {
+        String name = "writer" + System.nanoTime();
+        PersistCache<Integer, Unique> cache = new PersistCache<Integer, Unique>(".mime_cache", name)
+                .writeBehind(16, 20L);
+        Thread writer = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("mime-cache-writer-" + name))
+                .findFirst().orElseThrow(AssertionError::new);
+        cache.set(1, new Unique(1L, "a", "a"));
+        Thread.sleep(500L);
+        // 写入后空闲, 阻塞等待而不是定时醒来
+        Assert.assertEquals(Thread.State.WAITING, writer.getState());
+        cache.clear();
+        cache.close();
+        Assert.assertFalse(writer.isAlive());
+
+        String alias = "batch" + System.nanoTime();
+        cache = new PersistCache<Integer, Unique>(".mime_cache", alias).writeBehind(16, 60_000L);
+        cache.set(1, new Unique(1L, "a", "a"));
+        Thread.sleep(100L);
+        // 写入线程已取出正在攒批的键, flush 仍要写入
+        cache.flush();
+        String crash = alias + "c";
+        File dir = new File(".mime_cache", crash);
+        Assert.assertTrue(dir.mkdirs());
+        File[] files = new File(cache.name()).listFiles();
+        Assert.assertNotNull(files);
+        for (File file : files) {
+            Files.copy(file.toPath(), new File(dir, file.getName()).toPath());
+        }
+        cache.clear();
+        cache.close();
+
+        cache = new PersistCache<>(".mime_cache", crash);
+        Assert.assertEquals(new Unique(1L, "a", "a"), cache.get(1));
+        cache.clear();
+        cache.close();
+    }
+
+    @Test
+    public void test34() throws Exception {
+        String alias = "batch" + System.nanoTime();
+        PersistCache<Integer, Unique> persist = new PersistCache<>(".mime_cache", alias);
+        Map<Integer, Unique> map = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, new Unique((long) i, "u" + i, "p" + i));
+        }
+        persist.setAll(map);
+        persist.removeAll(Arrays.asList(0, 1, 2, 3, 4));
+        persist.close();
+
+        persist = new PersistCache<>(".mime_cache", alias);
+        Assert.assertEquals(95, persist.size());
+        Map<Integer, Unique> all = persist.getAll(map.keySet());
+        Assert.assertEquals(95, all.size());
+        Assert.assertEquals(map.get(50), all.get(50));
+        Assert.assertNull(all.get(0));
+
+        persist.close();
+
+        // 值尚未读入内存, 异步读取在 I/O 线程池中执行, 回调中批量读写, 数量远超线程数也不会互相等待
+        PersistCache<Integer, Unique> reopened = new PersistCache<>(".mime_cache", alias);
+        AsyncTimeCache<Integer, Unique> cache = reopened.async();
+        int n = Runtime.getRuntime().availableProcessors() * 8;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[n];
+        for (int i = 0; i < n; i++) {
+            futures[i] = cache.get(5 + i % 95).thenApply(v -> {
+                reopened.setAll(map);
+                return reopened.getAll(map.keySet());
+            });
+        }
+        CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(100, reopened.size());
+        reopened.clear();
+        reopened.close();
+    }
+
+    @Test
+    public void test35() {
+        FakeTicker ticker = new FakeTicker();
+        LongKeyMemoryCache<Unique> longKey = new LongKeyMemoryCache<Unique>().ticker(ticker);
+        OffHeapMemoryCache<Integer, Unique> offHeap = new OffHeapMemoryCache<Integer, Unique>(1 << 26).ticker(ticker);
+        Unique unique = new Unique(1L, "1", "1");
+        for (int i = 0; i < 1000; i++) {
+            longKey.set((long) i, unique, i % 2 == 0 ? 50L : -1L);
+            offHeap.set(i, unique, i % 2 == 0 ? 50L : -1L);
+        }
+        // 更新不重复计数
+        longKey.set(1L, unique);
+        offHeap.set(1, unique);
+        Assert.assertEquals(1000, longKey.size());
+        Assert.assertEquals(1000, offHeap.size());
+        Assert.assertEquals(1000, offHeap.entries());
+
+        // 过期但尚未回收的键计算在 size 内, exactSize 逐个判断
+        ticker.advance(60L);
+        Assert.assertEquals(1000, longKey.size());
+        Assert.assertEquals(500, longKey.exactSize());
+        Assert.assertEquals(1000, offHeap.size());
+        Assert.assertEquals(500, offHeap.exactSize());
+        longKey.reclaim();
+        offHeap.reclaim();
+        Assert.assertEquals(500, longKey.size());
+        Assert.assertEquals(500, offHeap.size());
+
+        longKey.remove(1L);
+        offHeap.remove(1);
+        Assert.assertEquals(499, longKey.size());
+        Assert.assertEquals(499, offHeap.size());
+        longKey.clear();
+        offHeap.clear();
+        Assert.assertEquals(0, longKey.size());
+        Assert.assertEquals(0, offHeap.size());
+    }
+
 }
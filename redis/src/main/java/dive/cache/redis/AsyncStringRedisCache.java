@@ -0,0 +1,304 @@
+package dive.cache.redis;
+
+import dive.cache.common.Absent;
+import dive.cache.common.AsyncTimeCache;
+import dive.cache.common.SingleFlight;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 一个用于缓存键值对数据的对象, 可以对键值对设置存活时间, 利用redis的响应式接口实现, 不阻塞调用线程
+ * 语义与 StringRedisCache 一致, 仅保存键为字符串的形式; 与其共用前缀时需配置相同的负缓存哨兵
+ * 需引入包 'org.springframework.boot:spring-boot-starter-data-redis:2.0.1.RELEASE', 并使用lettuce连接
+ * @author dawn
+ * @param <V> 值的类型, 需实现序列化接口
+ */
+public class AsyncStringRedisCache<V extends Serializable> implements AsyncTimeCache<String, V> {
+
+    /**
+     * ReactiveRedisTemplate对象, 用于实现缓存功能
+     * 例:
+     *  @ Bean
+     *  public ReactiveRedisTemplate<String, Unique> getReactiveRedisTemplateUnique(ReactiveRedisConnectionFactory factory){
+     *      return new ReactiveRedisTemplate<>(factory, RedisSerializationContext.java(Unique.class.getClassLoader()));
+     *  }
+     */
+    private final ReactiveRedisTemplate<String, V> cache;
+    /**
+     * 该实例化对象缓存键的前缀
+     */
+    private final String prefix;
+    /**
+     * 负缓存的存活毫秒数, 为 0 时不缓存加载结果为 null 的键
+     */
+    private volatile long negative;
+    /**
+     * 负缓存存入redis的哨兵值, 为 null 表示未开启
+     */
+    private volatile V sentinel;
+
+    /**
+     * 构造器
+     * @param cache ReactiveRedisTemplate对象，底层存取对象
+     * @param prefix 前缀
+     */
+    public AsyncStringRedisCache(ReactiveRedisTemplate<String, V> cache, String prefix) {
+        this.cache = cache;
+        this.prefix = prefix;
+    }
+
+    public ReactiveRedisTemplate<String, V> getCache() {
+        return cache;
+    }
+
+    /**
+     * 开启负缓存, 加载函数返回 null 的键以哨兵 {@link Absent#INSTANCE} 存入redis, 由redis按存活时间过期
+     * 与共用前缀的 StringRedisCache 配置相同的哨兵, 双方写入的哨兵都不会返回给调用方
+     * 开启后 has、expire 和 last 需读取值以排除哨兵
+     * @param alive 负缓存的存活毫秒数, 为 0 时关闭
+     * @return 本实例
+     */
+    @SuppressWarnings("unchecked")
+    public AsyncStringRedisCache<V> negative(long alive) {
+        return negative(alive, (V) Absent.INSTANCE);
+    }
+
+    /**
+     * 开启负缓存, 使用给定的哨兵值, 该值不应与任何正常值相等
+     * @param alive 负缓存的存活毫秒数, 为 0 时关闭
+     * @param sentinel 哨兵值
+     * @return 本实例
+     */
+    public AsyncStringRedisCache<V> negative(long alive, V sentinel) {
+        if (alive < 0) {
+            throw new IllegalArgumentException("alive must not be negative");
+        }
+        Objects.requireNonNull(sentinel, "sentinel");
+        this.negative = alive;
+        this.sentinel = 0 == alive ? null : sentinel;
+        return this;
+    }
+
+    /**
+     * 是否为哨兵
+     * @param v 读取的值
+     * @return 哨兵返回 true
+     */
+    private boolean absent(V v) {
+        V s = sentinel;
+        return null != s && s.equals(v);
+    }
+
+    /**
+     * 读取值, 哨兵视为不存在
+     * @param key 封装后的key
+     * @return 值, 不存在或为哨兵时为空
+     */
+    private Mono<V> value(String key) {
+        return cache.opsForValue().get(key).flatMap(v -> absent(v) ? Mono.<V>empty() : Mono.just(v));
+    }
+
+    /**
+     * 是否存在, 开启负缓存时读取值以排除哨兵
+     * @param key 封装后的key
+     * @return 存在返回 true
+     */
+    private Mono<Boolean> exists(String key) {
+        if (null != sentinel) {
+            return value(key).map(v -> true).defaultIfEmpty(false);
+        }
+        return cache.hasKey(key).defaultIfEmpty(false);
+    }
+
+    /**
+     * 剩余存活时间, 开启负缓存时读取值以排除哨兵
+     * @param key 封装后的key
+     * @param mapping 剩余存活时间转换为结果
+     * @return 不存在返回 0, 永不过期返回 -1
+     */
+    private Mono<Long> ttl(String key, Function<Duration, Long> mapping) {
+        Mono<Long> ttl = cache.getExpire(key)
+                .map(d -> d.isZero() ? -1L : mapping.apply(d))
+                .defaultIfEmpty(0L);
+        if (null == sentinel) {
+            return ttl;
+        }
+        return cache.opsForValue().get(key)
+                .flatMap(v -> absent(v) ? Mono.just(0L) : ttl)
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * 存取前，用该方法封装key
+     * @param key 原始key
+     * @return 封装后的key，实际redis存取的key
+     */
+    protected String prefix(String key) {
+        return null == prefix ? key : prefix + key;
+    }
+
+
+    @Override
+    public CompletableFuture<Void> set(String key, V value) {
+        return cache.opsForValue().set(prefix(key), value).then().toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(String key) {
+        return exists(prefix(key)).toFuture();
+    }
+
+    @Override
+    public CompletableFuture<V> get(String key) {
+        return value(prefix(key)).toFuture();
+    }
+
+    /**
+     * 只读取一次原始值, 哨兵表示已记为不存在, 不再加载; 加载结果为 null 时开启负缓存则存入哨兵
+     */
+    @Override
+    public CompletableFuture<V> get(String key, Function<? super String, ? extends CompletionStage<V>> loader) {
+        Objects.requireNonNull(loader, "loader");
+        String k = prefix(key);
+        return cache.opsForValue().get(k).toFuture().thenCompose(raw -> null != raw ?
+                CompletableFuture.completedFuture(absent(raw) ? null : raw) :
+                SingleFlight.loadAsync(this, key, () -> cache.opsForValue().get(k).toFuture()
+                        .thenCompose(old -> null != old ?
+                                CompletableFuture.completedFuture(absent(old) ? null : old) :
+                                loader.apply(key).thenCompose(v -> null != v ?
+                                        set(key, v).thenApply(nothing -> v) :
+                                        markAbsent(k).thenApply(nothing -> null)))));
+    }
+
+    /**
+     * 开启负缓存时存入哨兵
+     * @param key 封装后的key
+     * @return 完成时表示已存入
+     */
+    private CompletableFuture<Void> markAbsent(String key) {
+        V s = sentinel;
+        if (null == s) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return cache.opsForValue().set(key, s, Duration.ofMillis(negative)).then().toFuture();
+    }
+
+
+    @Override
+    public CompletableFuture<V> delete(String key) {
+        String k = prefix(key);
+        return cache.opsForValue().get(k)
+                .flatMap(v -> cache.delete(k).flatMap(count -> absent(v) ? Mono.<V>empty() : Mono.just(v)))
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(String key) {
+        return cache.delete(prefix(key)).then().toFuture();
+    }
+
+    /**
+     * 由于redis单线程原因，该操作耗时较大，不宜使用。
+     * 缓存时候，应当设置过期时间，这样，redis会自动清理，而无需主动清除
+     */
+    @Override
+    public CompletableFuture<Void> clear() {
+        return cache.delete(cache.keys(prefix("*"))).then().toFuture();
+    }
+
+
+    @Override
+    public CompletableFuture<Void> set(String key, V value, Instant expire) {
+        return set(key, value, expire.toEpochMilli() - System.currentTimeMillis());
+    }
+
+    @Override
+    public CompletableFuture<Void> set(String key, V value, long timeout, TimeUnit unit) {
+        return cache.opsForValue().set(prefix(key), value, Duration.ofMillis(unit.toMillis(timeout)))
+                .then().toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> set(String key, V value, long alive) {
+        if (0 < alive) {
+            return set(key, value, alive, TimeUnit.MILLISECONDS);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+
+    @Override
+    public CompletableFuture<Boolean> has(String key, Instant expire) {
+        String k = prefix(key);
+        return exists(k)
+                .flatMap(had -> had && null != expire ?
+                        cache.expireAt(k, expire).map(b -> true) : Mono.just(had))
+                .defaultIfEmpty(false)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(String key, long timeout, TimeUnit unit) {
+        String k = prefix(key);
+        return exists(k)
+                .flatMap(had -> had && null != unit ?
+                        cache.expire(k, Duration.ofMillis(unit.toMillis(timeout))).map(b -> true) : Mono.just(had))
+                .defaultIfEmpty(false)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> has(String key, long alive) {
+        return has(key, alive, TimeUnit.MILLISECONDS);
+    }
+
+
+    @Override
+    public CompletableFuture<V> get(String key, Instant expire) {
+        String k = prefix(key);
+        return value(k)
+                .flatMap(v -> null != expire ? cache.expireAt(k, expire).map(b -> v) : Mono.just(v))
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<V> get(String key, long timeout, TimeUnit unit) {
+        String k = prefix(key);
+        return value(k)
+                .flatMap(v -> null != unit ?
+                        cache.expire(k, Duration.ofMillis(unit.toMillis(timeout))).map(b -> v) : Mono.just(v))
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<V> get(String key, long alive) {
+        return get(key, alive, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * 不存在返回 0, 永不过期返回 -1, 与 StringRedisCache 一致
+     */
+    @Override
+    public CompletableFuture<Long> expire(String key) {
+        return ttl(prefix(key), d -> d.toMillis() + System.currentTimeMillis()).toFuture();
+    }
+
+    /**
+     * 不存在返回 0, 永不过期返回 -1, 与 StringRedisCache 一致
+     */
+    @Override
+    public CompletableFuture<Long> last(String key) {
+        return ttl(prefix(key), Duration::toMillis).toFuture();
+    }
+
+}
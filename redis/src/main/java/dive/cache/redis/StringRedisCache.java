@@ -1,13 +1,21 @@
 package dive.cache.redis;
 
+import dive.cache.common.Absent;
 import dive.cache.common.PersistCache;
+import dive.cache.common.Refresher;
+import dive.cache.common.SingleFlight;
+import dive.cache.common.StatsCounter;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 
 import java.io.Serializable;
 import java.time.Instant;
-import java.util.Date;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * 一个用于缓存键值对数据的对象, 可以对键值对设置存活时间, 利用redis实现
@@ -33,6 +41,22 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
      * 该实例化对象缓存键的前缀
      */
     private final String prefix;
+    /**
+     * 提前刷新策略, 为 null 时不刷新
+     */
+    private volatile Refresher refresher;
+    /**
+     * 统计记录者, redis自行处理过期和淘汰, 只记录命中, 未命中和加载
+     */
+    private volatile StatsCounter stats = StatsCounter.concurrent();
+    /**
+     * 负缓存的存活毫秒数, 为 0 时不缓存加载结果为 null 的键
+     */
+    private volatile long negative;
+    /**
+     * 负缓存存入redis的哨兵值, 为 null 表示未开启
+     */
+    private volatile V sentinel;
 
     /**
      * 构造器
@@ -48,6 +72,140 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
         return cache;
     }
 
+    /**
+     * 设置提前刷新策略, 带加载函数的读取命中即将过期的键时在后台重新加载
+     * 判断是否需要刷新会多一次 PTTL 请求
+     * @param refresher 刷新策略, 为 null 时不刷新
+     * @return 本实例
+     */
+    public StringRedisCache<V> refresh(Refresher refresher) {
+        this.refresher = refresher;
+        return this;
+    }
+
+    @Override
+    public Refresher refresher() {
+        return refresher;
+    }
+
+    /**
+     * 开启或关闭统计
+     * @param enabled 是否记录
+     * @return 本实例
+     */
+    public StringRedisCache<V> recordStats(boolean enabled) {
+        this.stats = enabled ? StatsCounter.concurrent() : StatsCounter.disabled();
+        return this;
+    }
+
+    @Override
+    public StatsCounter statsCounter() {
+        return stats;
+    }
+
+    /**
+     * 开启负缓存, 加载函数返回 null 的键以哨兵 {@link Absent#INSTANCE} 存入redis, 由redis按存活时间过期
+     * 值的序列化器需能序列化该枚举, 默认的 JDK 序列化器可以; 字符串等序列化器使用 {@link #negative(long, Serializable)}
+     * 开启后 has、expire、last 和 persist 需读取值以排除哨兵
+     * @param alive 负缓存的存活毫秒数, 为 0 时关闭
+     * @return 本实例
+     */
+    @SuppressWarnings("unchecked")
+    public StringRedisCache<V> negative(long alive) {
+        return negative(alive, (V) Absent.INSTANCE);
+    }
+
+    /**
+     * 开启负缓存, 使用给定的哨兵值, 该值不应与任何正常值相等
+     * @param alive 负缓存的存活毫秒数, 为 0 时关闭
+     * @param sentinel 哨兵值
+     * @return 本实例
+     */
+    public StringRedisCache<V> negative(long alive, V sentinel) {
+        if (alive < 0) {
+            throw new IllegalArgumentException("alive must not be negative");
+        }
+        Objects.requireNonNull(sentinel, "sentinel");
+        this.negative = alive;
+        this.sentinel = 0 == alive ? null : sentinel;
+        return this;
+    }
+
+    @Override
+    public boolean isAbsent(String key) {
+        V s = sentinel;
+        return null != s && s.equals(cache.opsForValue().get(prefix(key)));
+    }
+
+    @Override
+    public void markAbsent(String key) {
+        V s = sentinel;
+        if (null != s) {
+            cache.opsForValue().set(prefix(key), s, negative, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 哨兵视为不存在
+     * @param v 读取的值
+     * @return 哨兵返回 null, 否则原样返回
+     */
+    private V unwrap(V v) {
+        V s = sentinel;
+        return null != s && s.equals(v) ? null : v;
+    }
+
+    /**
+     * 未命中时加载, 并发未命中同一个键时只有一个线程加载
+     * 加载前再读取一次原始值, 与哨兵比较即可判断是否已记为不存在, 不再另外调用 isAbsent
+     * @param key 原始key
+     * @param mapping 加载函数
+     * @param store 存入加载结果
+     * @return 值, 不存在返回 null
+     */
+    private V load(String key, Function<? super String, ? extends V> mapping, Consumer<V> store) {
+        return SingleFlight.load(this, key, () -> {
+            V raw = cache.opsForValue().get(prefix(key));
+            if (null != raw) {
+                return unwrap(raw);
+            }
+            V loaded = stats.load(() -> mapping.apply(key));
+            if (null == loaded) {
+                markAbsent(key);
+            } else {
+                store.accept(loaded);
+            }
+            return loaded;
+        });
+    }
+
+    /**
+     * 是否存在, 开启负缓存时读取值以排除哨兵
+     * @param key 封装后的key
+     * @return 存在返回 true
+     */
+    private boolean exists(String key) {
+        if (null != sentinel) {
+            return null != unwrap(cache.opsForValue().get(key));
+        }
+        Boolean had = cache.hasKey(key);
+        return null == had ? false : had;
+    }
+
+    /**
+     * 记录命中或未命中
+     * @param v 读取的值
+     * @return 读取的值
+     */
+    private V record(V v) {
+        if (null != v) {
+            stats.recordHits(1);
+        } else {
+            stats.recordMisses(1);
+        }
+        return v;
+    }
+
     /**
      * 存取前，用该方法封装key
      * @param key 原始key
@@ -66,20 +224,53 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
 
     @Override
     public boolean has(String key) {
-        Boolean had = cache.hasKey(prefix(key));
-        return null == had ? false : had;
+        return exists(prefix(key));
     }
 
     @Override
     public V get(String key) {
-        return cache.opsForValue().get(prefix(key));
+        return record(unwrap(cache.opsForValue().get(prefix(key))));
+    }
+
+    @Override
+    public V peek(String key) {
+        return unwrap(cache.opsForValue().get(prefix(key)));
+    }
+
+
+    /**
+     * 只读取一次原始值, 哨兵表示已记为不存在, 不再另外调用 isAbsent
+     */
+    @Override
+    public V get(String key, Supplier<V> supplier) {
+        V raw = cache.opsForValue().get(prefix(key));
+        V v = record(unwrap(raw));
+        if (null != raw) {
+            return v;
+        }
+        Objects.requireNonNull(supplier, "supplier");
+        return load(key, k -> supplier.get(), loaded -> set(key, loaded));
+    }
+
+    /**
+     * 只读取一次原始值, 哨兵表示已记为不存在, 不再另外调用 isAbsent
+     */
+    @Override
+    public V computeIfAbsent(String key, Function<? super String, ? extends V> mapping) {
+        Objects.requireNonNull(mapping);
+        V raw = cache.opsForValue().get(prefix(key));
+        V v = record(unwrap(raw));
+        if (null != raw) {
+            return v;
+        }
+        return load(key, mapping, loaded -> set(key, loaded));
     }
 
 
     @Override
     public V delete(String key) {
         key = prefix(key);
-        V v = cache.opsForValue().get(key);
+        V v = unwrap(cache.opsForValue().get(key));
         cache.delete(key);
         return v;
     }
@@ -102,6 +293,73 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
     }
 
 
+    /**
+     * 一次 MGET 读取所有键
+     */
+    @Override
+    public Map<String, V> getAll(Collection<? extends String> keys) {
+        List<String> list = new ArrayList<>(keys);
+        List<String> prefixed = new ArrayList<>(list.size());
+        for (String key : list) {
+            prefixed.add(prefix(key));
+        }
+        Map<String, V> map = new HashMap<>();
+        List<V> values = cache.opsForValue().multiGet(prefixed);
+        if (null != values) {
+            for (int i = 0; i < list.size() && i < values.size(); i++) {
+                V v = unwrap(values.get(i));
+                if (null != v) {
+                    map.put(list.get(i), v);
+                }
+            }
+        }
+        stats.recordHits(map.size());
+        stats.recordMisses(list.size() - map.size());
+        return map;
+    }
+
+    /**
+     * 一次 MSET 写入所有键
+     */
+    @Override
+    public void setAll(Map<? extends String, ? extends V> map) {
+        Map<String, V> prefixed = new HashMap<>();
+        map.forEach((k, v) -> prefixed.put(prefix(k), v));
+        cache.opsForValue().multiSet(prefixed);
+    }
+
+    /**
+     * 一次 DEL 删除所有键
+     */
+    @Override
+    public void removeAll(Collection<? extends String> keys) {
+        List<String> prefixed = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            prefixed.add(prefix(key));
+        }
+        cache.delete(prefixed);
+    }
+
+    /**
+     * MSET 不支持过期时间, 以管道批量发送 SET PX, 只有一次往返
+     */
+    @Override
+    public void setAll(Map<? extends String, ? extends V> map, long alive) {
+        if (0 >= alive || map.isEmpty()) {
+            return;
+        }
+        cache.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <KK, VV> Object execute(RedisOperations<KK, VV> operations) {
+                RedisOperations<String, V> ops = (RedisOperations<String, V>) operations;
+                map.forEach((k, v) -> ops.opsForValue().set(prefix(k), v, alive, TimeUnit.MILLISECONDS));
+                return null;
+            }
+        });
+    }
+
+
     @Override
     public void set(String key, V value, Instant expire) {
         set(key, value, expire.toEpochMilli() - System.currentTimeMillis());
@@ -124,21 +382,21 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
     @Override
     public boolean has(String key, Instant expire) {
         key = prefix(key);
-        Boolean had = cache.hasKey(key);
-        if (null != had && had && null != expire) {
+        boolean had = exists(key);
+        if (had && null != expire) {
             cache.expireAt(key, new Date(expire.toEpochMilli()));
         }
-        return null == had ? false : had;
+        return had;
     }
 
     @Override
     public boolean has(String key, long timeout, TimeUnit unit) {
         String k = prefix(key);
-        Boolean had = cache.hasKey(k);
-        if (null != had && had && null != unit) {
+        boolean had = exists(k);
+        if (had && null != unit) {
             cache.expire(k, timeout, unit);
         }
-        return null == had ? false : had;
+        return had;
     }
 
     @Override
@@ -150,21 +408,21 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
     @Override
     public V get(String key, Instant expire) {
         key = prefix(key);
-        V v = cache.opsForValue().get(key);
+        V v = unwrap(cache.opsForValue().get(key));
         if (null != v && null != expire) {
             cache.expireAt(key, new Date(expire.toEpochMilli()));
         }
-        return v;
+        return record(v);
     }
 
     @Override
     public V get(String key, long timeout, TimeUnit unit) {
         key = prefix(key);
-        V v = cache.opsForValue().get(key);
+        V v = unwrap(cache.opsForValue().get(key));
         if (null != v && null != unit) {
             cache.expire(key, timeout, unit);
         }
-        return v;
+        return record(v);
     }
 
     @Override
@@ -172,17 +430,63 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
         return get(key, alive, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 只读取一次原始值, 哨兵表示已记为不存在, 不再另外调用 isAbsent
+     */
+    @Override
+    public V get(String key, Supplier<V> supplier, long alive) {
+        V raw = cache.opsForValue().get(prefix(key));
+        V v = record(unwrap(raw));
+        if (null != v) {
+            refresh(key, k -> supplier.get(), alive);
+            return v;
+        }
+        if (null != raw) {
+            return null;
+        }
+        Objects.requireNonNull(supplier, "supplier");
+        return load(key, k -> supplier.get(), loaded -> set(key, loaded, alive));
+    }
 
+    /**
+     * 只读取一次原始值, 哨兵表示已记为不存在, 不再另外调用 isAbsent
+     */
+    @Override
+    public V computeIfAbsent(String key, Function<? super String, ? extends V> mapping, long alive) {
+        Objects.requireNonNull(mapping);
+        V raw = cache.opsForValue().get(prefix(key));
+        V v = record(unwrap(raw));
+        if (null != v) {
+            refresh(key, mapping, alive);
+            return v;
+        }
+        if (null != raw) {
+            return null;
+        }
+        return load(key, mapping, loaded -> set(key, loaded, alive));
+    }
+
+
+    /**
+     * 不存在返回 0, 永不过期返回 -1, 与 MemoryCache 一致
+     */
     @Override
     public long expire(String key) {
-        Long expire = cache.getExpire(prefix(key), TimeUnit.MILLISECONDS);
-        return null == expire ? 0 : expire + System.currentTimeMillis();
+        long last = last(key);
+        return 0 < last ? last + System.currentTimeMillis() : last;
     }
 
+    /**
+     * 不存在返回 0, 永不过期返回 -1
+     */
     @Override
     public long last(String key) {
-        Long expire = cache.getExpire(prefix(key), TimeUnit.MILLISECONDS);
-        return null == expire ? 0 : expire;
+        if (null != sentinel && isAbsent(key)) {
+            return 0;
+        }
+        Long last = cache.getExpire(prefix(key), TimeUnit.MILLISECONDS);
+        // PTTL 不存在返回 -2, 永不过期返回 -1
+        return null == last || last < -1 ? 0 : last;
     }
 
 
@@ -196,6 +500,10 @@ public class StringRedisCache<V extends Serializable> implements PersistCache<St
 
     @Override
     public boolean persist(String key) {
+        if (null != sentinel && isAbsent(key)) {
+            // 哨兵不能永久保存
+            return false;
+        }
         Boolean had = cache.persist(prefix(key));
         return null == had ? false : had;
     }